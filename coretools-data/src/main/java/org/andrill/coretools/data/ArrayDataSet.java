@@ -0,0 +1,469 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools.data;
+
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An implementation of the DataSet interface that stores its points in parallel, growable double[] x and y arrays
+ * rather than as individual Datum objects. Points are appended as they are put and the arrays are bulk-sorted by x
+ * once, before the next query, so large data sets can be loaded without a per-point sorted insert. Datum objects are
+ * only created for the points returned from queries.
+ * <p>
+ * Data sets are read by rendering threads while they may still be sorted or changed, so access to the arrays is
+ * synchronized on the data set.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public class ArrayDataSet implements DataSet {
+	private static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * A factory for ArrayDataSets.
+	 */
+	public static final DataSetFactory FACTORY = new DataSetFactory() {
+		public DataSet createDataSet(final String name) {
+			return new ArrayDataSet(name);
+		}
+	};
+
+	protected final String name;
+	protected double[] xs;
+	protected double[] ys;
+	protected int count = 0;
+	protected boolean sorted = true;
+	protected double max = -Double.MAX_VALUE;
+	protected double min = Double.MAX_VALUE;
+	protected DataPyramid pyramid = null;
+
+	/**
+	 * Create a new ArrayDataSet.
+	 *
+	 * @param name
+	 *            the name.
+	 */
+	public ArrayDataSet(final String name) {
+		this(name, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create a new ArrayDataSet.
+	 *
+	 * @param name
+	 *            the name.
+	 * @param capacity
+	 *            the initial capacity in data points.
+	 */
+	public ArrayDataSet(final String name, final int capacity) {
+		this.name = name;
+		this.xs = new double[Math.max(capacity, 1)];
+		this.ys = new double[Math.max(capacity, 1)];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public synchronized Datum get(final double x) {
+		sort();
+		int i = lowerBound(x);
+		return (i < count && xs[i] == x) ? new Datum(xs[i], ys[i]) : null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public synchronized List<Datum> get(final double x1, final double x2) {
+		sort();
+		return toList(lowerBound(x1), upperBound(x2));
+	}
+
+	/**
+	 * Gets the data points at and around x: up to <code>before</code> points less than x, all points equal to x,
+	 * and up to <code>after</code> points greater than x.
+	 *
+	 * @param x
+	 *            the x value.
+	 * @param before
+	 *            the number of data points to grab before x.
+	 * @param after
+	 *            the number of data points to grab after x.
+	 * @return the list of data.
+	 */
+	public synchronized List<Datum> get(final double x, final int before, final int after) {
+		sort();
+		int lo = lowerBound(x);
+		int hi = upperBound(x);
+		return toList(Math.max(0, lo - before), Math.min(count, hi + after));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public synchronized List<Datum> getAllData() {
+		sort();
+		return toList(0, count);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public List<Datum> getAveraged(final double x1, final double x2, final int maxPoints) {
+		return getPyramid().getAverage(x1, x2, maxPoints);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public List<Datum> getDecimated(final double x1, final double x2, final int maxPoints) {
+		return getPyramid().getEnvelope(x1, x2, maxPoints);
+	}
+
+	/**
+	 * Gets the level-of-detail pyramid for this data set, building it if necessary.
+	 *
+	 * @return the pyramid.
+	 */
+	public synchronized DataPyramid getPyramid() {
+		sort();
+		if (pyramid == null) {
+			// the pyramid keeps its arrays, so give it copies that later puts and sorts can't touch
+			pyramid = new DataPyramid(Arrays.copyOf(xs, count), Arrays.copyOf(ys, count), count);
+		}
+		return pyramid;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public synchronized double getMax() {
+		return max;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public synchronized double getMin() {
+		return min;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the number of data points in this data set.
+	 *
+	 * @return the number of data points.
+	 */
+	public synchronized int size() {
+		return count;
+	}
+
+	/**
+	 * Gets the x value of the data point at the specified index.
+	 *
+	 * @param i
+	 *            the index.
+	 * @return the x value.
+	 */
+	public synchronized double getX(final int i) {
+		sort();
+		return xs[i];
+	}
+
+	/**
+	 * Gets the y value of the data point at the specified index.
+	 *
+	 * @param i
+	 *            the index.
+	 * @return the y value.
+	 */
+	public synchronized double getY(final int i) {
+		sort();
+		return ys[i];
+	}
+
+	/**
+	 * Gets the index of the first data point with an x value greater than or equal to x.
+	 *
+	 * @param x
+	 *            the x value.
+	 * @return the index, or the size of this data set if there is none.
+	 */
+	public synchronized int lowerBound(final double x) {
+		sort();
+		int lo = 0;
+		int hi = count;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (xs[mid] < x) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Gets the index of the first data point with an x value greater than x.
+	 *
+	 * @param x
+	 *            the x value.
+	 * @return the index, or the size of this data set if there is none.
+	 */
+	public synchronized int upperBound(final double x) {
+		sort();
+		int lo = 0;
+		int hi = count;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (xs[mid] <= x) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public List<Datum> interpolate(final double start, final double end, final double step,
+	        final Interpolation interpolation) {
+		List<Datum> data = new ArrayList<Datum>();
+		for (double x = start; x <= end; x += step) {
+			Datum d = interpolate(x, interpolation);
+			if (d != null) {
+				data.add(d);
+			}
+		}
+		return data;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Datum interpolate(final double x, final Interpolation interpolation) {
+		return interpolation.interpolate(x, this);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void put(final Datum datum) {
+		put(datum.x, datum.y);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public synchronized void put(final double x, final double y) {
+		pyramid = null;
+		ensureCapacity(count + 1);
+		if (sorted && count > 0 && x < xs[count - 1]) {
+			sorted = false;
+		}
+		xs[count] = x;
+		ys[count] = y;
+		count++;
+
+		// update stats
+		max = Math.max(max, y);
+		min = Math.min(min, y);
+	}
+
+	/**
+	 * Puts the remaining data points in the specified buffers in this data set.
+	 *
+	 * @param x
+	 *            the x values.
+	 * @param y
+	 *            the y values, which must have at least as many remaining as x.
+	 */
+	public synchronized void put(final DoubleBuffer x, final DoubleBuffer y) {
+		int length = x.remaining();
+		if (length == 0) {
+			return;
+		}
+		pyramid = null;
+		ensureCapacity(count + length);
+		int from = count;
+		x.get(xs, from, length);
+		y.get(ys, from, length);
+		count += length;
+
+		// update stats
+		for (int i = from; i < count; i++) {
+			if (sorted && i > 0 && xs[i] < xs[i - 1]) {
+				sorted = false;
+			}
+			max = Math.max(max, ys[i]);
+			min = Math.min(min, ys[i]);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public synchronized void remove(final Datum datum) {
+		sort();
+		for (int i = lowerBound(datum.x); i < count && xs[i] == datum.x; i++) {
+			if (ys[i] == datum.y) {
+				removeRange(i, i + 1);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public synchronized void remove(final double x) {
+		removeRange(lowerBound(x), upperBound(x));
+	}
+
+	/**
+	 * Sorts the data points by x value if any were put out of order. This is called automatically before queries but
+	 * can be called explicitly once a bulk load is complete. Points with equal x values keep their insertion order.
+	 */
+	public synchronized void sort() {
+		if (!sorted) {
+			double[] tx = new double[count];
+			double[] ty = new double[count];
+			mergeSort(xs, ys, tx, ty, 0, count);
+			sorted = true;
+		}
+	}
+
+	/**
+	 * Gets copies of the x and y values, in x order.
+	 *
+	 * @return the x values and the y values.
+	 */
+	public synchronized double[][] toArrays() {
+		sort();
+		return new double[][] { Arrays.copyOf(xs, count), Arrays.copyOf(ys, count) };
+	}
+
+	/**
+	 * Trims the backing arrays to the number of data points.
+	 */
+	public synchronized void trimToSize() {
+		if (xs.length > count) {
+			xs = Arrays.copyOf(xs, Math.max(count, 1));
+			ys = Arrays.copyOf(ys, Math.max(count, 1));
+		}
+	}
+
+	// stable merge sort of the parallel arrays in [from, to) using the scratch arrays
+	private static void mergeSort(final double[] x, final double[] y, final double[] tx, final double[] ty,
+	        final int from, final int to) {
+		int length = to - from;
+		if (length < 16) {
+			for (int i = from + 1; i < to; i++) {
+				double kx = x[i];
+				double ky = y[i];
+				int j = i - 1;
+				while (j >= from && x[j] > kx) {
+					x[j + 1] = x[j];
+					y[j + 1] = y[j];
+					j--;
+				}
+				x[j + 1] = kx;
+				y[j + 1] = ky;
+			}
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		mergeSort(x, y, tx, ty, from, mid);
+		mergeSort(x, y, tx, ty, mid, to);
+		if (x[mid - 1] <= x[mid]) {
+			return; // already in order
+		}
+		System.arraycopy(x, from, tx, from, length);
+		System.arraycopy(y, from, ty, from, length);
+		int i = from;
+		int j = mid;
+		for (int k = from; k < to; k++) {
+			if (j >= to || (i < mid && tx[i] <= tx[j])) {
+				x[k] = tx[i];
+				y[k] = ty[i++];
+			} else {
+				x[k] = tx[j];
+				y[k] = ty[j++];
+			}
+		}
+	}
+
+	protected void ensureCapacity(final int capacity) {
+		if (capacity > xs.length) {
+			int size = Math.max(capacity, xs.length + (xs.length >> 1) + 1);
+			xs = Arrays.copyOf(xs, size);
+			ys = Arrays.copyOf(ys, size);
+		}
+	}
+
+	protected void removeRange(final int from, final int to) {
+		if (to > from) {
+			pyramid = null;
+			boolean extreme = false;
+			for (int i = from; i < to; i++) {
+				extreme |= (ys[i] == max) || (ys[i] == min);
+			}
+			System.arraycopy(xs, to, xs, from, count - to);
+			System.arraycopy(ys, to, ys, from, count - to);
+			count -= to - from;
+
+			// update stats
+			if (extreme) {
+				max = -Double.MAX_VALUE;
+				min = Double.MAX_VALUE;
+				for (int i = 0; i < count; i++) {
+					max = Math.max(max, ys[i]);
+					min = Math.min(min, ys[i]);
+				}
+			}
+		}
+	}
+
+	protected List<Datum> toList(final int from, final int to) {
+		List<Datum> data = new ArrayList<Datum>(Math.max(0, to - from));
+		for (int i = from; i < to; i++) {
+			data.add(new Datum(xs[i], ys[i]));
+		}
+		return data;
+	}
+
+	@Override
+	public synchronized String toString() {
+		StringBuilder s = new StringBuilder();
+		s.append("ArrayDataSet[name: " + name);
+		s.append(", points: " + count);
+		s.append(", capacity: " + xs.length);
+		s.append(", max: " + max);
+		s.append(", min: " + min);
+		s.append("]");
+		return s.toString();
+	}
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A level-of-detail pyramid over a sorted series of data points. Level L groups the points into bins of 2^L
+ * consecutive points and records the index of the minimum and maximum y-value and the sum of the y-values of each
+ * bin, so a decimated view of any x-range can be produced in time proportional to the number of points returned
+ * rather than the number of points in the range.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public class DataPyramid {
+	protected final double[] x;
+	protected final double[] y;
+	protected final int count;
+	protected final int[][] minIndex;
+	protected final int[][] maxIndex;
+	protected final double[][] sum;
+
+	/**
+	 * Create a new DataPyramid. The arrays are referenced, not copied, and must not be modified while the pyramid is
+	 * in use.
+	 *
+	 * @param x
+	 *            the x values, in ascending order.
+	 * @param y
+	 *            the y values.
+	 * @param count
+	 *            the number of data points.
+	 */
+	public DataPyramid(final double[] x, final double[] y, final int count) {
+		this.x = x;
+		this.y = y;
+		this.count = count;
+
+		int levels = 0;
+		while ((count >> (levels + 1)) > 0) {
+			levels++;
+		}
+		minIndex = new int[levels + 1][];
+		maxIndex = new int[levels + 1][];
+		sum = new double[levels + 1][];
+		for (int level = 1; level <= levels; level++) {
+			int bins = count >> level;
+			int[] mins = new int[bins];
+			int[] maxs = new int[bins];
+			double[] sums = new double[bins];
+			for (int b = 0; b < bins; b++) {
+				int a = 2 * b;
+				int c = a + 1;
+				if (level == 1) {
+					mins[b] = (y[c] < y[a]) ? c : a;
+					maxs[b] = (y[c] > y[a]) ? c : a;
+					sums[b] = y[a] + y[c];
+				} else {
+					int[] pmin = minIndex[level - 1];
+					int[] pmax = maxIndex[level - 1];
+					mins[b] = (y[pmin[c]] < y[pmin[a]]) ? pmin[c] : pmin[a];
+					maxs[b] = (y[pmax[c]] > y[pmax[a]]) ? pmax[c] : pmax[a];
+					sums[b] = sum[level - 1][a] + sum[level - 1][c];
+				}
+			}
+			minIndex[level] = mins;
+			maxIndex[level] = maxs;
+			sum[level] = sums;
+		}
+	}
+
+	/**
+	 * Gets the min/max envelope of the data points between the two specified x values, inclusive. Each bin
+	 * contributes its minimum and maximum point in x order, so the result preserves every peak when drawn as a line.
+	 * The result never has more than <code>maxPoints</code> points; a budget of one returns only the maximum.
+	 *
+	 * @param x1
+	 *            the starting x value.
+	 * @param x2
+	 *            the ending x value.
+	 * @param maxPoints
+	 *            the maximum number of points to return.
+	 * @return the list of data points.
+	 */
+	public List<Datum> getEnvelope(final double x1, final double x2, final int maxPoints) {
+		int lo = lowerBound(x1);
+		int hi = upperBound(x2);
+		List<Datum> data = new ArrayList<Datum>();
+		if (hi - lo <= maxPoints) {
+			for (int i = lo; i < hi; i++) {
+				data.add(new Datum(x[i], y[i]));
+			}
+			return data;
+		}
+
+		int level = level(hi - lo, maxPoints / 2);
+		if (level == -1) {
+			// too few points for even the coarsest bins, so the whole range is one bin
+			if (maxPoints == 1) {
+				int max = extremes(lo, hi)[1];
+				data.add(new Datum(x[max], y[max]));
+			} else if (maxPoints > 1) {
+				addExtremes(data, lo, hi);
+			}
+			return data;
+		}
+		int first = (lo + (1 << level) - 1) >> level;
+		int last = hi >> level;
+		if (first >= last) {
+			addExtremes(data, lo, hi);
+			return data;
+		}
+		addExtremes(data, lo, first << level);
+		for (int b = first; b < last; b++) {
+			addPair(data, minIndex[level][b], maxIndex[level][b]);
+		}
+		addExtremes(data, last << level, hi);
+		return data;
+	}
+
+	/**
+	 * Gets the bin averages of the data points between the two specified x values, inclusive. Each bin contributes
+	 * one point at the center of its x-range with the mean y of its points. The result never has more than
+	 * <code>maxPoints</code> points.
+	 *
+	 * @param x1
+	 *            the starting x value.
+	 * @param x2
+	 *            the ending x value.
+	 * @param maxPoints
+	 *            the maximum number of points to return.
+	 * @return the list of data points.
+	 */
+	public List<Datum> getAverage(final double x1, final double x2, final int maxPoints) {
+		int lo = lowerBound(x1);
+		int hi = upperBound(x2);
+		List<Datum> data = new ArrayList<Datum>();
+		if (hi - lo <= maxPoints) {
+			for (int i = lo; i < hi; i++) {
+				data.add(new Datum(x[i], y[i]));
+			}
+			return data;
+		}
+
+		int level = level(hi - lo, maxPoints);
+		if (level == -1) {
+			if (maxPoints > 0) {
+				addAverage(data, lo, hi);
+			}
+			return data;
+		}
+		int size = 1 << level;
+		int first = (lo + size - 1) >> level;
+		int last = hi >> level;
+		if (first >= last) {
+			addAverage(data, lo, hi);
+			return data;
+		}
+		addAverage(data, lo, first << level);
+		for (int b = first; b < last; b++) {
+			int start = b << level;
+			double mid = (x[start] + x[start + size - 1]) / 2;
+			data.add(new Datum(mid, sum[level][b] / size));
+		}
+		addAverage(data, last << level, hi);
+		return data;
+	}
+
+	// picks the finest level whose full bins, plus the two partial bins at the edges, fit in the budget, or -1 if none
+	protected int level(final int points, final int bins) {
+		for (int level = 1; level < minIndex.length; level++) {
+			if ((points >> level) + 2 <= bins) {
+				return level;
+			}
+		}
+		return -1;
+	}
+
+	// gets the indexes of the minimum and maximum y in [from, to) from the largest aligned bins that cover it
+	protected int[] extremes(final int from, final int to) {
+		int min = from;
+		int max = from;
+		int i = from;
+		while (i < to) {
+			int level = 0;
+			while (level + 1 < minIndex.length && (i & ((2 << level) - 1)) == 0 && i + (2 << level) <= to) {
+				level++;
+			}
+			int lmin = (level == 0) ? i : minIndex[level][i >> level];
+			int lmax = (level == 0) ? i : maxIndex[level][i >> level];
+			if (y[lmin] < y[min]) {
+				min = lmin;
+			}
+			if (y[lmax] > y[max]) {
+				max = lmax;
+			}
+			i += 1 << level;
+		}
+		return new int[] { min, max };
+	}
+
+	// gets the sum of the y values in [from, to) from the largest aligned bins that cover it
+	protected double sum(final int from, final int to) {
+		double total = 0;
+		int i = from;
+		while (i < to) {
+			int level = 0;
+			while (level + 1 < sum.length && (i & ((2 << level) - 1)) == 0 && i + (2 << level) <= to) {
+				level++;
+			}
+			total += (level == 0) ? y[i] : sum[level][i >> level];
+			i += 1 << level;
+		}
+		return total;
+	}
+
+	protected void addExtremes(final List<Datum> data, final int from, final int to) {
+		if (from < to) {
+			int[] extremes = extremes(from, to);
+			addPair(data, extremes[0], extremes[1]);
+		}
+	}
+
+	protected void addPair(final List<Datum> data, final int a, final int b) {
+		int first = Math.min(a, b);
+		int second = Math.max(a, b);
+		data.add(new Datum(x[first], y[first]));
+		if (second != first) {
+			data.add(new Datum(x[second], y[second]));
+		}
+	}
+
+	protected void addAverage(final List<Datum> data, final int from, final int to) {
+		if (from < to) {
+			data.add(new Datum((x[from] + x[to - 1]) / 2, sum(from, to) / (to - from)));
+		}
+	}
+
+	protected int lowerBound(final double value) {
+		int lo = 0;
+		int hi = count;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (x[mid] < value) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	protected int upperBound(final double value) {
+		int lo = 0;
+		int hi = count;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (x[mid] <= value) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+}
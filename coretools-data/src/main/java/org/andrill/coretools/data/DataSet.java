@@ -88,6 +88,36 @@ public interface DataSet {
 	 */
 	public List<Datum> get(double x, int before, int after);
 
+	/**
+	 * Gets a smoothed view of the data points between the two specified x values, inclusive, for rendering. If there
+	 * are more than <code>maxPoints</code> points in the range, the mean of each of a number of equal-count bins is
+	 * returned instead.
+	 * 
+	 * @param x1
+	 *            the starting x value.
+	 * @param x2
+	 *            the ending x value.
+	 * @param maxPoints
+	 *            the maximum number of points to return.
+	 * @return the list of data points.
+	 */
+	List<Datum> getAveraged(double x1, double x2, int maxPoints);
+
+	/**
+	 * Gets a decimated view of the data points between the two specified x values, inclusive, for rendering. If
+	 * there are more than <code>maxPoints</code> points in the range, the minimum and maximum point of each of a
+	 * number of equal-count bins are returned instead so that peaks are preserved.
+	 * 
+	 * @param x1
+	 *            the starting x value.
+	 * @param x2
+	 *            the ending x value.
+	 * @param maxPoints
+	 *            the maximum number of points to return.
+	 * @return the list of data points.
+	 */
+	List<Datum> getDecimated(double x1, double x2, int maxPoints);
+
 	/**
 	 * Gets all data in this data set.
 	 * 
@@ -87,6 +87,15 @@ public class DefaultDataSet implements DataSet {
 		}
 	}
 
+	/**
+	 * A factory for DefaultDataSets.
+	 */
+	public static final DataSetFactory FACTORY = new DataSetFactory() {
+		public DataSet createDataSet(final String name) {
+			return new DefaultDataSet(name);
+		}
+	};
+
 	protected static final DecimalFormat DEC = new DecimalFormat("0.0#####");
 
 	/**
@@ -133,6 +142,7 @@ public class DefaultDataSet implements DataSet {
 	protected int segMax = 0;
 	protected double max = Double.MIN_VALUE;
 	protected double min = Double.MAX_VALUE;
+	protected DataPyramid pyramid = null;
 
 	/**
 	 * Create a new DefaultDataSet.
@@ -216,6 +226,42 @@ public class DefaultDataSet implements DataSet {
 		return data;
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 */
+	public List<Datum> getAveraged(final double x1, final double x2, final int maxPoints) {
+		return getPyramid().getAverage(x1, x2, maxPoints);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public List<Datum> getDecimated(final double x1, final double x2, final int maxPoints) {
+		return getPyramid().getEnvelope(x1, x2, maxPoints);
+	}
+
+	/**
+	 * Gets the level-of-detail pyramid for this data set, building it if necessary.
+	 * 
+	 * @return the pyramid.
+	 */
+	public synchronized DataPyramid getPyramid() {
+		if (pyramid == null) {
+			double[] xs = new double[count];
+			double[] ys = new double[count];
+			int i = 0;
+			for (List<Datum> segment : segments.values()) {
+				for (Datum d : segment) {
+					xs[i] = d.x;
+					ys[i] = d.y;
+					i++;
+				}
+			}
+			pyramid = new DataPyramid(xs, ys, i);
+		}
+		return pyramid;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -351,6 +397,8 @@ public class DefaultDataSet implements DataSet {
 	 * {@inheritDoc}
 	 */
 	public void put(final Datum datum) {
+		pyramid = null;
+
 		// get the segment
 		int segmentIndex = function.hash(datum.x);
 		List<Datum> segment = segments.get(segmentIndex);
@@ -380,12 +428,52 @@ public class DefaultDataSet implements DataSet {
 		put(new Datum(x, y));
 	}
 
+	/**
+	 * Puts data points that are already in x order, appending them to their segments rather than inserting them one
+	 * at a time. Points that are out of order are inserted as usual.
+	 * 
+	 * @param x
+	 *            the x values.
+	 * @param y
+	 *            the y values.
+	 * @param length
+	 *            the number of data points.
+	 */
+	public void putSorted(final double[] x, final double[] y, final int length) {
+		pyramid = null;
+		List<Datum> segment = null;
+		int segmentIndex = 0;
+		for (int i = 0; i < length; i++) {
+			int hash = function.hash(x[i]);
+			if (segment == null || hash != segmentIndex) {
+				segmentIndex = hash;
+				segment = segments.get(segmentIndex);
+				if (segment == null) {
+					segment = new ArrayList<Datum>();
+					segments.put(segmentIndex, segment);
+				}
+			}
+			if (!segment.isEmpty() && segment.get(segment.size() - 1).x > x[i]) {
+				put(x[i], y[i]);
+				continue;
+			}
+			segment.add(new Datum(x[i], y[i]));
+
+			// update stats
+			count++;
+			max = Math.max(max, y[i]);
+			min = Math.min(min, y[i]);
+			segMax = Math.max(segMax, segment.size());
+		}
+	}
+
 	/**
 	 * 
 	 * @param datum
 	 */
 	public void remove(final Datum datum) {
 		if (getSegment(datum.x).remove(datum)) {
+			pyramid = null;
 			count--;
 		}
 	}
@@ -399,6 +487,7 @@ public class DefaultDataSet implements DataSet {
 			int index = Collections.binarySearch(segment, new Datum(x, 0.0));
 			while (index >= 0) {
 				if (segment.remove(index) != null) {
+					pyramid = null;
 					count--;
 				}
 				index = Collections.binarySearch(segment, new Datum(x, 0.0));
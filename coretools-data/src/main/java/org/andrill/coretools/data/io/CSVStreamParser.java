@@ -0,0 +1,454 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools.data.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.andrill.coretools.FileUtils;
+import org.andrill.coretools.JobService;
+import org.andrill.coretools.JobService.Priority;
+import org.andrill.coretools.data.ArrayDataSet;
+import org.andrill.coretools.data.DataSet;
+import org.andrill.coretools.data.DataSetFactory;
+
+/**
+ * A single-pass, streaming parser for delimited data files. The file is read through an NIO channel and tokenized
+ * at the byte level into blocks of rows; the numeric columns of each block are then parsed in parallel on the job
+ * service, one task per group of columns, while the next block is being read. Numbers are parsed with a {@link DoubleParser} so no Strings
+ * are created for data values. Columnar data sets are bulk-sorted once the whole file has been read.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public class CSVStreamParser {
+	/**
+	 * Defines the interface for a parse progress callback.
+	 */
+	public interface Progress {
+		/**
+		 * Called periodically as the file is parsed.
+		 *
+		 * @param position
+		 *            the number of bytes read so far.
+		 * @param length
+		 *            the total number of bytes or -1 if unknown.
+		 */
+		void progress(long position, long length);
+	}
+
+	// a block of tokenized rows; field contents are copied (unquoted) into a single byte array
+	static class Block {
+		byte[] bytes = new byte[1 << 16];
+		int length = 0;
+		int[] fieldStart = new int[1024];
+		int[] fieldEnd = new int[1024];
+		int fields = 0;
+		int[] rowStart = new int[BLOCK_ROWS + 1];
+		int rows = 0;
+		double[] x = new double[BLOCK_ROWS];
+		boolean[] valid = new boolean[BLOCK_ROWS];
+
+		void append(final byte b) {
+			if (length == bytes.length) {
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			}
+			bytes[length++] = b;
+		}
+
+		void endField(final int start) {
+			if (fields == fieldStart.length) {
+				fieldStart = Arrays.copyOf(fieldStart, fields * 2);
+				fieldEnd = Arrays.copyOf(fieldEnd, fields * 2);
+			}
+			fieldStart[fields] = start;
+			fieldEnd[fields] = length;
+			fields++;
+		}
+
+		int fieldCount(final int row) {
+			return rowStart[row + 1] - rowStart[row];
+		}
+
+		void reset() {
+			length = 0;
+			fields = 0;
+			rows = 0;
+		}
+	}
+
+	// a parse task run by the job service, or by the parsing thread if the service has not started it yet
+	abstract static class Task implements Callable<Object> {
+		private final AtomicBoolean claimed = new AtomicBoolean(false);
+		Future<Object> future;
+
+		public Object call() throws Exception {
+			if (claim()) {
+				run();
+			}
+			return null;
+		}
+
+		boolean claim() {
+			return claimed.compareAndSet(false, true);
+		}
+
+		abstract void run();
+	}
+
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final int BLOCK_ROWS = 16384;
+
+	protected final byte separator;
+	protected final byte quote;
+	protected final int skipLines;
+	protected final int column;
+	protected final DataSetFactory factory;
+	protected int threads = Runtime.getRuntime().availableProcessors();
+	protected JobService jobs = null;
+
+	// parse state
+	protected Map<Integer, DataSet> datasets;
+	protected DataSet[] columns;
+	protected List<Task> pending = new ArrayList<Task>();
+
+	/**
+	 * Create a new CSVStreamParser.
+	 *
+	 * @param separator
+	 *            the separator character.
+	 * @param quote
+	 *            the quote character.
+	 * @param skipLines
+	 *            the number of lines to skip before the header row.
+	 * @param column
+	 *            the index of the x column.
+	 * @param factory
+	 *            the factory for the data sets.
+	 */
+	public CSVStreamParser(final char separator, final char quote, final int skipLines, final int column,
+	        final DataSetFactory factory) {
+		this.separator = (byte) separator;
+		this.quote = (byte) quote;
+		this.skipLines = skipLines;
+		this.column = column;
+		this.factory = factory;
+	}
+
+	/**
+	 * Sets the job service used to parse columns in parallel. Without one, columns are parsed on the calling thread.
+	 *
+	 * @param jobs
+	 *            the job service or null.
+	 */
+	public void setJobService(final JobService jobs) {
+		this.jobs = jobs;
+	}
+
+	/**
+	 * Sets the number of tasks the columns of each block are split into.
+	 *
+	 * @param threads
+	 *            the number of tasks.
+	 */
+	public void setThreads(final int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Parses the data sets from the specified URL.
+	 *
+	 * @param url
+	 *            the url.
+	 * @param progress
+	 *            the progress callback or null.
+	 * @return the data sets keyed by column index.
+	 * @throws IOException
+	 *             thrown if there is a problem reading the file.
+	 */
+	public Map<Integer, DataSet> parse(final URL url, final Progress progress) throws IOException {
+		long length = -1;
+		ReadableByteChannel channel;
+		File file = FileUtils.toFile(url);
+		if (file != null) {
+			FileChannel fc = FileChannel.open(file.toPath());
+			length = fc.size();
+			channel = fc;
+		} else {
+			URLConnection connection = url.openConnection();
+			length = connection.getContentLength();
+			channel = Channels.newChannel(connection.getInputStream());
+		}
+		datasets = new LinkedHashMap<Integer, DataSet>();
+		columns = null;
+		try {
+			read(channel, length, progress);
+			finish();
+		} finally {
+			channel.close();
+			for (Task task : pending) {
+				// don't leave queued tasks to parse into the data sets after a failure
+				task.claim();
+			}
+			pending.clear();
+		}
+		return datasets;
+	}
+
+	protected void read(final ReadableByteChannel channel, final long length, final Progress progress)
+	        throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		byte[] bytes = buffer.array();
+		Block[] blocks = { new Block(), new Block() };
+		int current = 0;
+		Block block = blocks[current];
+
+		long position = 0;
+		int skip = skipLines;
+		boolean header = true;
+		boolean inQuotes = false;
+		boolean quotePending = false;
+		boolean cr = false;
+		int fieldStart = 0;
+
+		// skip the UTF-8 byte order mark
+		int offset = 0;
+		while (buffer.position() < 3 && channel.read(buffer) != -1) {
+			// keep reading until we can see the whole mark
+		}
+		if (buffer.position() >= 3 && (bytes[0] & 0xFF) == 0xEF && (bytes[1] & 0xFF) == 0xBB
+		        && (bytes[2] & 0xFF) == 0xBF) {
+			offset = 3;
+		}
+
+		while (true) {
+			int n = buffer.position();
+			position += n;
+			for (int i = offset; i < n; i++) {
+				byte b = bytes[i];
+				if (cr) {
+					// the line feed of a CRLF line ending
+					cr = false;
+					if (b == '\n') {
+						continue;
+					}
+				}
+				if (skip > 0) {
+					if (b == '\n' || b == '\r') {
+						cr = (b == '\r');
+						skip--;
+					}
+					continue;
+				}
+				if (quotePending) {
+					quotePending = false;
+					if (b == quote) {
+						// escaped quote
+						block.append(b);
+						inQuotes = true;
+						continue;
+					}
+				}
+				if (inQuotes) {
+					if (b == quote) {
+						inQuotes = false;
+						quotePending = true;
+					} else {
+						block.append(b);
+					}
+				} else if (b == quote) {
+					inQuotes = true;
+				} else if (b == separator) {
+					block.endField(fieldStart);
+					fieldStart = block.length;
+				} else if (b == '\n' || b == '\r') {
+					cr = (b == '\r');
+					block.endField(fieldStart);
+					if (endRow(block, header)) {
+						header = false;
+					}
+					if (block.rows == BLOCK_ROWS) {
+						// wait for the other block, then hand this one off and start filling the other
+						await();
+						submit(block);
+						current = 1 - current;
+						block = blocks[current];
+						block.reset();
+					}
+					fieldStart = block.length;
+				} else {
+					block.append(b);
+				}
+			}
+			offset = 0;
+			buffer.clear();
+			if (progress != null) {
+				progress.progress(position, length);
+			}
+			if (channel.read(buffer) == -1) {
+				break;
+			}
+		}
+
+		// handle a final line without a trailing newline
+		if (block.length > fieldStart || block.fields > block.rowStart[block.rows]) {
+			block.endField(fieldStart);
+			endRow(block, header);
+		}
+		await();
+		submit(block);
+		await();
+	}
+
+	// completes the current row; returns true if it was the header row
+	protected boolean endRow(final Block block, final boolean header) throws UnsupportedEncodingException {
+		int first = block.rowStart[block.rows];
+		int count = block.fields - first;
+		if (count == 1 && block.fieldEnd[first] == block.fieldStart[first]) {
+			// skip blank lines
+			block.fields = first;
+			block.length = block.fieldStart[first];
+			return false;
+		}
+		if (header) {
+			List<DataSet> list = new ArrayList<DataSet>();
+			for (int i = 0; i < count; i++) {
+				DataSet dataset = null;
+				if (i != column) {
+					int s = block.fieldStart[first + i];
+					String name = new String(block.bytes, s, block.fieldEnd[first + i] - s, "UTF-8");
+					dataset = factory.createDataSet(name);
+					datasets.put(i, dataset);
+				}
+				list.add(dataset);
+			}
+			columns = list.toArray(new DataSet[list.size()]);
+			block.reset();
+			return true;
+		}
+		block.rows++;
+		block.rowStart[block.rows] = block.fields;
+		return false;
+	}
+
+	// parses the x column and submits one task per group of columns
+	protected void submit(final Block block) {
+		if (block.rows == 0 || columns == null) {
+			return;
+		}
+		DoubleParser parser = new DoubleParser();
+		for (int r = 0; r < block.rows; r++) {
+			int f = block.rowStart[r] + column;
+			block.valid[r] = (column < block.fieldCount(r))
+			        && parser.parse(block.bytes, block.fieldStart[f], block.fieldEnd[f]);
+			block.x[r] = parser.getValue();
+		}
+
+		int tasks = Math.min(threads, columns.length);
+		for (int t = 0; t < tasks; t++) {
+			final int offset = t;
+			final int stride = tasks;
+			submit(new Task() {
+				@Override
+				void run() {
+					parseColumns(block, offset, stride);
+				}
+			});
+		}
+	}
+
+	protected void submit(final Task task) {
+		if (jobs != null) {
+			try {
+				task.future = jobs.submit(task, Priority.MEDIUM);
+			} catch (RejectedExecutionException e) {
+				// parsed on this thread when it is awaited
+			}
+		}
+		pending.add(task);
+	}
+
+	protected void parseColumns(final Block block, final int offset, final int stride) {
+		DoubleParser parser = new DoubleParser();
+		for (int c = offset; c < columns.length; c += stride) {
+			DataSet dataset = columns[c];
+			if (dataset != null) {
+				for (int r = 0; r < block.rows; r++) {
+					if (block.valid[r] && c < block.fieldCount(r)) {
+						int f = block.rowStart[r] + c;
+						if (parser.parse(block.bytes, block.fieldStart[f], block.fieldEnd[f])) {
+							dataset.put(block.x[r], parser.getValue());
+						}
+					}
+				}
+			}
+		}
+	}
+
+	protected void await() throws IOException {
+		try {
+			for (Task task : pending) {
+				if (task.claim()) {
+					// not started yet, so run it here rather than wait for a pool thread
+					task.run();
+				} else if (task.future != null) {
+					task.future.get();
+				}
+			}
+		} catch (RuntimeException e) {
+			throw new IOException("Unable to parse data", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while parsing");
+		} catch (ExecutionException e) {
+			throw new IOException("Unable to parse data", e.getCause());
+		} finally {
+			pending.clear();
+		}
+	}
+
+	// bulk sort any columnar data sets
+	protected void finish() throws IOException {
+		for (final DataSet dataset : datasets.values()) {
+			if (dataset instanceof ArrayDataSet) {
+				submit(new Task() {
+					@Override
+					void run() {
+						((ArrayDataSet) dataset).sort();
+						((ArrayDataSet) dataset).trimToSize();
+					}
+				});
+			}
+		}
+		await();
+	}
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools.data.io;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.andrill.coretools.FileUtils;
+import org.andrill.coretools.data.ArrayDataSet;
+import org.andrill.coretools.data.DataSet;
+import org.andrill.coretools.data.DataSetFactory;
+import org.andrill.coretools.data.Datum;
+import org.andrill.coretools.data.DefaultDataSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A binary, columnar sidecar cache (<code>&lt;file&gt;.ctcache</code>) for the data sets parsed from a data file.
+ * The cache records the source path, modification time, size and parser settings it was built with and is ignored
+ * if any of them change. Cached x and y values are read back in bulk, so reopening a large data file does not
+ * require parsing it again. A cache that is out of date or unreadable is deleted when it is loaded, and rewritten once
+ * the data file has been parsed again, so the sidecar never outlives a change to its data file.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public class DataSetCache {
+	/**
+	 * The cache file extension.
+	 */
+	public static final String EXTENSION = ".ctcache";
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(DataSetCache.class);
+	private static final long MAGIC = 0x4354434143484531L; // CTCACHE1
+	private static final int CHUNK = 1 << 16; // doubles written per chunk
+
+	/**
+	 * Gets the cache for the specified data file, if it is a local file.
+	 *
+	 * @param url
+	 *            the data file url.
+	 * @param settings
+	 *            the parser settings the cache is keyed on.
+	 * @return the cache or null if the data file is not a local file.
+	 */
+	public static DataSetCache forURL(final URL url, final String settings) {
+		File source = FileUtils.toFile(url);
+		return (source == null) ? null : new DataSetCache(source, settings);
+	}
+
+	protected final File source;
+	protected final File file;
+	protected final String settings;
+
+	/**
+	 * Create a new DataSetCache.
+	 *
+	 * @param source
+	 *            the source data file.
+	 * @param settings
+	 *            the parser settings the cache is keyed on.
+	 */
+	public DataSetCache(final File source, final String settings) {
+		this.source = source;
+		this.file = new File(source.getPath() + EXTENSION);
+		this.settings = settings;
+	}
+
+	/**
+	 * Gets the cache file.
+	 *
+	 * @return the cache file.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Loads the cached data sets.
+	 *
+	 * @param factory
+	 *            the factory for the data sets.
+	 * @return the data sets keyed by column index, or null if there is no up-to-date cache.
+	 */
+	public Map<Integer, DataSet> load(final DataSetFactory factory) {
+		if (!file.exists()) {
+			return null;
+		}
+		Map<Integer, DataSet> datasets = read(factory);
+		if (datasets == null) {
+			delete();
+		}
+		return datasets;
+	}
+
+	/**
+	 * Deletes the cache file.
+	 */
+	public void delete() {
+		if (file.exists() && !file.delete()) {
+			LOGGER.debug("Unable to delete data cache {}", file);
+		}
+	}
+
+	protected Map<Integer, DataSet> read(final DataSetFactory factory) {
+		// check the header with a regular read so we never map a stale file we may be about to replace
+		List<Integer> columns = new ArrayList<Integer>();
+		List<String> names = new ArrayList<String>();
+		List<Integer> counts = new ArrayList<Integer>();
+		long offset;
+		long total = 0;
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readLong() != MAGIC) {
+				return null;
+			}
+			byte[] header = new byte[in.readInt()];
+			in.readFully(header);
+			offset = 12 + header.length;
+
+			DataInputStream h = new DataInputStream(new ByteArrayInputStream(header));
+			if (!source.getAbsolutePath().equals(h.readUTF()) || source.lastModified() != h.readLong()
+			        || source.length() != h.readLong() || !settings.equals(h.readUTF())) {
+				return null;
+			}
+			int n = h.readInt();
+			for (int i = 0; i < n; i++) {
+				columns.add(h.readInt());
+				names.add(h.readUTF());
+				int count = h.readInt();
+				counts.add(count);
+				total += count;
+			}
+		} catch (IOException e) {
+			LOGGER.debug("Unable to read data cache {}: {}", file, e.getMessage());
+			return null;
+		} finally {
+			FileUtils.closeQuietly(in);
+		}
+		if (file.length() != offset + total * 16) {
+			return null;
+		}
+
+		// read the data; the file isn't mapped, since a mapping keeps it locked on Windows until it is collected and
+		// we may need to replace it
+		FileInputStream fis = null;
+		try {
+			fis = new FileInputStream(file);
+			FileChannel channel = fis.getChannel();
+			Map<Integer, DataSet> datasets = new LinkedHashMap<Integer, DataSet>();
+			long position = offset;
+			for (int i = 0; i < columns.size(); i++) {
+				int count = counts.get(i);
+				DataSet dataset = factory.createDataSet(names.get(i));
+				if (count > 0) {
+					ByteBuffer buffer = ByteBuffer.allocate(count * 8);
+					double[] x = new double[count];
+					double[] y = new double[count];
+					read(channel, buffer, position);
+					buffer.asDoubleBuffer().get(x);
+					read(channel, buffer, position + count * 8L);
+					buffer.asDoubleBuffer().get(y);
+					if (dataset instanceof ArrayDataSet) {
+						((ArrayDataSet) dataset).put(DoubleBuffer.wrap(x), DoubleBuffer.wrap(y));
+					} else if (dataset instanceof DefaultDataSet) {
+						((DefaultDataSet) dataset).putSorted(x, y, count);
+					} else {
+						for (int j = 0; j < count; j++) {
+							dataset.put(x[j], y[j]);
+						}
+					}
+				}
+				position += count * 16L;
+				datasets.put(columns.get(i), dataset);
+			}
+			return datasets;
+		} catch (IOException e) {
+			LOGGER.debug("Unable to read data cache {}: {}", file, e.getMessage());
+			return null;
+		} finally {
+			FileUtils.closeQuietly(fis);
+		}
+	}
+
+	/**
+	 * Stores the data sets in the cache, replacing any existing cache. Failures are logged but otherwise ignored
+	 * since the cache is only an optimization.
+	 *
+	 * @param datasets
+	 *            the data sets keyed by column index.
+	 */
+	public void store(final Map<Integer, DataSet> datasets) {
+		File tmp = new File(file.getPath() + ".tmp");
+		FileOutputStream out = null;
+		try {
+			// gather the data of any segmented data sets once
+			Map<DataSet, List<Datum>> data = new LinkedHashMap<DataSet, List<Datum>>();
+			for (DataSet dataset : datasets.values()) {
+				if (!(dataset instanceof ArrayDataSet)) {
+					data.put(dataset, dataset.getAllData());
+				}
+			}
+
+			// build the header
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream h = new DataOutputStream(bytes);
+			h.writeUTF(source.getAbsolutePath());
+			h.writeLong(source.lastModified());
+			h.writeLong(source.length());
+			h.writeUTF(settings);
+			h.writeInt(datasets.size());
+			for (Map.Entry<Integer, DataSet> e : datasets.entrySet()) {
+				DataSet dataset = e.getValue();
+				h.writeInt(e.getKey());
+				h.writeUTF(dataset.getName());
+				if (dataset instanceof ArrayDataSet) {
+					h.writeInt(((ArrayDataSet) dataset).size());
+				} else {
+					h.writeInt(data.get(dataset).size());
+				}
+			}
+			h.flush();
+
+			out = new FileOutputStream(tmp);
+			FileChannel channel = out.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate(12 + bytes.size());
+			buffer.putLong(MAGIC);
+			buffer.putInt(bytes.size());
+			buffer.put(bytes.toByteArray());
+			buffer.flip();
+			write(channel, buffer);
+
+			// write the data, all x values then all y values for each data set
+			buffer = ByteBuffer.allocate(CHUNK * 8);
+			DoubleBuffer doubles = buffer.asDoubleBuffer();
+			for (DataSet dataset : datasets.values()) {
+				double[][] values = (dataset instanceof ArrayDataSet) ? ((ArrayDataSet) dataset).toArrays() : null;
+				for (int pass = 0; pass < 2; pass++) {
+					if (values != null) {
+						double[] array = values[pass];
+						for (int i = 0; i < array.length;) {
+							int length = Math.min(doubles.remaining(), array.length - i);
+							doubles.put(array, i, length);
+							i += length;
+							if (!doubles.hasRemaining()) {
+								flush(channel, buffer, doubles);
+							}
+						}
+					} else {
+						for (Datum d : data.get(dataset)) {
+							doubles.put((pass == 0) ? d.x : d.y);
+							if (!doubles.hasRemaining()) {
+								flush(channel, buffer, doubles);
+							}
+						}
+					}
+				}
+			}
+			flush(channel, buffer, doubles);
+			out.close();
+			out = null;
+
+			// replace the old cache
+			FileUtils.replace(tmp, file);
+		} catch (IOException e) {
+			LOGGER.debug("Unable to write data cache {}: {}", file, e.getMessage());
+			tmp.delete();
+		} finally {
+			FileUtils.closeQuietly(out);
+		}
+	}
+
+	private void flush(final FileChannel channel, final ByteBuffer buffer, final DoubleBuffer doubles)
+	        throws IOException {
+		buffer.position(0);
+		buffer.limit(doubles.position() * 8);
+		write(channel, buffer);
+		buffer.clear();
+		doubles.clear();
+	}
+
+	private void write(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private void read(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+		buffer.clear();
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of " + file);
+			}
+		}
+		buffer.flip();
+	}
+}
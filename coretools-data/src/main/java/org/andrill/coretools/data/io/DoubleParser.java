@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools.data.io;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Parses decimal numbers directly from ASCII bytes without creating intermediate Strings. Plain decimal and
+ * exponent notation with up to 18 significant digits and a small exponent is converted exactly (the result is
+ * identical to {@link Double#parseDouble(String)}); anything else falls back to Double.parseDouble. Instances are
+ * not thread-safe, so use one per thread.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public class DoubleParser {
+	private static final double[] POW10 = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+	        1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+	private static final long MAX_EXACT = 1L << 53;
+
+	protected double value;
+
+	/**
+	 * Gets the value of the last successful parse.
+	 *
+	 * @return the value.
+	 */
+	public double getValue() {
+		return value;
+	}
+
+	/**
+	 * Parses a number from the specified bytes.
+	 *
+	 * @param buf
+	 *            the buffer.
+	 * @param start
+	 *            the start offset, inclusive.
+	 * @param end
+	 *            the end offset, exclusive.
+	 * @return true if a number was parsed, false otherwise.
+	 */
+	public boolean parse(final byte[] buf, final int start, final int end) {
+		// trim whitespace like Double.parseDouble
+		int s = start;
+		int e = end;
+		while (s < e && buf[s] <= ' ') {
+			s++;
+		}
+		while (e > s && buf[e - 1] <= ' ') {
+			e--;
+		}
+		if (s == e) {
+			return false;
+		}
+
+		int i = s;
+		boolean negative = false;
+		if (buf[i] == '-' || buf[i] == '+') {
+			negative = (buf[i] == '-');
+			i++;
+		}
+		if (i == e) {
+			return false;
+		}
+		byte first = buf[i];
+		if ((first < '0' || first > '9') && first != '.') {
+			// only NaN and Infinity are valid here
+			return (first == 'N' || first == 'I') && fallback(buf, s, e);
+		}
+
+		long mantissa = 0;
+		int significant = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean point = false;
+		for (; i < e; i++) {
+			byte b = buf[i];
+			if (b >= '0' && b <= '9') {
+				digits++;
+				if (mantissa == 0 && b == '0') {
+					// leading zeros are not significant
+				} else if (++significant > 18) {
+					return fallback(buf, s, e);
+				} else {
+					mantissa = mantissa * 10 + (b - '0');
+				}
+				if (point) {
+					exponent--;
+				}
+			} else if (b == '.' && !point) {
+				point = true;
+			} else {
+				break;
+			}
+		}
+		if (digits == 0) {
+			return false;
+		}
+		if (i < e) {
+			if (buf[i] != 'e' && buf[i] != 'E') {
+				return fallback(buf, s, e);
+			}
+			i++;
+			boolean negativeExp = false;
+			if (i < e && (buf[i] == '-' || buf[i] == '+')) {
+				negativeExp = (buf[i] == '-');
+				i++;
+			}
+			if (i == e) {
+				return false;
+			}
+			int exp = 0;
+			for (; i < e; i++) {
+				byte b = buf[i];
+				if (b < '0' || b > '9' || exp > 9999) {
+					return fallback(buf, s, e);
+				}
+				exp = exp * 10 + (b - '0');
+			}
+			exponent += negativeExp ? -exp : exp;
+		}
+
+		if (mantissa == 0) {
+			value = negative ? -0.0 : 0.0;
+			return true;
+		} else if (mantissa < MAX_EXACT && exponent >= -22 && exponent <= 22) {
+			// both operands are exact so the single rounding gives the correctly rounded result
+			double v = (exponent < 0) ? mantissa / POW10[-exponent] : mantissa * POW10[exponent];
+			value = negative ? -v : v;
+			return true;
+		} else {
+			return fallback(buf, s, e);
+		}
+	}
+
+	protected boolean fallback(final byte[] buf, final int start, final int end) {
+		try {
+			value = Double.parseDouble(new String(buf, start, end - start, "ISO-8859-1"));
+			return true;
+		} catch (NumberFormatException e) {
+			return false;
+		} catch (UnsupportedEncodingException e) {
+			return false;
+		}
+	}
+}
@@ -16,7 +16,6 @@
 package org.andrill.coretools.data.models;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
@@ -24,12 +23,18 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.andrill.coretools.JobService;
+import org.andrill.coretools.Platform;
+import org.andrill.coretools.data.ArrayDataSet;
 import org.andrill.coretools.data.DataSet;
+import org.andrill.coretools.data.DataSetFactory;
 import org.andrill.coretools.data.DataSource;
 import org.andrill.coretools.data.DefaultDataSet;
+import org.andrill.coretools.data.io.CSVStreamParser;
+import org.andrill.coretools.data.io.DataSetCache;
 import org.andrill.coretools.model.Model;
 import org.andrill.coretools.model.ModelContainer;
-import org.andrill.coretools.misc.io.BOMAwareCSVReader;
+import org.andrill.coretools.model.Project;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,6 +42,21 @@ import org.slf4j.LoggerFactory;
 import au.com.bytecode.opencsv.CSVReader;
 
 public class CSVDataFile implements Model, DataSource {
+	/**
+	 * The default storage: segmented DefaultDataSets.
+	 */
+	public static final String STORAGE_SEGMENTED = "segmented";
+
+	/**
+	 * Columnar storage: ArrayDataSets backed by primitive double arrays.
+	 */
+	public static final String STORAGE_ARRAY = "array";
+
+	/**
+	 * The project property that turns the data set cache off for a project when set to false.
+	 */
+	public static final String CACHE_PROPERTY = "cache-data";
+
 	private static Logger LOGGER = LoggerFactory.getLogger(CSVDataFile.class);
 	protected ModelContainer container = null;
 	protected Map<Integer, DataSet> datasets = null;
@@ -45,14 +65,22 @@ public class CSVDataFile implements Model, DataSource {
 	protected char quote;
 	protected int skipLines;
 	protected int column; // index of the 'x' column, typically depth
+	protected String storage;
+	protected Boolean cache = null;
 
 	public CSVDataFile(final String path, final String separator, final String quote, final int skipLines,
 	        final int column) {
+		this(path, separator, quote, skipLines, column, null);
+	}
+
+	public CSVDataFile(final String path, final String separator, final String quote, final int skipLines,
+	        final int column, final String storage) {
 		this.path = path;
 		this.separator = (separator == null ? CSVReader.DEFAULT_SEPARATOR : separator.charAt(0));
 		this.quote = (quote == null ? CSVReader.DEFAULT_QUOTE_CHARACTER : quote.charAt(0));
 		this.skipLines = (skipLines < 0 ? 0 : skipLines);
 		this.column = (column < 0 ? 0 : column);
+		this.storage = (storage == null ? STORAGE_SEGMENTED : storage);
 	}
 
 	/**
@@ -73,11 +101,21 @@ public class CSVDataFile implements Model, DataSource {
 	 * {@inheritDoc}
 	 */
 	public List<DataSet> getDatasets() {
+		return getDatasets(null);
+	}
+
+	/**
+	 * Gets the data sets in this file, parsing it if necessary.
+	 * 
+	 * @param progress
+	 *            the progress callback or null.
+	 * @return the data sets.
+	 */
+	public synchronized List<DataSet> getDatasets(final CSVStreamParser.Progress progress) {
 		if (datasets == null) {
 			datasets = new HashMap<Integer, DataSet>();
 			try {
-				BOMAwareCSVReader reader = new BOMAwareCSVReader(new CSVReader(new InputStreamReader(new URL(path).openStream()), separator, quote, skipLines));
-				parse(reader);
+				parse(new URL(path), progress);
 			} catch (MalformedURLException e) {
 				LOGGER.error("Unable to parse csv data file", e);
 			} catch (IOException e) {
@@ -97,6 +135,12 @@ public class CSVDataFile implements Model, DataSource {
 		data.put("quote", "" + quote);
 		data.put("skipLines", "" + skipLines);
 		data.put("column", "" + column);
+		if (!STORAGE_SEGMENTED.equals(storage)) {
+			data.put("storage", storage);
+		}
+		if (cache != null) {
+			data.put("cache", cache.toString());
+		}
 		return data;
 	}
 
@@ -107,33 +151,63 @@ public class CSVDataFile implements Model, DataSource {
 		return getClass().getSimpleName();
 	}
 
-	protected void parse(final BOMAwareCSVReader csv) throws IOException {
-		// parse headers
-		String[] headers = csv.readNext();
-		for (int i = 0; i < headers.length; i++) {
-			if (i != column) {
-				datasets.put(i, new DefaultDataSet(headers[i]));
-			}
+	/**
+	 * Gets the factory for the data sets of this file, based on the configured storage.
+	 * 
+	 * @return the data set factory.
+	 */
+	protected DataSetFactory getDataSetFactory() {
+		return STORAGE_ARRAY.equals(storage) ? ArrayDataSet.FACTORY : DefaultDataSet.FACTORY;
+	}
+
+	/**
+	 * Checks whether parsed data sets are cached in a binary sidecar file next to the data file. Unless it is set for
+	 * this file, caching is on unless the project's {@value #CACHE_PROPERTY} property is false.
+	 * 
+	 * @return true if cached, false otherwise.
+	 */
+	public boolean isCache() {
+		if (cache != null) {
+			return cache;
 		}
+		Project project = (container == null) ? null : container.getProject();
+		return (project == null) || !"false".equals(project.getConfiguration().get(CACHE_PROPERTY));
+	}
 
-		// parse data
-		String[] row = null;
-		while ((row = csv.readNext()) != null) {
-			try {
-				double x = Double.parseDouble(row[column]);
-				for (int i = 0; i < row.length; i++) {
-					if (i != column) {
-						try {
-							datasets.get(i).put(x, Double.parseDouble(row[i]));
-						} catch (NumberFormatException nfe2) {
-							// skip just this value
-						}
-					}
-				}
-			} catch (NumberFormatException nfe1) {
-				// ignore whole row
+	/**
+	 * Sets whether parsed data sets are cached in a binary sidecar file next to the data file, overriding the
+	 * project's {@value #CACHE_PROPERTY} property.
+	 * 
+	 * @param cache
+	 *            true to cache, false otherwise.
+	 */
+	public void setCache(final boolean cache) {
+		this.cache = cache;
+	}
+
+	protected void parse(final URL url, final CSVStreamParser.Progress progress) throws IOException {
+		// try the cache first
+		DataSetCache sidecar = DataSetCache.forURL(url, separator + "|" + quote + "|" + skipLines + "|" + column);
+		if ((sidecar != null) && !isCache()) {
+			// caching was turned off, so don't leave an old cache behind
+			sidecar.delete();
+			sidecar = null;
+		}
+		if (sidecar != null) {
+			Map<Integer, DataSet> cached = sidecar.load(getDataSetFactory());
+			if (cached != null) {
+				datasets.putAll(cached);
+				return;
 			}
 		}
+
+		CSVStreamParser parser = new CSVStreamParser(separator, quote, skipLines, column, getDataSetFactory());
+		parser.setJobService(Platform.getService(JobService.class));
+		Map<Integer, DataSet> parsed = parser.parse(url, progress);
+		datasets.putAll(parsed);
+		if (sidecar != null) {
+			sidecar.store(parsed);
+		}
 	}
 
 	/**
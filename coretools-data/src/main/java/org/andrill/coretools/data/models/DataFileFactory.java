@@ -43,7 +43,11 @@ public class DataFileFactory implements ModelManager.Factory {
 		if (data.containsKey("column")) {
 			Integer.parseInt(data.get("column"));
 		}
-		return new CSVDataFile(path, separator, quote, skipLines, column);
+		CSVDataFile file = new CSVDataFile(path, separator, quote, skipLines, column, data.get("storage"));
+		if (data.containsKey("cache")) {
+			file.setCache(Boolean.parseBoolean(data.get("cache")));
+		}
+		return file;
 	}
 
 	/**
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools.data.io
+
+import groovy.util.GroovyTestCase
+
+import org.andrill.coretools.PriorityJobService
+import org.andrill.coretools.data.ArrayDataSet
+
+class CSVStreamParserTest extends GroovyTestCase {
+	File file
+	PriorityJobService jobs
+
+	void setUp() {
+		file = File.createTempFile("data", ".csv")
+		jobs = new PriorityJobService(2, 16)
+	}
+
+	void tearDown() {
+		jobs.shutdown()
+		file.delete()
+	}
+
+	def parse(String text, int skipLines = 0) {
+		file.withOutputStream { it.write(text.getBytes("UTF-8")) }
+		def parser = new CSVStreamParser(',' as char, '"' as char, skipLines, 0, ArrayDataSet.FACTORY)
+		parser.jobService = jobs
+		parser.parse(file.toURI().toURL(), null)
+	}
+
+	def points(dataset) {
+		dataset.allData.collect { [it.x, it.y] }
+	}
+
+	void testQuoting() {
+		def data = parse('depth,"a, ""b""",c\n"1.5","2",3\n2,,"4"\n')
+		assert ['a, "b"', 'c'] == data.values()*.name
+		assert [[1.5d, 2d]] == points(data[1])
+		assert [[1.5d, 3d], [2d, 4d]] == points(data[2])
+	}
+
+	void testLineEndings() {
+		def expected = parse('skipped\nx,y\n1,2\n\n3,4\n5,6', 1)
+		['\r\n', '\r'].each { eol ->
+			def data = parse("skipped${eol}x,y${eol}1,2${eol}${eol}3,4${eol}5,6", 1)
+			assert ['y'] == data.values()*.name
+			assert points(expected[1]) == points(data[1])
+		}
+		assert [[1d, 2d], [3d, 4d], [5d, 6d]] == points(expected[1])
+	}
+
+	void testBufferBoundary() {
+		// fixed width rows, padded so a CRLF is split across the first read and rows span several blocks
+		def rows = 70000
+		def row = { i -> String.format('%08d,%08d\r\n', i, rows - i) }
+		def width = row(0).length()
+		def boundary = 1 << 20
+		def pad = 'x' * ((boundary - 1 - (width - 2) - 'x,y\r\n'.length() - 2) % width)
+		def text = new StringBuilder("${pad}\r\nx,y\r\n")
+		(0..<rows).each { text << row(it) }
+		assert '\r' == text.charAt(boundary - 1) as String
+		assert '\n' == text.charAt(boundary) as String
+
+		def dataset = parse(text.toString(), 1)[1]
+		assert rows == dataset.size()
+		(0..<rows).step(997) { i -> assert (rows - i) as double == dataset.getY(i) }
+		assert rows - 1 == dataset.getX(rows - 1)
+	}
+
+	void testWithoutJobService() {
+		file.text = 'x,y,z\n2,3,4\n1,5,6\n'
+		def parser = new CSVStreamParser(',' as char, '"' as char, 0, 0, ArrayDataSet.FACTORY)
+		def data = parser.parse(file.toURI().toURL(), null)
+		assert [[1d, 5d], [2d, 3d]] == points(data[1])
+		assert [[1d, 6d], [2d, 4d]] == points(data[2])
+	}
+}
@@ -19,8 +19,11 @@ import java.awt.Graphics2D;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 
 import org.andrill.coretools.graphics.driver.Java2DDriver;
+import org.andrill.coretools.graphics.driver.pdf.PDFImageRegistry;
+import org.andrill.coretools.graphics.driver.pdf.PDFPageDriver;
 import org.andrill.coretools.graphics.util.Paper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,7 +36,8 @@ import com.lowagie.text.pdf.PdfTemplate;
 import com.lowagie.text.pdf.PdfWriter;
 
 /**
- * A PDFGraphics renders graphics to a PDF file.
+ * A PDFGraphics renders graphics to a PDF file. Images and textures are embedded once and shared by every page that
+ * draws them.
  * 
  * @author Josh Reed (jareed@andrill.org)
  */
@@ -49,6 +53,8 @@ public class PDFGraphics {
 	protected Document document;
 	protected PdfWriter writer;
 	protected PdfContentByte content;
+	protected PDFImageRegistry images;
+	protected boolean streaming = false;
 
 	// state
 	protected Graphics2D lastGraphics;
@@ -107,6 +113,29 @@ public class PDFGraphics {
 			throw new RuntimeException("Unable to create PDF document", e);
 		}
 		content = writer.getDirectContent();
+		images = new PDFImageRegistry(writer);
+	}
+
+	/**
+	 * Create a scratch page that has the same size, clip and string metrics as a page but is never added to the
+	 * document. Scratch pages may be created on any thread, so they can be used to lay out pages that are drawn later
+	 * with {@link #newPage()}. The scratch page should be disposed when no longer needed.
+	 * 
+	 * @return the scratch page.
+	 */
+	public GraphicsContext createScratchPage() {
+		Graphics2D graphics = new PdfContentByte(writer).createGraphics(width, height);
+		graphics.translate(leftMargin, topMargin);
+		return new GraphicsContext(new Java2DDriver(graphics));
+	}
+
+	/**
+	 * Gets whether pages are written to the file as they are finished.
+	 * 
+	 * @return true if pages are streamed, false otherwise.
+	 */
+	public boolean isStreaming() {
+		return streaming;
 	}
 
 	/**
@@ -123,12 +152,13 @@ public class PDFGraphics {
 		}
 		if (lastTemplate != null) {
 			content.addTemplate(lastTemplate, 0, 0);
+			release(lastTemplate);
 			document.newPage();
 		}
 		lastTemplate = content.createTemplate(width, height);
 		lastGraphics = lastTemplate.createGraphics(width, height);
 		lastGraphics.translate(leftMargin, topMargin);
-		lastDriver = new GraphicsContext(new Java2DDriver(lastGraphics));
+		lastDriver = new GraphicsContext(new PDFPageDriver(lastGraphics, lastTemplate, height, images));
 		return lastDriver;
 	}
 
@@ -144,8 +174,37 @@ public class PDFGraphics {
 		}
 		if (lastTemplate != null) {
 			content.addTemplate(lastTemplate, 0, 0);
+			release(lastTemplate);
 		}
 		document.close();
 		writer.close();
 	}
+
+	/**
+	 * Sets whether pages are written to the file as they are finished. By default the content of every page is kept
+	 * in memory until the PDF is written; when streaming, the content of a page is written and released as soon as
+	 * the next page is started, so memory use does not grow with the number of pages.
+	 * 
+	 * @param streaming
+	 *            true if pages should be streamed, false otherwise.
+	 */
+	public void setStreaming(final boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	protected void release(final PdfTemplate template) {
+		if (!streaming) {
+			return;
+		}
+		try {
+			writer.releaseTemplate(template);
+			writer.flush();
+		} catch (IOException e) {
+			LOGGER.error("Unable to write PDF page to {}: {}", file.getName(), e.getMessage());
+			throw new RuntimeException("Unable to write PDF page", e);
+		}
+		lastGraphics = null;
+		lastDriver = null;
+		lastTemplate = null;
+	}
 }
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools.graphics.driver;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.andrill.coretools.graphics.driver.Driver.ArcStyle;
+import org.andrill.coretools.graphics.driver.Driver.LineStyle;
+import org.andrill.coretools.graphics.fill.Fill;
+
+/**
+ * An immutable list of drawing operations, as recorded by a {@link RecordingDriver}, that can be replayed to any
+ * {@link Driver}. Operations are stored as opcodes with their coordinates and object arguments packed into separate
+ * arrays.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public class DisplayList {
+	static final byte ARC = 0;
+	static final byte FILL_ARC = 1;
+	static final byte IMAGE_POINT = 2;
+	static final byte IMAGE_RECT = 3;
+	static final byte EMBED_IMAGE = 4;
+	static final byte LINE = 5;
+	static final byte OVAL = 6;
+	static final byte FILL_OVAL = 7;
+	static final byte POINT = 8;
+	static final byte POLYGON = 9;
+	static final byte FILL_POLYGON = 10;
+	static final byte RECTANGLE = 11;
+	static final byte FILL_RECTANGLE = 12;
+	static final byte STRING = 13;
+	static final byte STRING_ROTATED = 14;
+	static final byte PUSH_STATE = 15;
+	static final byte POP_STATE = 16;
+	static final byte PUSH_TRANSFORM = 17;
+	static final byte POP_TRANSFORM = 18;
+	static final byte SET_CLIP = 19;
+	static final byte CLEAR_CLIP = 20;
+	static final byte SET_FILL = 21;
+	static final byte SET_LINE_COLOR = 22;
+	static final byte SET_LINE_STYLE = 23;
+	static final byte SET_LINE_THICKNESS = 24;
+
+	/**
+	 * An empty display list.
+	 */
+	public static final DisplayList EMPTY = new DisplayList(new byte[0], new double[0], new Object[0]);
+
+	protected final byte[] ops;
+	protected final double[] numbers;
+	protected final Object[] objects;
+
+	DisplayList(final byte[] ops, final double[] numbers, final Object[] objects) {
+		this.ops = ops;
+		this.numbers = numbers;
+		this.objects = objects;
+	}
+
+	/**
+	 * Gets the approximate memory used by this display list.
+	 *
+	 * @return the size in bytes.
+	 */
+	public long getByteCount() {
+		return 48 + ops.length + (8L * numbers.length) + (4L * objects.length);
+	}
+
+	/**
+	 * Gets the number of operations in this display list.
+	 *
+	 * @return the number of operations.
+	 */
+	public int getOperationCount() {
+		return ops.length;
+	}
+
+	/**
+	 * Checks whether this display list draws nothing.
+	 *
+	 * @return true if the display list is empty, false otherwise.
+	 */
+	public boolean isEmpty() {
+		return ops.length == 0;
+	}
+
+	/**
+	 * Replays the operations to the specified driver.
+	 *
+	 * @param driver
+	 *            the driver.
+	 */
+	public void replay(final Driver driver) {
+		replay(driver, null);
+	}
+
+	/**
+	 * Replays the operations to the specified driver, keeping all drawing within the specified clip. Clips set by
+	 * the recorded operations are intersected with it and clearing the clip restores it. The clip is in the
+	 * coordinates the driver has when replay starts; recorded clips are mapped through the replayed transforms
+	 * before they are intersected with it.
+	 *
+	 * @param driver
+	 *            the driver.
+	 * @param clip
+	 *            the clip or null for no clip.
+	 */
+	public void replay(final Driver driver, final Rectangle2D clip) {
+		LinkedList<AffineTransform> transforms = new LinkedList<AffineTransform>();
+		transforms.push(new AffineTransform());
+		int n = 0;
+		int o = 0;
+		for (byte op : ops) {
+			switch (op) {
+				case ARC:
+					driver.drawArc(rect(n), numbers[n + 4], numbers[n + 5], (ArcStyle) objects[o++]);
+					n += 6;
+					break;
+				case FILL_ARC:
+					driver.fillArc(rect(n), numbers[n + 4], numbers[n + 5], (ArcStyle) objects[o++]);
+					n += 6;
+					break;
+				case IMAGE_POINT:
+					driver.drawImage(point(n), (URL) objects[o++]);
+					n += 2;
+					break;
+				case IMAGE_RECT:
+					driver.drawImage(rect(n), (URL) objects[o++]);
+					n += 4;
+					break;
+				case EMBED_IMAGE:
+					driver.embedImage(rect(n), (URL) objects[o++]);
+					n += 4;
+					break;
+				case LINE:
+					driver.drawLine(point(n), point(n + 2));
+					n += 4;
+					break;
+				case OVAL:
+					driver.drawOval(rect(n));
+					n += 4;
+					break;
+				case FILL_OVAL:
+					driver.fillOval(rect(n));
+					n += 4;
+					break;
+				case POINT:
+					driver.drawPoint(point(n));
+					n += 2;
+					break;
+				case POLYGON:
+					driver.drawPolygon(polygon(n));
+					n += 1 + (2 * (int) numbers[n]);
+					break;
+				case FILL_POLYGON:
+					driver.fillPolygon(polygon(n));
+					n += 1 + (2 * (int) numbers[n]);
+					break;
+				case RECTANGLE:
+					driver.drawRectangle(rect(n));
+					n += 4;
+					break;
+				case FILL_RECTANGLE:
+					driver.fillRectangle(rect(n));
+					n += 4;
+					break;
+				case STRING:
+					driver.drawString(point(n), (Font) objects[o], (String) objects[o + 1]);
+					n += 2;
+					o += 2;
+					break;
+				case STRING_ROTATED:
+					driver.drawStringRotated(point(n), (Font) objects[o], (String) objects[o + 1], numbers[n + 2]);
+					n += 3;
+					o += 2;
+					break;
+				case PUSH_STATE:
+					driver.pushState();
+					break;
+				case POP_STATE:
+					driver.popState();
+					break;
+				case PUSH_TRANSFORM:
+					AffineTransform transform = new AffineTransform(numbers[n], numbers[n + 1], numbers[n + 2],
+					        numbers[n + 3], numbers[n + 4], numbers[n + 5]);
+					driver.pushTransform(transform);
+					AffineTransform tx = new AffineTransform(transforms.peek());
+					tx.concatenate(transform);
+					transforms.push(tx);
+					n += 6;
+					break;
+				case POP_TRANSFORM:
+					driver.popTransform();
+					if (transforms.size() > 1) {
+						transforms.pop();
+					}
+					break;
+				case SET_CLIP:
+					driver.setClip(clip(rect(n), clip, transforms.peek()));
+					n += 4;
+					break;
+				case CLEAR_CLIP:
+					driver.setClip(clip(null, clip, transforms.peek()));
+					break;
+				case SET_FILL:
+					driver.setFill((Fill) objects[o++]);
+					break;
+				case SET_LINE_COLOR:
+					driver.setLineColor((Color) objects[o++]);
+					break;
+				case SET_LINE_STYLE:
+					driver.setLineStyle((LineStyle) objects[o++]);
+					break;
+				case SET_LINE_THICKNESS:
+					driver.setLineThickness((int) numbers[n++]);
+					break;
+				default:
+					throw new IllegalStateException("Unknown display list operation " + op);
+			}
+		}
+	}
+
+	// intersects a clip in the current coordinates with the replay clip, which is in the coordinates replay started
+	// in, and returns the result in the current coordinates
+	private Rectangle2D clip(final Rectangle2D r, final Rectangle2D clip, final AffineTransform tx) {
+		if (clip == null) {
+			return r;
+		}
+		Rectangle2D base = clip;
+		if (r != null) {
+			base = tx.createTransformedShape(r).getBounds2D().createIntersection(clip);
+			if (base.isEmpty()) {
+				base = new Rectangle2D.Double(clip.getX(), clip.getY(), 0, 0);
+			}
+		}
+		try {
+			return tx.createInverse().createTransformedShape(base).getBounds2D();
+		} catch (NoninvertibleTransformException e) {
+			return (r == null) ? clip : r;
+		}
+	}
+
+	private List<Point2D> polygon(final int n) {
+		int count = (int) numbers[n];
+		List<Point2D> points = new ArrayList<Point2D>(count);
+		for (int i = 0; i < count; i++) {
+			points.add(point(n + 1 + (2 * i)));
+		}
+		return points;
+	}
+
+	private Point2D point(final int n) {
+		return new Point2D.Double(numbers[n], numbers[n + 1]);
+	}
+
+	private Rectangle2D rect(final int n) {
+		return new Rectangle2D.Double(numbers[n], numbers[n + 1], numbers[n + 2], numbers[n + 3]);
+	}
+}
@@ -16,90 +16,426 @@
 package org.andrill.coretools.graphics.driver;
 
 import java.awt.Dimension;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.io.IOException;
-import java.io.InputStream;
-import java.net.MalformedURLException;
+import java.awt.image.DataBuffer;
+import java.lang.ref.WeakReference;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
 
 import org.andrill.coretools.JobService;
 import org.andrill.coretools.JobService.Priority;
-import org.andrill.coretools.graphics.util.ImageInfo;
+import org.andrill.coretools.graphics.util.ImageMetadata;
+import org.andrill.coretools.graphics.util.ImageMetadataCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.base.Function;
-import com.google.common.collect.MapMaker;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
 /**
- * A cache for images.
+ * A cache for images. Decoded (level) and scaled images share a single cache that is bounded by the number of bytes
+ * of pixel data it holds; once the budget is exceeded the least recently used images are evicted. Hit, miss,
+ * eviction and decoded byte counts are kept so the cache can be sized for a project.
+ * <p>
+ * Interactive components report the start of each paint pass with {@link #startPass(JComponent)}; scale and tile
+ * requests that were not repeated in the component's latest pass are for images that have scrolled off screen or
+ * been superseded by another size, and are cancelled if they have not started. Requests are shared by key, so a
+ * request is only cancelled once no other component's pass holds it; requests made without a paint pass are never
+ * cancelled.
  * 
  * @author Josh Reed (jareed@andrill.org)
  */
 @Singleton
 public class ImageCache {
+	// a cache entry; bytes is filled in once the image has loaded
+	static class CacheEntry {
+		final Job<BufferedImage> future;
+		long bytes = 0;
+		boolean pinned = false; // requested without a paint pass, so never cancelled
+
+		CacheEntry(final Job<BufferedImage> future) {
+			this.future = future;
+		}
+	}
+
+	// a job that can only be cancelled while it is still queued; the cache only cancels jobs that no paint pass or
+	// untracked caller still holds
+	static class Job<V> extends FutureTask<V> {
+		private final AtomicBoolean claimed = new AtomicBoolean(false);
+		private volatile Future<?> submitted = null;
+		private List<WeakReference<JComponent>> waiting = null;
+
+		Job(final Callable<V> callable) {
+			super(callable);
+		}
+
+		boolean cancelIfQueued() {
+			return claimed.compareAndSet(false, true) && cancel(false);
+		}
+
+		// repaints a component that was handed this job while it was loading once it is done
+		synchronized void repaintWhenDone(final JComponent component) {
+			if (!isDone()) {
+				if (waiting == null) {
+					waiting = new ArrayList<WeakReference<JComponent>>();
+				}
+				waiting.add(new WeakReference<JComponent>(component));
+			}
+		}
+
+		@Override
+		protected void done() {
+			final List<WeakReference<JComponent>> components;
+			synchronized (this) {
+				components = waiting;
+				waiting = null;
+			}
+			if (components != null && !isCancelled()) {
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						for (WeakReference<JComponent> ref : components) {
+							JComponent component = ref.get();
+							if (component != null) {
+								component.repaint();
+							}
+						}
+					}
+				});
+			}
+		}
+
+		@Override
+		public V get() throws InterruptedException, ExecutionException {
+			// wait through the job service so it can run the job on this thread rather than block one of its own
+			Future<?> f = submitted;
+			if (f != null && !isDone()) {
+				f.get();
+			}
+			return super.get();
+		}
+
+		@Override
+		public void run() {
+			if (claimed.compareAndSet(false, true)) {
+				super.run();
+			}
+		}
+	}
+
+	// the scale and tile requests made by an interactive component during its current and previous paint passes
+	static class Pass {
+		Map<Object, CacheEntry> current = new HashMap<Object, CacheEntry>();
+		Map<Object, CacheEntry> previous = new HashMap<Object, CacheEntry>();
+	}
+
+	/**
+	 * The size, in decoded pixels, of image tiles.
+	 */
+	public static final int TILE_SIZE = 512;
+
 	private static final Logger LOGGER = LoggerFactory.getLogger(ImageCache.class);
 
-	protected final ConcurrentMap<LoadTask.Params, Future<BufferedImage>> levelCache;
-	protected final ConcurrentMap<ScaleTask.Params, Future<BufferedImage>> scaleCache;
+	protected final JobService jobs;
+	protected final ImagePyramidStore pyramids;
+	protected final ImageMetadataCache metadata;
+	protected final LinkedHashMap<Object, CacheEntry> cache = new LinkedHashMap<Object, CacheEntry>(64, 0.75f, true);
+	protected final Map<JComponent, Pass> passes = new WeakHashMap<JComponent, Pass>();
+	protected final Map<String, Job<Dimension>> sizes = new HashMap<String, Job<Dimension>>();
+	protected long maximumBytes = Runtime.getRuntime().maxMemory() / 4;
+	protected long currentBytes = 0;
+	protected long decodedBytes = 0;
+	protected long hits = 0;
+	protected long misses = 0;
+	protected long evictions = 0;
+	protected long cancellations = 0;
 
 	@Inject
-	ImageCache(final JobService jobs) {
-		levelCache = new MapMaker().softValues().makeComputingMap(
-		        new Function<LoadTask.Params, Future<BufferedImage>>() {
-			        public Future<BufferedImage> apply(final LoadTask.Params key) {
-				        try {
-					        return jobs.submit(new LoadTask(new URL(key.path), key.level, key.component.get()),
-					                Priority.MEDIUM);
-				        } catch (MalformedURLException e) {
-					        LOGGER.error("Unable to load image", e);
-					        throw new AssertionError(); // will never happen
-				        }
-			        }
-		        });
-		scaleCache = new MapMaker().softValues().makeComputingMap(
-		        new Function<ScaleTask.Params, Future<BufferedImage>>() {
-			        public Future<BufferedImage> apply(final ScaleTask.Params key) {
-				        // calculate level
-				        int level = 0;
-				        ImageInfo ii = new ImageInfo();
-				        InputStream is = null;
-				        try {
-					        is = new URL(key.path).openStream();
-					        ii.setInput(is);
-					        if (ii.check()) {
-						        level = Math.min(ii.getWidth() / key.width, ii.getHeight() / key.height);
-					        }
-				        } catch (IOException e) {
-					        LOGGER.error("Unable to load image", e);
-				        } finally {
-					        if (is != null) {
-						        try {
-							        is.close();
-						        } catch (IOException ioe) {
-							        // ignore
-						        }
-					        }
-				        }
-
-				        return jobs.submit(new ScaleTask(levelCache.get(new LoadTask.Params(key.path, level,
-				                key.component.get())), new Dimension(key.width, key.height), key.component.get()),
-				                Priority.HIGH);
-			        }
-		        });
+	ImageCache(final JobService jobs, final ImagePyramidStore pyramids, final ImageMetadataCache metadata) {
+		this.jobs = jobs;
+		this.pyramids = pyramids;
+		this.metadata = metadata;
 	}
 
 	// 5/15/2025 brg: Clear cache to force reload of images
-	public void clear() {
-		levelCache.clear();
-		scaleCache.clear();
+	public synchronized void clear() {
+		cache.clear();
+		passes.clear();
+		sizes.clear();
+		currentBytes = 0;
+	}
+
+	/**
+	 * Gets the number of queued requests cancelled because their images were no longer being drawn.
+	 * 
+	 * @return the cancellation count.
+	 */
+	public synchronized long getCancelCount() {
+		return cancellations;
+	}
+
+	/**
+	 * Gets the number of bytes of pixel data in the cache.
+	 * 
+	 * @return the number of bytes.
+	 */
+	public synchronized long getCurrentBytes() {
+		return currentBytes;
+	}
+
+	/**
+	 * Gets the total number of bytes of pixel data produced by image loads and scales.
+	 * 
+	 * @return the number of bytes.
+	 */
+	public synchronized long getDecodedBytes() {
+		return decodedBytes;
+	}
+
+	/**
+	 * Gets the number of images evicted from the cache.
+	 * 
+	 * @return the eviction count.
+	 */
+	public synchronized long getEvictionCount() {
+		return evictions;
+	}
+
+	/**
+	 * Gets the number of requests served from the cache.
+	 * 
+	 * @return the hit count.
+	 */
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * Gets the maximum number of bytes of pixel data held by the cache.
+	 * 
+	 * @return the maximum number of bytes.
+	 */
+	public synchronized long getMaximumBytes() {
+		return maximumBytes;
+	}
+
+	/**
+	 * Gets the number of requests that required an image load or scale.
+	 * 
+	 * @return the miss count.
+	 */
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * Sets the maximum number of bytes of pixel data held by the cache, evicting images if necessary.
+	 * 
+	 * @param maximumBytes
+	 *            the maximum number of bytes.
+	 */
+	public synchronized void setMaximumBytes(final long maximumBytes) {
+		this.maximumBytes = maximumBytes;
+		evict(null);
+	}
+
+	/**
+	 * Gets a cached image future, submitting a job to produce the image if it is not cached.
+	 * 
+	 * @param key
+	 *            the key.
+	 * @param loader
+	 *            the image loader.
+	 * @param priority
+	 *            the job priority.
+	 * @return the image Future.
+	 */
+	protected Future<BufferedImage> get(final Object key, final Callable<BufferedImage> loader, final Priority priority) {
+		return get(key, loader, priority, null);
+	}
+
+	/**
+	 * Gets a cached image future, submitting a job to produce the image if it is not cached, and records the request
+	 * in the current paint pass of the specified component.
+	 * 
+	 * @param key
+	 *            the key.
+	 * @param loader
+	 *            the image loader.
+	 * @param priority
+	 *            the job priority.
+	 * @param component
+	 *            the component or null if the request should not be tracked.
+	 * @return the image Future.
+	 */
+	protected Future<BufferedImage> get(final Object key, final Callable<BufferedImage> loader,
+	        final Priority priority, final JComponent component) {
+		Job<BufferedImage> task;
+		synchronized (this) {
+			CacheEntry entry = cache.get(key);
+			if (entry != null) {
+				hits++;
+				track(key, entry, component);
+				if (component != null) {
+					entry.future.repaintWhenDone(component);
+				}
+				return entry.future;
+			}
+			misses++;
+			final CacheEntry[] ref = new CacheEntry[1];
+			task = new Job<BufferedImage>(new Callable<BufferedImage>() {
+				public BufferedImage call() throws Exception {
+					BufferedImage image = loader.call();
+					loaded(key, ref[0], image);
+					return image;
+				}
+			});
+			ref[0] = new CacheEntry(task);
+			cache.put(key, ref[0]);
+			track(key, ref[0], component);
+		}
+		task.submitted = jobs.submit(Executors.callable(task), priority);
+		return task;
+	}
+
+	// records a request in the current paint pass of its component
+	protected void track(final Object key, final CacheEntry entry, final JComponent component) {
+		Pass pass = (component == null) ? null : passes.get(component);
+		if (pass != null) {
+			pass.current.put(key, entry);
+		} else {
+			// nothing tells us when an untracked caller is done with it
+			entry.pinned = true;
+		}
+	}
+
+	// checks whether a request is still held by an untracked caller or by a pass other than the specified one
+	protected boolean isWanted(final Object key, final CacheEntry entry, final Pass except) {
+		if (entry.pinned) {
+			return true;
+		}
+		for (Pass pass : passes.values()) {
+			if (pass != except && (pass.current.get(key) == entry || pass.previous.get(key) == entry)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Starts a new paint pass for the specified component. Queued scale and tile requests the component made before
+	 * its previous pass and did not repeat during it are cancelled; if any are, the component is repainted so
+	 * anything still visible but outside a partial repaint is requested again.
+	 * 
+	 * @param component
+	 *            the component.
+	 */
+	public void startPass(final JComponent component) {
+		boolean cancelled = false;
+		synchronized (this) {
+			Pass pass = passes.get(component);
+			if (pass == null) {
+				passes.put(component, new Pass());
+				return;
+			}
+			for (Entry<Object, CacheEntry> e : pass.previous.entrySet()) {
+				if (!pass.current.containsKey(e.getKey()) && !isWanted(e.getKey(), e.getValue(), pass)
+				        && e.getValue().future.cancelIfQueued()) {
+					CacheEntry removed = cache.remove(e.getKey());
+					if (removed != null && removed != e.getValue()) {
+						cache.put(e.getKey(), removed);
+					}
+					cancellations++;
+					cancelled = true;
+				}
+			}
+			pass.previous = pass.current;
+			pass.current = new HashMap<Object, CacheEntry>();
+		}
+		if (cancelled) {
+			component.repaint();
+		}
+	}
+
+	// picks the level to decode an image at, sharing an in-flight or cached decode of the same image at up to twice
+	// the requested resolution rather than decoding it again
+	protected synchronized int coalesce(final String path, final int level) {
+		int best = -1;
+		int requested = Math.max(1, level);
+		for (Entry<Object, CacheEntry> e : cache.entrySet()) {
+			if (e.getKey() instanceof LoadTask.Params) {
+				LoadTask.Params key = (LoadTask.Params) e.getKey();
+				int existing = Math.max(1, key.level);
+				if (path.equals(key.path) && existing <= requested && existing * 2 > requested && key.level > best
+				        && !e.getValue().future.isCancelled()) {
+					best = key.level;
+				}
+			}
+		}
+		return (best < 0) ? level : best;
+	}
+
+	protected synchronized void loaded(final Object key, final CacheEntry entry, final BufferedImage image) {
+		long bytes = sizeOf(image);
+		decodedBytes += bytes;
+		if (cache.get(key) == entry) {
+			entry.bytes = bytes;
+			currentBytes += bytes;
+			evict(entry);
+		}
+	}
+
+	// evicts least recently used images, other than the specified entry, until we are within budget
+	protected void evict(final CacheEntry keep) {
+		Iterator<CacheEntry> i = cache.values().iterator();
+		while (currentBytes > maximumBytes && i.hasNext()) {
+			CacheEntry entry = i.next();
+			if (entry != keep && entry.bytes > 0) {
+				i.remove();
+				currentBytes -= entry.bytes;
+				evictions++;
+			}
+		}
+	}
+
+	protected long sizeOf(final BufferedImage image) {
+		if (image == null) {
+			return 0;
+		}
+		DataBuffer buffer = image.getRaster().getDataBuffer();
+		long bytesPerElement = Math.max(1, DataBuffer.getDataTypeSize(buffer.getDataType()) / 8);
+		long elements = (long) buffer.getSize() * buffer.getNumBanks();
+		long pixels = (long) image.getWidth() * image.getHeight();
+		long bytesPerPixel = Math.max(1, (image.getColorModel().getPixelSize() + 7) / 8);
+		return Math.max(elements * bytesPerElement, pixels * bytesPerPixel);
+	}
+
+	protected List<Entry<Object, CacheEntry>> snapshot() {
+		synchronized (this) {
+			return new ArrayList<Entry<Object, CacheEntry>>(cache.entrySet());
+		}
+	}
+
+	// computes the decimation level needed to load an image at roughly the specified size
+	protected int level(final URL url, final int width, final int height) {
+		Dimension size = getImageSize(url);
+		return (size == null) ? 0 : Math.min(size.width / width, size.height / height);
 	}
 
 	/**
@@ -115,7 +451,16 @@ public class ImageCache {
 	 */
 	public Future<BufferedImage> get(final URL url, final Dimension dim, final JComponent component) {
 		LOGGER.trace("get: {}, {}, {}", new Object[] { url, dim, component });
-		return scaleCache.get(new ScaleTask.Params(url.toExternalForm(), dim.width, dim.height, component));
+		final ScaleTask.Params key = new ScaleTask.Params(url.toExternalForm(), dim.width, dim.height, component);
+		return get(key, new Callable<BufferedImage>() {
+			public BufferedImage call() throws Exception {
+				JComponent c = key.component.get();
+				URL source = new URL(key.path);
+				int level = coalesce(key.path, level(source, key.width, key.height));
+				Future<BufferedImage> image = get(source, level, c);
+				return new ScaleTask(image, new Dimension(key.width, key.height), c).call();
+			}
+		}, Priority.HIGH, component);
 	}
 
 	/**
@@ -131,7 +476,12 @@ public class ImageCache {
 	 */
 	public Future<BufferedImage> get(final URL url, final int level, final JComponent component) {
 		LOGGER.trace("get: {}, {}, {}", new Object[] { url, level, component });
-		return levelCache.get(new LoadTask.Params(url.toExternalForm(), level, component));
+		Future<BufferedImage> image = get(new LoadTask.Params(url.toExternalForm(), level, component), new LoadTask(url,
+		        level, component, pyramids), Priority.MEDIUM);
+		if (component != null) {
+			((Job<BufferedImage>) image).repaintWhenDone(component);
+		}
+		return image;
 	}
 
 	/**
@@ -148,6 +498,83 @@ public class ImageCache {
 		return get(url, 1, component);
 	}
 
+	/**
+	 * Gets the full-resolution dimensions of the specified image.
+	 * 
+	 * @param url
+	 *            the URL.
+	 * @return the dimensions or null if the image could not be read.
+	 */
+	public Dimension getImageSize(final URL url) {
+		ImageMetadata info = metadata.get(url);
+		return (info == null) ? null : new Dimension(info.getWidth(), info.getHeight());
+	}
+
+	/**
+	 * Gets the full-resolution dimensions of the specified image without blocking the caller. The image is examined
+	 * once; an image that could not be read resolves to null and is not examined again until the cache is cleared.
+	 * 
+	 * @param url
+	 *            the URL.
+	 * @param component
+	 *            the component to repaint once the dimensions are known, or null.
+	 * @return the dimensions Future.
+	 */
+	public Future<Dimension> getImageSize(final URL url, final JComponent component) {
+		Job<Dimension> task;
+		boolean submit = false;
+		synchronized (this) {
+			task = sizes.get(url.toExternalForm());
+			if (task == null) {
+				task = new Job<Dimension>(new Callable<Dimension>() {
+					public Dimension call() throws Exception {
+						return getImageSize(url);
+					}
+				});
+				sizes.put(url.toExternalForm(), task);
+				submit = true;
+			}
+		}
+		if (component != null) {
+			task.repaintWhenDone(component);
+		}
+		if (submit) {
+			task.submitted = jobs.submit(Executors.callable(task), Priority.HIGH);
+		}
+		return task;
+	}
+
+	/**
+	 * Gets a tile of the specified image. At decimation level <code>level</code>, tile (column, row) covers the
+	 * source region starting at (column, row) * TILE_SIZE * level and decodes to at most TILE_SIZE x TILE_SIZE
+	 * pixels.
+	 * 
+	 * @param url
+	 *            the URL.
+	 * @param level
+	 *            the decimation level.
+	 * @param column
+	 *            the tile column.
+	 * @param row
+	 *            the tile row.
+	 * @param component
+	 *            the component rendering the image or null if headless rendering.
+	 * @return the image Future or null if the image could not be read.
+	 */
+	public Future<BufferedImage> getTile(final URL url, final int level, final int column, final int row,
+	        final JComponent component) {
+		LOGGER.trace("getTile: {}, {}, {}", new Object[] { url, level, column + "," + row });
+		Dimension size = getImageSize(url);
+		if (size == null) {
+			return null;
+		}
+		int span = TILE_SIZE * Math.max(1, level);
+		Rectangle region = new Rectangle(column * span, row * span, Math.min(span, size.width - column * span),
+		        Math.min(span, size.height - row * span));
+		return get(new TileTask.Params(url.toExternalForm(), level, column, row, component), new TileTask(url, level,
+		        region, component, pyramids), Priority.HIGH, component);
+	}
+
 	/**
 	 * Gets the closest fully-loaded image with the specified URL.
 	 * 
@@ -162,9 +589,13 @@ public class ImageCache {
 		String path = url.toExternalForm();
 		Future<BufferedImage> found = null;
 		int fitness = Integer.MAX_VALUE;
-		for (Entry<ScaleTask.Params, Future<BufferedImage>> entry : scaleCache.entrySet()) {
-			ScaleTask.Params key = entry.getKey();
-			Future<BufferedImage> value = entry.getValue();
+		List<Entry<Object, CacheEntry>> entries = snapshot();
+		for (Entry<Object, CacheEntry> entry : entries) {
+			if (!(entry.getKey() instanceof ScaleTask.Params)) {
+				continue;
+			}
+			ScaleTask.Params key = (ScaleTask.Params) entry.getKey();
+			Future<BufferedImage> value = entry.getValue().future;
 			if (value.isDone() && !value.isCancelled() && path.equals(key.path)) {
 				int diff = Math.max(Math.abs(dim.width - key.width), Math.abs(dim.height - key.height));
 				if (diff < fitness) {
@@ -178,9 +609,12 @@ public class ImageCache {
 		}
 
 		// check our level cache next
-		for (Entry<LoadTask.Params, Future<BufferedImage>> entry : levelCache.entrySet()) {
-			LoadTask.Params key = entry.getKey();
-			Future<BufferedImage> value = entry.getValue();
+		for (Entry<Object, CacheEntry> entry : entries) {
+			if (!(entry.getKey() instanceof LoadTask.Params)) {
+				continue;
+			}
+			LoadTask.Params key = (LoadTask.Params) entry.getKey();
+			Future<BufferedImage> value = entry.getValue().future;
 			if (value.isDone() && !value.isCancelled() && path.equals(key.path)) {
 				return value;
 			}
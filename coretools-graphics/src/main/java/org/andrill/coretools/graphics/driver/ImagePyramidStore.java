@@ -0,0 +1,386 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools.graphics.driver;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.andrill.coretools.FileUtils;
+import org.andrill.coretools.JobService;
+import org.andrill.coretools.JobService.Priority;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * A persistent store of pre-downsampled copies of local images. Each image gets its own directory under the store
+ * directory holding one file per power-of-two decimation level (2, 4, 8, ...) and a <code>pyramid.properties</code>
+ * index recording the modification time and size of the original, so a pyramid is ignored once its original changes.
+ * The finest level is stored losslessly; only the coarser levels may be stored as JPEG.
+ * Pyramids are built in the background at low priority; until one is complete images are loaded from the original.
+ * The store is disabled until a directory is set.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+@Singleton
+public class ImagePyramidStore {
+	/**
+	 * A stored level of an image pyramid.
+	 */
+	public static class Level {
+		/**
+		 * The URL of the stored image.
+		 */
+		public final URL url;
+
+		/**
+		 * The decimation factor of the stored image relative to the original.
+		 */
+		public final int factor;
+
+		Level(final URL url, final int factor) {
+			this.url = url;
+			this.factor = factor;
+		}
+	}
+
+	// the index of a stored pyramid
+	static class Index {
+		final File dir;
+		final long modified;
+		final long length;
+		final int levels;
+		final String baseFormat;
+		final String format;
+
+		Index(final File dir, final long modified, final long length, final int levels, final String baseFormat,
+		        final String format) {
+			this.dir = dir;
+			this.modified = modified;
+			this.length = length;
+			this.levels = levels;
+			this.baseFormat = baseFormat;
+			this.format = format;
+		}
+
+		// the format of the level with the specified decimation factor
+		String format(final int factor) {
+			return (factor == 2) ? baseFormat : format;
+		}
+	}
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ImagePyramidStore.class);
+	private static final String INDEX = "pyramid.properties";
+	private static final float JPEG_QUALITY = 0.9f;
+
+	protected final JobService jobs;
+	protected final ConcurrentMap<String, Index> indexes = new ConcurrentHashMap<String, Index>();
+	protected final Set<String> building = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	protected volatile File directory = null;
+	protected int minimumSize = ImageCache.TILE_SIZE;
+
+	@Inject
+	ImagePyramidStore(final JobService jobs) {
+		this.jobs = jobs;
+	}
+
+	/**
+	 * Gets the store directory.
+	 *
+	 * @return the directory or null if the store is disabled.
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Sets the store directory.
+	 *
+	 * @param directory
+	 *            the directory or null to disable the store.
+	 */
+	public void setDirectory(final File directory) {
+		this.directory = directory;
+		indexes.clear();
+	}
+
+	/**
+	 * Finds the stored level to load the specified image from at the specified decimation level. This is the coarsest
+	 * stored level whose factor does not exceed the requested level, so the image read from it and subsampled by
+	 * <code>level / factor</code> is at least as large as one decimated from the original.
+	 *
+	 * @param url
+	 *            the image URL.
+	 * @param level
+	 *            the decimation level.
+	 * @return the stored level or null if the image should be loaded from the original.
+	 */
+	public Level find(final URL url, final int level) {
+		if (level < 2) {
+			return null;
+		}
+		Index index = index(url);
+		if (index == null) {
+			return null;
+		}
+		int factor = 1;
+		for (int i = 1; i <= index.levels && (factor << 1) <= level; i++) {
+			factor <<= 1;
+		}
+		if (factor == 1) {
+			return null;
+		}
+		try {
+			return new Level(new File(index.dir, "level-" + factor + "." + index.format(factor)).toURI().toURL(),
+			        factor);
+		} catch (MalformedURLException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Checks whether an up-to-date pyramid is stored for the specified image.
+	 *
+	 * @param url
+	 *            the image URL.
+	 * @return true if a pyramid is stored, false otherwise.
+	 */
+	public boolean contains(final URL url) {
+		return index(url) != null;
+	}
+
+	/**
+	 * Builds the pyramid for the specified image in the background if it is a local file and no up-to-date pyramid
+	 * is stored or being built.
+	 *
+	 * @param url
+	 *            the image URL.
+	 */
+	public void build(final URL url) {
+		final File dir = directory;
+		final File source = FileUtils.toFile(url);
+		if (dir == null || source == null || !source.isFile() || contains(url)) {
+			return;
+		}
+		final String path = url.toExternalForm();
+		if (building.add(path)) {
+			jobs.submit(new Callable<Object>() {
+				public Object call() {
+					try {
+						write(url, source, new File(dir, key(path)));
+					} catch (IOException e) {
+						LOGGER.debug("Unable to build image pyramid for {}: {}", url, e.getMessage());
+					} finally {
+						building.remove(path);
+					}
+					return null;
+				}
+			}, Priority.LOW);
+		}
+	}
+
+	// gets the index for the specified image, if an up-to-date one is stored
+	protected Index index(final URL url) {
+		File dir = directory;
+		File source = FileUtils.toFile(url);
+		if (dir == null || source == null) {
+			return null;
+		}
+		String path = url.toExternalForm();
+		Index index = indexes.get(path);
+		if (index == null) {
+			index = read(new File(dir, key(path)));
+			if (index == null) {
+				return null;
+			}
+			indexes.put(path, index);
+		}
+		if (index.modified != source.lastModified() || index.length != source.length()) {
+			indexes.remove(path);
+			return null;
+		}
+		return index;
+	}
+
+	protected Index read(final File dir) {
+		File file = new File(dir, INDEX);
+		if (!file.isFile()) {
+			return null;
+		}
+		InputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			Properties p = new Properties();
+			p.load(in);
+			if (p.getProperty("baseFormat") == null) {
+				// written before the finest level was stored losslessly, so build it again
+				return null;
+			}
+			return new Index(dir, Long.parseLong(p.getProperty("modified")), Long.parseLong(p.getProperty("length")),
+			        Integer.parseInt(p.getProperty("levels")), p.getProperty("baseFormat"), p.getProperty("format"));
+		} catch (IOException e) {
+			return null;
+		} catch (RuntimeException e) {
+			return null;
+		} finally {
+			FileUtils.closeQuietly(in);
+		}
+	}
+
+	// decodes the original once, at level 2, then halves it for each coarser level. Level 2 is what is drawn at
+	// close to full resolution, so it is kept as PNG rather than adding JPEG artifacts to it.
+	protected void write(final URL url, final File source, final File dir) throws IOException {
+		long modified = source.lastModified();
+		long length = source.length();
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Unable to create " + dir);
+		}
+		new File(dir, INDEX).delete();
+
+		LOGGER.debug("Building image pyramid for {}", url);
+		BufferedImage image = decode(url, 2);
+		if (image == null) {
+			throw new IOException("Unable to decode " + url);
+		}
+		String baseFormat = "png";
+		String format = image.getColorModel().hasAlpha() ? "png" : "jpg";
+		int levels = 0;
+		for (int factor = 2; levels == 0 || Math.max(image.getWidth(), image.getHeight()) >= minimumSize; factor *= 2) {
+			if (levels > 0) {
+				image = halve(image);
+			}
+			String extension = (levels == 0) ? baseFormat : format;
+			File file = new File(dir, "level-" + factor + "." + extension);
+			File tmp = new File(dir, file.getName() + ".tmp");
+			encode(image, extension, tmp);
+			FileUtils.replace(tmp, file);
+			levels++;
+		}
+
+		// the index is written last so a partial pyramid is never used
+		Properties p = new Properties();
+		p.setProperty("path", url.toExternalForm());
+		p.setProperty("modified", Long.toString(modified));
+		p.setProperty("length", Long.toString(length));
+		p.setProperty("levels", Integer.toString(levels));
+		p.setProperty("baseFormat", baseFormat);
+		p.setProperty("format", format);
+		File tmp = new File(dir, INDEX + ".tmp");
+		OutputStream out = null;
+		try {
+			out = new FileOutputStream(tmp);
+			p.store(out, "Image pyramid");
+		} finally {
+			FileUtils.closeQuietly(out);
+		}
+		FileUtils.replace(tmp, new File(dir, INDEX));
+		indexes.put(url.toExternalForm(), new Index(dir, modified, length, levels, baseFormat, format));
+	}
+
+	protected BufferedImage decode(final URL url, final int level) throws IOException {
+		String file = url.getFile();
+		Iterator<ImageReader> readers = ImageIO.getImageReadersBySuffix(file.substring(file.lastIndexOf('.') + 1));
+		if (!readers.hasNext()) {
+			return null;
+		}
+		ImageReader reader = readers.next();
+		ImageInputStream iis = ImageIO.createImageInputStream(url.openStream());
+		try {
+			reader.setInput(iis);
+			ImageReadParam param = reader.getDefaultReadParam();
+			param.setSourceSubsampling(level, level, 0, 0);
+			return reader.read(0, param);
+		} finally {
+			reader.dispose();
+			iis.close();
+		}
+	}
+
+	protected BufferedImage halve(final BufferedImage image) {
+		int type = image.getType();
+		if (type == BufferedImage.TYPE_CUSTOM) {
+			type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+		}
+		BufferedImage half = new BufferedImage((image.getWidth() + 1) / 2, (image.getHeight() + 1) / 2, type);
+		Graphics2D g2d = half.createGraphics();
+		g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g2d.drawImage(image, 0, 0, half.getWidth(), half.getHeight(), null);
+		g2d.dispose();
+		return half;
+	}
+
+	protected void encode(final BufferedImage image, final String format, final File file) throws IOException {
+		ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+		ImageOutputStream ios = ImageIO.createImageOutputStream(file);
+		try {
+			writer.setOutput(ios);
+			ImageWriteParam param = writer.getDefaultWriteParam();
+			if ("jpg".equals(format)) {
+				param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+				param.setCompressionQuality(JPEG_QUALITY);
+			}
+			writer.write(null, new IIOImage(image, null, null), param);
+		} finally {
+			writer.dispose();
+			ios.close();
+		}
+	}
+
+	// the directory name for an image
+	protected String key(final String path) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(path.getBytes("UTF-8"));
+			StringBuilder hex = new StringBuilder();
+			for (byte b : digest) {
+				hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			return Integer.toHexString(path.hashCode());
+		} catch (IOException e) {
+			return Integer.toHexString(path.hashCode());
+		}
+	}
+}
@@ -38,8 +38,11 @@ import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
@@ -62,6 +65,22 @@ import org.slf4j.LoggerFactory;
  * @author Josh Reed (jareed@andrill.org)
  */
 public class Java2DDriver implements Driver {
+	/**
+	 * A TexturePaint for a texture from the image cache, with a key identifying the texture.
+	 */
+	protected static class CachedTexturePaint extends TexturePaint {
+		protected final String key;
+
+		public CachedTexturePaint(final String key, final BufferedImage image, final Rectangle2D anchor) {
+			super(image, anchor);
+			this.key = key;
+		}
+
+		public String getKey() {
+			return key;
+		}
+	}
+
 	protected static class State {
 		Fill fill = null;
 		Color lineColor = null;
@@ -74,6 +93,18 @@ public class Java2DDriver implements Driver {
 	protected static final float LINE_DASH[] = { 18, 9 };
 	protected static final float LINE_DASH_DOT[] = { 9, 3, 3, 3 };
 	protected static final float LINE_DOT[] = { 3, 3 };
+	private static final int TEXTURE_PAINTS = 256;
+
+	// texture paints by texture and scaling; a paint is reused until the image cache hands out a different image
+	private static final Map<String, CachedTexturePaint> TEXTURES = new LinkedHashMap<String, CachedTexturePaint>(64,
+	        0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, CachedTexturePaint> eldest) {
+			return size() > TEXTURE_PAINTS;
+		}
+	};
 
 	protected Fill background = new ColorFill(Color.white);
 	protected Graphics2D g2d = null;
@@ -113,6 +144,24 @@ public class Java2DDriver implements Driver {
 	 *            the component who the Graphics2D object belongs to, or null.
 	 */
 	public Java2DDriver(final Graphics2D graphics, final boolean scaleStrokes, final JComponent interactive) {
+		this(graphics, scaleStrokes, interactive, true);
+	}
+
+	/**
+	 * Create a new Java2DDriver. A paint of an interactive component should start one pass of the image cache, so
+	 * when a paint draws with several drivers only the first should start a pass.
+	 * 
+	 * @param graphics
+	 *            the Java2D graphics object.
+	 * @param scaleStrokes
+	 *            true if stroke widths should be scaled, false otherwise.
+	 * @param interactive
+	 *            the component who the Graphics2D object belongs to, or null.
+	 * @param startPass
+	 *            true if this driver starts a new pass of the image cache for the interactive component.
+	 */
+	public Java2DDriver(final Graphics2D graphics, final boolean scaleStrokes, final JComponent interactive,
+	        final boolean startPass) {
 		g2d = graphics;
 		this.scaleStrokes = scaleStrokes;
 		originalTransform = g2d.getTransform();
@@ -121,6 +170,9 @@ public class Java2DDriver implements Driver {
 		this.interactive = interactive;
 		loader = Platform.getService(ResourceLoader.class);
 		cache = Platform.getService(ImageCache.class);
+		if ((interactive != null) && startPass) {
+			cache.startPass(interactive);
+		}
 	}
 
 	private List<Paint> createPaints(final Fill fill, final Shape shape) {
@@ -154,13 +206,15 @@ public class Java2DDriver implements Driver {
 				break;
 			case TEXTURE:
 				final TextureFill t = (TextureFill) fill;
-				BufferedImage iimage;
+				Future<BufferedImage> future = cache.get(t.getTexture(), 1, interactive);
+				if ((interactive != null) && !future.isDone()) {
+					// the component is repainted once the texture is loaded
+					break;
+				}
 				try {
-					iimage = cache.get(t.getTexture(), 1, interactive).get();
+					BufferedImage iimage = future.get();
 					if (iimage != null) {
-						paints
-						        .add(new TexturePaint(iimage,
-						                new Rectangle2D.Double(0, 0, iimage.getWidth() / t.getScaling(), iimage.getHeight() / t.getScaling())));
+						paints.add(getTexturePaint(t, iimage));
 					} else {
 						LOGGER.error("Unable to load texture {}", t.getTexture().toExternalForm());
 					}
@@ -179,6 +233,21 @@ public class Java2DDriver implements Driver {
 		return paints;
 	}
 
+	// gets a texture paint for the specified fill and image, creating it only if the image has changed
+	private static CachedTexturePaint getTexturePaint(final TextureFill fill, final BufferedImage image) {
+		String url = fill.getTexture().toExternalForm();
+		String key = url + "@" + fill.getScaling();
+		synchronized (TEXTURES) {
+			CachedTexturePaint paint = TEXTURES.get(key);
+			if ((paint == null) || (paint.getImage() != image)) {
+				paint = new CachedTexturePaint(url, image, new Rectangle2D.Double(0, 0, image.getWidth()
+				        / fill.getScaling(), image.getHeight() / fill.getScaling()));
+				TEXTURES.put(key, paint);
+			}
+			return paint;
+		}
+	}
+
 	private Shape createPolygon(final List<Point2D> points) {
 		final GeneralPath path = new GeneralPath(GeneralPath.WIND_EVEN_ODD);
 		boolean first = true;
@@ -262,7 +331,8 @@ public class Java2DDriver implements Driver {
 			try {
 				BufferedImage bi = future.get();
 				if (bi != null) {
-					g2d.drawImage(bi, (int) point.getX(), (int) point.getY(), null);
+					drawCachedImage(bi, image.toExternalForm(), AffineTransform.getTranslateInstance((int) point
+					        .getX(), (int) point.getY()));
 				} else {
 					drawImageError(new Rectangle2D.Double(point.getX(), point.getY(), ANCHOR.getWidth(), ANCHOR
 					        .getHeight()), image);
@@ -301,9 +371,14 @@ public class Java2DDriver implements Driver {
 	// Internal draw method to accommodate drawImage and embedImage
 	protected void drawImageScaled(final Rectangle2D rect, final URL image, final boolean scaleToRect) {
 		prepareDraw();
+		if (scaleToRect && drawImageTiled(rect, image)) {
+			return;
+		}
 		Future<BufferedImage> future = null;
+		String key = image.toExternalForm();
 		if (scaleToRect) {
 			future = cache.get(image, new Dimension((int) rect.getWidth(), (int) rect.getHeight()), interactive);
+			key += "@" + (int) rect.getWidth() + "x" + (int) rect.getHeight();
 		} else {
 			future = cache.get(image, interactive);
 		}
@@ -311,8 +386,10 @@ public class Java2DDriver implements Driver {
 			try {
 				BufferedImage bi = future.get();
 				if (bi != null) {
-					g2d.drawImage(bi, (int) rect.getX(), (int) rect.getY(), (int) rect.getWidth(), (int) rect
-					        .getHeight(), null);
+					AffineTransform at = AffineTransform.getTranslateInstance((int) rect.getX(), (int) rect.getY());
+					at.scale((double) (int) rect.getWidth() / bi.getWidth(), (double) (int) rect.getHeight()
+					        / bi.getHeight());
+					drawCachedImage(bi, key, at);
 				} else {
 					drawImageError(rect, image);
 				}
@@ -322,6 +399,8 @@ public class Java2DDriver implements Driver {
 			} catch (ExecutionException e) {
 				LOGGER.error("drawImage() error", e);
 				drawImageError(rect, image);
+			} catch (CancellationException e) {
+				drawImageLoading(rect, image);
 			}
 		} else {
 			drawImageLoading(rect, image);
@@ -329,6 +408,111 @@ public class Java2DDriver implements Driver {
 	}
 	
 
+	// Draws a large image as tiles that are decoded on demand, skipping tiles outside the clip. Returns false if
+	// the image is small enough at this scale to be loaded whole.
+	protected boolean drawImageTiled(final Rectangle2D rect, final URL image) {
+		if ((rect.getWidth() <= 0) || (rect.getHeight() <= 0)) {
+			return false;
+		}
+
+		// the image is examined in the background; interactive components are repainted once its size is known
+		Future<Dimension> lookup = cache.getImageSize(image, interactive);
+		if ((interactive != null) && !lookup.isDone()) {
+			drawImageLoading(rect, image);
+			return true;
+		}
+		Dimension size = null;
+		try {
+			size = lookup.get();
+		} catch (InterruptedException e) {
+			LOGGER.error("drawImage() error", e);
+		} catch (ExecutionException e) {
+			LOGGER.error("drawImage() error", e);
+		}
+		if (size == null) {
+			return false;
+		}
+
+		// pick the decimation level for the device resolution
+		AffineTransform tx = g2d.getTransform();
+		double deviceWidth = rect.getWidth() * Math.hypot(tx.getScaleX(), tx.getShearY());
+		double deviceHeight = rect.getHeight() * Math.hypot(tx.getShearX(), tx.getScaleY());
+		int level = Math.max(1, (int) Math.min(size.width / deviceWidth, size.height / deviceHeight));
+		long decoded = (long) (size.width / level) * (size.height / level);
+		if (decoded <= 4L * ImageCache.TILE_SIZE * ImageCache.TILE_SIZE) {
+			return false;
+		}
+
+		// figure out which tiles are visible
+		Rectangle2D visible = rect;
+		Rectangle clip = g2d.getClipBounds();
+		if (clip != null) {
+			visible = rect.createIntersection(clip);
+			if (visible.isEmpty()) {
+				return true;
+			}
+		}
+		double sx = rect.getWidth() / size.width;
+		double sy = rect.getHeight() / size.height;
+		int span = ImageCache.TILE_SIZE * level;
+		int firstColumn = (int) Math.max(0, Math.floor((visible.getMinX() - rect.getX()) / sx / span));
+		int lastColumn = (int) Math.min((size.width - 1) / span, Math.floor((visible.getMaxX() - rect.getX()) / sx
+		        / span));
+		int firstRow = (int) Math.max(0, Math.floor((visible.getMinY() - rect.getY()) / sy / span));
+		int lastRow = (int) Math.min((size.height - 1) / span, Math.floor((visible.getMaxY() - rect.getY()) / sy
+		        / span));
+
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				int x = column * span;
+				int y = row * span;
+				Rectangle2D dest = new Rectangle2D.Double(rect.getX() + x * sx, rect.getY() + y * sy, Math.min(span,
+				        size.width - x) * sx, Math.min(span, size.height - y) * sy);
+				Future<BufferedImage> future = cache.getTile(image, level, column, row, interactive);
+				if (future == null) {
+					drawImageError(dest, image);
+				} else if ((interactive == null) || future.isDone()) {
+					try {
+						BufferedImage tile = future.get();
+						if (tile != null) {
+							AffineTransform at = AffineTransform.getTranslateInstance(dest.getX(), dest.getY());
+							at.scale(dest.getWidth() / tile.getWidth(), dest.getHeight() / tile.getHeight());
+							drawCachedImage(tile, image.toExternalForm() + "@" + level + ":" + column + "," + row, at);
+						} else {
+							drawImageError(dest, image);
+						}
+					} catch (InterruptedException e) {
+						LOGGER.error("drawImage() error", e);
+						drawImageError(dest, image);
+					} catch (ExecutionException e) {
+						LOGGER.error("drawImage() error", e);
+						drawImageError(dest, image);
+					} catch (CancellationException e) {
+						// dropped from an earlier pass before it started; it is requested again on the next repaint
+						internalDrawImageLoading(dest);
+					}
+				} else {
+					internalDrawImageLoading(dest);
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Draws an image from the image cache.
+	 * 
+	 * @param image
+	 *            the image.
+	 * @param key
+	 *            identifies the image and the resolution it was loaded at.
+	 * @param at
+	 *            the transform from image space to user space.
+	 */
+	protected void drawCachedImage(final BufferedImage image, final String key, final AffineTransform at) {
+		g2d.drawImage(image, at, null);
+	}
+
 	protected void drawImageError(final Rectangle2D r, final URL orig) {
 		if (imageError == null) {
 			try {
@@ -423,11 +607,23 @@ public class Java2DDriver implements Driver {
 
 	private void fill(final Shape s) {
 		for (final Paint p : createPaints(background, s)) {
-			g2d.setPaint(p);
-			g2d.fill(s);
+			fill(s, p);
 		}
 	}
 
+	/**
+	 * Fills a shape with a paint.
+	 * 
+	 * @param s
+	 *            the shape.
+	 * @param p
+	 *            the paint.
+	 */
+	protected void fill(final Shape s, final Paint p) {
+		g2d.setPaint(p);
+		g2d.fill(s);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -86,25 +86,41 @@ public class LoadTask implements Callable<BufferedImage> {
 	final URL url;
 	final int level;
 	final JComponent component;
+	final ImagePyramidStore pyramids;
 
 	public LoadTask(final URL url, final int level, final JComponent component) {
+		this(url, level, component, null);
+	}
+
+	public LoadTask(final URL url, final int level, final JComponent component, final ImagePyramidStore pyramids) {
 		this.url = url;
 		this.level = level;
 		this.component = component;
+		this.pyramids = pyramids;
 	}
 
 	public BufferedImage call() throws Exception {
 		ImageInputStream iis = null;
 		try {
-			LOGGER.debug("Loading {} @ {}", url.toString(), level);
-			final ImageReader imgReader = ImageIO.getImageReadersBySuffix(suffix(url.getFile())).next();
-			iis = ImageIO.createImageInputStream(url.openStream());
+			// prefer a stored, pre-downsampled copy over the original
+			URL source = url;
+			int factor = 1;
+			ImagePyramidStore.Level stored = (pyramids == null) ? null : pyramids.find(url, level);
+			if (stored != null) {
+				source = stored.url;
+				factor = stored.factor;
+			}
+
+			LOGGER.debug("Loading {} @ {}", source.toString(), level);
+			final ImageReader imgReader = ImageIO.getImageReadersBySuffix(suffix(source.getFile())).next();
+			iis = ImageIO.createImageInputStream(source.openStream());
 			imgReader.setInput(iis);
 			final ImageReadParam readParam = imgReader.getDefaultReadParam();
-			if (level > 0) {
-				readParam.setSourceSubsampling(level, level, 0, 0);
-			}
+			configure(readParam, factor);
 			BufferedImage img = imgReader.read(0, readParam);
+			if (stored == null && pyramids != null) {
+				pyramids.build(url);
+			}
 			return img;
 		} catch (IOException ioe) {
 			LOGGER.error("Unable to load image", ioe);
@@ -129,6 +145,21 @@ public class LoadTask implements Callable<BufferedImage> {
 		}
 	}
 
+	/**
+	 * Configures the read parameters.
+	 * 
+	 * @param readParam
+	 *            the read parameters.
+	 * @param factor
+	 *            the decimation factor of the image being read relative to the original.
+	 */
+	protected void configure(final ImageReadParam readParam, final int factor) {
+		if (level > 0) {
+			int subsampling = Math.max(1, level / factor);
+			readParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+		}
+	}
+
 	private String suffix(final String str) {
 		int index = str.lastIndexOf('.');
 		if (index == -1) {
@@ -0,0 +1,422 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools.graphics.driver;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.andrill.coretools.graphics.fill.Fill;
+
+/**
+ * A Driver that records the drawing operations it is given into a {@link DisplayList} rather than drawing them. The
+ * fill, line properties, clip and string metrics it reports are those of the driver being recorded for, so code that
+ * queries them renders the same as it would directly.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public class RecordingDriver implements Driver {
+	private static class State {
+		Fill fill;
+		Color lineColor;
+		LineStyle lineStyle;
+		int lineThickness;
+	}
+
+	protected final Driver target;
+	protected final Rectangle2D baseClip;
+	protected Rectangle2D clip;
+	protected Fill fill;
+	protected Color lineColor;
+	protected LineStyle lineStyle;
+	protected int lineThickness;
+	protected final LinkedList<State> stateStack = new LinkedList<State>();
+	protected final LinkedList<AffineTransform> transforms = new LinkedList<AffineTransform>();
+
+	private byte[] ops = new byte[64];
+	private int opCount = 0;
+	private double[] numbers = new double[256];
+	private int numberCount = 0;
+	private final List<Object> objects = new ArrayList<Object>();
+
+	/**
+	 * Create a new RecordingDriver.
+	 *
+	 * @param target
+	 *            the driver the recording will be replayed to, used for its current state and string metrics.
+	 * @param clip
+	 *            the clip the recording will be replayed with or null for none.
+	 */
+	public RecordingDriver(final Driver target, final Rectangle2D clip) {
+		this.target = target;
+		this.baseClip = (clip == null) ? null : (Rectangle2D) clip.clone();
+		this.clip = baseClip;
+		fill = target.getFill();
+		lineColor = target.getLineColor();
+		lineStyle = target.getLineStyle();
+		lineThickness = target.getLineThickness();
+		transforms.push(new AffineTransform());
+	}
+
+	private void add(final byte op) {
+		if (opCount == ops.length) {
+			ops = Arrays.copyOf(ops, ops.length * 2);
+		}
+		ops[opCount++] = op;
+	}
+
+	private void add(final double value) {
+		if (numberCount == numbers.length) {
+			numbers = Arrays.copyOf(numbers, numbers.length * 2);
+		}
+		numbers[numberCount++] = value;
+	}
+
+	private void add(final Point2D point) {
+		add(point.getX());
+		add(point.getY());
+	}
+
+	private void add(final Rectangle2D rect) {
+		add(rect.getX());
+		add(rect.getY());
+		add(rect.getWidth());
+		add(rect.getHeight());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void dispose() {
+		// nothing to dispose
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void drawArc(final Rectangle2D bounds, final double start, final double extent, final ArcStyle style) {
+		add(DisplayList.ARC);
+		add(bounds);
+		add(start);
+		add(extent);
+		objects.add(style);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void drawImage(final Point2D point, final URL image) {
+		add(DisplayList.IMAGE_POINT);
+		add(point);
+		objects.add(image);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void drawImage(final Rectangle2D rect, final URL image) {
+		add(DisplayList.IMAGE_RECT);
+		add(rect);
+		objects.add(image);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void drawLine(final Point2D start, final Point2D end) {
+		add(DisplayList.LINE);
+		add(start);
+		add(end);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void drawOval(final Rectangle2D bounds) {
+		add(DisplayList.OVAL);
+		add(bounds);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void drawPoint(final Point2D point) {
+		add(DisplayList.POINT);
+		add(point);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void drawPolygon(final List<Point2D> points) {
+		add(DisplayList.POLYGON);
+		addPolygon(points);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void drawRectangle(final Rectangle2D rect) {
+		add(DisplayList.RECTANGLE);
+		add(rect);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void drawString(final Point2D point, final Font font, final String string) {
+		add(DisplayList.STRING);
+		add(point);
+		objects.add(font);
+		objects.add(string);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void drawStringRotated(final Point2D point, final Font font, final String string, final double theta) {
+		add(DisplayList.STRING_ROTATED);
+		add(point);
+		add(theta);
+		objects.add(font);
+		objects.add(string);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void embedImage(final Rectangle2D rect, final URL image) {
+		add(DisplayList.EMBED_IMAGE);
+		add(rect);
+		objects.add(image);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void fillArc(final Rectangle2D bounds, final double start, final double extent, final ArcStyle style) {
+		add(DisplayList.FILL_ARC);
+		add(bounds);
+		add(start);
+		add(extent);
+		objects.add(style);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void fillOval(final Rectangle2D bounds) {
+		add(DisplayList.FILL_OVAL);
+		add(bounds);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void fillPolygon(final List<Point2D> points) {
+		add(DisplayList.FILL_POLYGON);
+		addPolygon(points);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void fillRectangle(final Rectangle2D rect) {
+		add(DisplayList.FILL_RECTANGLE);
+		add(rect);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Rectangle2D getClip() {
+		// integral bounds, as Graphics2D.getClipBounds() reports them
+		if (clip == null) {
+			return null;
+		}
+		try {
+			return transforms.peek().createInverse().createTransformedShape(clip).getBounds();
+		} catch (NoninvertibleTransformException e) {
+			return clip.getBounds();
+		}
+	}
+
+	/**
+	 * Gets the operations recorded so far as a display list.
+	 *
+	 * @return the display list.
+	 */
+	public DisplayList getDisplayList() {
+		if (opCount == 0) {
+			return DisplayList.EMPTY;
+		}
+		return new DisplayList(Arrays.copyOf(ops, opCount), Arrays.copyOf(numbers, numberCount), objects.toArray());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Fill getFill() {
+		return fill;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Color getLineColor() {
+		return lineColor;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public LineStyle getLineStyle() {
+		return lineStyle;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getLineThickness() {
+		return lineThickness;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Rectangle2D getStringBounds(final Font font, final String string) {
+		return target.getStringBounds(font, string);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void popState() {
+		add(DisplayList.POP_STATE);
+		if (!stateStack.isEmpty()) {
+			State state = stateStack.pop();
+			fill = state.fill;
+			lineColor = state.lineColor;
+			lineStyle = state.lineStyle;
+			lineThickness = state.lineThickness;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void popTransform() {
+		add(DisplayList.POP_TRANSFORM);
+		if (transforms.size() > 1) {
+			transforms.pop();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void pushState() {
+		add(DisplayList.PUSH_STATE);
+		State state = new State();
+		state.fill = fill;
+		state.lineColor = lineColor;
+		state.lineStyle = lineStyle;
+		state.lineThickness = lineThickness;
+		stateStack.push(state);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void pushTransform(final AffineTransform transform) {
+		add(DisplayList.PUSH_TRANSFORM);
+		add(transform.getScaleX());
+		add(transform.getShearY());
+		add(transform.getShearX());
+		add(transform.getScaleY());
+		add(transform.getTranslateX());
+		add(transform.getTranslateY());
+		AffineTransform tx = new AffineTransform(transforms.peek());
+		tx.concatenate(transform);
+		transforms.push(tx);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void setClip(final Rectangle2D r) {
+		if (r == null) {
+			add(DisplayList.CLEAR_CLIP);
+			clip = baseClip;
+		} else {
+			add(DisplayList.SET_CLIP);
+			add(r);
+			Rectangle2D transformed = transforms.peek().createTransformedShape(r).getBounds2D();
+			clip = (baseClip == null) ? transformed : transformed.createIntersection(baseClip);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void setFill(final Fill fill) {
+		add(DisplayList.SET_FILL);
+		objects.add(fill);
+		this.fill = fill;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void setLineColor(final Color color) {
+		add(DisplayList.SET_LINE_COLOR);
+		objects.add(color);
+		lineColor = color;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void setLineStyle(final LineStyle style) {
+		add(DisplayList.SET_LINE_STYLE);
+		objects.add(style);
+		lineStyle = style;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void setLineThickness(final int thickness) {
+		add(DisplayList.SET_LINE_THICKNESS);
+		add(thickness);
+		lineThickness = thickness;
+	}
+
+	private void addPolygon(final List<Point2D> points) {
+		add(points.size());
+		for (Point2D p : points) {
+			add(p);
+		}
+	}
+}
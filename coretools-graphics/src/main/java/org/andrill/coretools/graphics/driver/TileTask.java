@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools.graphics.driver;
+
+import java.awt.Rectangle;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+
+import javax.imageio.ImageReadParam;
+import javax.swing.JComponent;
+
+/**
+ * Load a single tile of an image from URL task. Only the source region of the tile is decoded.
+ */
+public class TileTask extends LoadTask {
+	/**
+	 * Tile parameters.
+	 */
+	static class Params {
+		String path;
+		int level;
+		int column;
+		int row;
+		WeakReference<JComponent> component;
+
+		Params(final String path, final int level, final int column, final int row, final JComponent component) {
+			this.path = path;
+			this.level = level;
+			this.column = column;
+			this.row = row;
+			this.component = new WeakReference<JComponent>(component);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (obj == null) {
+				return false;
+			}
+			if (getClass() != obj.getClass()) {
+				return false;
+			}
+			Params other = (Params) obj;
+			if (level != other.level || column != other.column || row != other.row) {
+				return false;
+			}
+			if (path == null) {
+				if (other.path != null) {
+					return false;
+				}
+			} else if (!path.equals(other.path)) {
+				return false;
+			}
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + level;
+			result = prime * result + column;
+			result = prime * result + row;
+			result = prime * result + ((path == null) ? 0 : path.hashCode());
+			return result;
+		}
+	}
+
+	final Rectangle region;
+
+	public TileTask(final URL url, final int level, final Rectangle region, final JComponent component) {
+		this(url, level, region, component, null);
+	}
+
+	public TileTask(final URL url, final int level, final Rectangle region, final JComponent component,
+	        final ImagePyramidStore pyramids) {
+		super(url, level, component, pyramids);
+		this.region = region;
+	}
+
+	@Override
+	protected void configure(final ImageReadParam readParam, final int factor) {
+		if (factor > 1) {
+			// map the region onto the stored level, covering every partial pixel
+			int x = region.x / factor;
+			int y = region.y / factor;
+			int width = (region.x + region.width + factor - 1) / factor - x;
+			int height = (region.y + region.height + factor - 1) / factor - y;
+			readParam.setSourceRegion(new Rectangle(x, y, width, height));
+		} else {
+			readParam.setSourceRegion(region);
+		}
+		super.configure(readParam, factor);
+	}
+}
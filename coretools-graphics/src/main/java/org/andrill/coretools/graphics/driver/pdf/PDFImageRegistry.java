@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools.graphics.driver.pdf;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.Image;
+import com.lowagie.text.pdf.PdfContentByte;
+import com.lowagie.text.pdf.PdfPatternPainter;
+import com.lowagie.text.pdf.PdfTemplate;
+import com.lowagie.text.pdf.PdfWriter;
+
+/**
+ * A document-scoped registry of the images and texture patterns embedded in a PDF. Each distinct image is embedded
+ * once, as a form XObject that is written to the file as soon as it is created, and every page that draws it refers to
+ * that XObject. Texture patterns refer to the same XObjects, so a texture used on every page is also only embedded
+ * once.
+ * <p>
+ * Images are identified by a key that should include everything that affects the pixels, e.g. the URL and the
+ * resolution the image was loaded at.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public class PDFImageRegistry {
+	private static class PatternKey {
+		final String image;
+		final float[] matrix;
+
+		PatternKey(final String image, final float[] matrix) {
+			this.image = image;
+			this.matrix = matrix;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof PatternKey)) {
+				return false;
+			}
+			PatternKey other = (PatternKey) obj;
+			return image.equals(other.image) && Arrays.equals(matrix, other.matrix);
+		}
+
+		@Override
+		public int hashCode() {
+			return (31 * image.hashCode()) + Arrays.hashCode(matrix);
+		}
+	}
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PDFImageRegistry.class);
+	protected final PdfContentByte content;
+	protected final Map<String, PdfTemplate> images = new HashMap<String, PdfTemplate>();
+	protected final Map<PatternKey, PdfPatternPainter> patterns = new HashMap<PatternKey, PdfPatternPainter>();
+
+	/**
+	 * Create a new PDFImageRegistry.
+	 *
+	 * @param writer
+	 *            the writer of the document.
+	 */
+	public PDFImageRegistry(final PdfWriter writer) {
+		content = writer.getDirectContent();
+	}
+
+	/**
+	 * Gets the XObject for an image, embedding the image the first time it is requested. The XObject is one unit per
+	 * pixel, with the origin at the bottom left corner of the image.
+	 *
+	 * @param key
+	 *            the key identifying the image.
+	 * @param image
+	 *            the image, used only if it has not been embedded yet.
+	 * @return the XObject or null if the image could not be embedded.
+	 */
+	public synchronized PdfTemplate getImage(final String key, final BufferedImage image) {
+		PdfTemplate template = images.get(key);
+		if (template == null) {
+			try {
+				int width = image.getWidth();
+				int height = image.getHeight();
+				template = content.createTemplate(width, height);
+				template.addImage(Image.getInstance(image, null), width, 0, 0, height, 0, 0);
+				content.getPdfWriter().releaseTemplate(template);
+				images.put(key, template);
+			} catch (IOException e) {
+				LOGGER.error("Unable to embed image {}: {}", key, e.getMessage());
+				return null;
+			} catch (DocumentException e) {
+				LOGGER.error("Unable to embed image {}: {}", key, e.getMessage());
+				return null;
+			}
+		}
+		return template;
+	}
+
+	/**
+	 * Gets the number of distinct images embedded.
+	 *
+	 * @return the number of images.
+	 */
+	public synchronized int getImageCount() {
+		return images.size();
+	}
+
+	/**
+	 * Gets a pattern that tiles an image, as a Java2D TexturePaint does.
+	 *
+	 * @param key
+	 *            the key identifying the image.
+	 * @param image
+	 *            the image, used only if it has not been embedded yet.
+	 * @param anchor
+	 *            the anchor rectangle of the texture in user space.
+	 * @param transform
+	 *            the transform from user space to the space of the content the pattern is used in.
+	 * @return the pattern or null if the image could not be embedded.
+	 */
+	public synchronized PdfPatternPainter getPattern(final String key, final BufferedImage image,
+	        final Rectangle2D anchor, final AffineTransform transform) {
+		AffineTransform tx = new AffineTransform(transform);
+		tx.translate(anchor.getX(), anchor.getY());
+		tx.scale(anchor.getWidth() / image.getWidth(), -anchor.getHeight() / image.getHeight());
+		double[] m = new double[6];
+		tx.getMatrix(m);
+		float[] matrix = new float[] { (float) m[0], (float) m[1], (float) m[2], (float) m[3], (float) m[4],
+		        (float) m[5] };
+
+		PatternKey pk = new PatternKey(key, matrix);
+		PdfPatternPainter pattern = patterns.get(pk);
+		if (pattern == null) {
+			PdfTemplate template = getImage(key, image);
+			if (template == null) {
+				return null;
+			}
+			pattern = content.createPattern(image.getWidth(), image.getHeight());
+			pattern.setPatternMatrix(matrix[0], matrix[1], matrix[2], matrix[3], matrix[4], matrix[5]);
+			pattern.addTemplate(template, 0, 0);
+			patterns.put(pk, pattern);
+		}
+		return pattern;
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools.graphics.driver.pdf;
+
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.image.BufferedImage;
+
+import org.andrill.coretools.graphics.driver.Java2DDriver;
+
+import com.lowagie.text.pdf.PdfContentByte;
+import com.lowagie.text.pdf.PdfPatternPainter;
+import com.lowagie.text.pdf.PdfTemplate;
+
+/**
+ * A Java2DDriver for a page of a PDF that draws images and textures through a {@link PDFImageRegistry}, so they are
+ * embedded once per document rather than once per use. Everything else is drawn by the Graphics2D of the page.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public class PDFPageDriver extends Java2DDriver {
+	protected final PdfContentByte content;
+	protected final float height;
+	protected final PDFImageRegistry images;
+
+	/**
+	 * Create a new PDFPageDriver.
+	 *
+	 * @param graphics
+	 *            the graphics of the page, as created by {@link PdfContentByte#createGraphics(float, float)}.
+	 * @param content
+	 *            the content the graphics draws to.
+	 * @param height
+	 *            the height the graphics was created with.
+	 * @param images
+	 *            the image registry of the document.
+	 */
+	public PDFPageDriver(final Graphics2D graphics, final PdfContentByte content, final float height,
+	        final PDFImageRegistry images) {
+		super(graphics);
+		this.content = content;
+		this.height = height;
+		this.images = images;
+	}
+
+	@Override
+	protected void drawCachedImage(final BufferedImage image, final String key, final AffineTransform at) {
+		PdfTemplate template = images.getImage(key, image);
+		if (template == null) {
+			super.drawCachedImage(image, key, at);
+			return;
+		}
+
+		// the XObject has its origin at the bottom left of the image
+		AffineTransform tx = getContentTransform();
+		tx.concatenate(at);
+		tx.translate(0, image.getHeight());
+		tx.scale(1, -1);
+		double[] m = new double[6];
+		tx.getMatrix(m);
+		content.addTemplate(template, (float) m[0], (float) m[1], (float) m[2], (float) m[3], (float) m[4],
+		        (float) m[5]);
+	}
+
+	@Override
+	protected void fill(final Shape s, final Paint p) {
+		if (!(p instanceof CachedTexturePaint)) {
+			super.fill(s, p);
+			return;
+		}
+		CachedTexturePaint texture = (CachedTexturePaint) p;
+		AffineTransform tx = getContentTransform();
+		PdfPatternPainter pattern = images.getPattern(texture.getKey(), texture.getImage(), texture.getAnchorRect(),
+		        tx);
+		if (pattern == null) {
+			super.fill(s, p);
+			return;
+		}
+
+		content.saveState();
+		content.setPatternFill(pattern);
+		if (appendPath(s, tx) == PathIterator.WIND_EVEN_ODD) {
+			content.eoFill();
+		} else {
+			content.fill();
+		}
+		content.restoreState();
+	}
+
+	// appends the path of a shape to the content and returns its winding rule
+	protected int appendPath(final Shape s, final AffineTransform tx) {
+		PathIterator i = s.getPathIterator(tx);
+		float[] c = new float[6];
+		float x = 0;
+		float y = 0;
+		while (!i.isDone()) {
+			switch (i.currentSegment(c)) {
+				case PathIterator.SEG_MOVETO:
+					content.moveTo(c[0], c[1]);
+					x = c[0];
+					y = c[1];
+					break;
+				case PathIterator.SEG_LINETO:
+					content.lineTo(c[0], c[1]);
+					x = c[0];
+					y = c[1];
+					break;
+				case PathIterator.SEG_QUADTO:
+					content.curveTo(x + (2 * (c[0] - x) / 3), y + (2 * (c[1] - y) / 3), c[2] + (2 * (c[0] - c[2]) / 3),
+					        c[3] + (2 * (c[1] - c[3]) / 3), c[2], c[3]);
+					x = c[2];
+					y = c[3];
+					break;
+				case PathIterator.SEG_CUBICTO:
+					content.curveTo(c[0], c[1], c[2], c[3], c[4], c[5]);
+					x = c[4];
+					y = c[5];
+					break;
+				case PathIterator.SEG_CLOSE:
+					content.closePath();
+					break;
+				default:
+					break;
+			}
+			i.next();
+		}
+		return i.getWindingRule();
+	}
+
+	// the transform from user space to the space of the content, as PdfGraphics2D draws it
+	protected AffineTransform getContentTransform() {
+		AffineTransform tx = new AffineTransform(1, 0, 0, -1, 0, height);
+		tx.concatenate(g2d.getTransform());
+		return tx;
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools.graphics.util;
+
+/**
+ * The header information of an image, as read by {@link ImageInfo}.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public class ImageMetadata {
+	protected final int width;
+	protected final int height;
+	protected final int format;
+	protected final String formatName;
+	protected final int bitsPerPixel;
+	protected final int physicalWidthDpi;
+	protected final int physicalHeightDpi;
+
+	/**
+	 * Create a new ImageMetadata from a successfully checked ImageInfo.
+	 *
+	 * @param ii
+	 *            the image info.
+	 */
+	public ImageMetadata(final ImageInfo ii) {
+		this(ii.getWidth(), ii.getHeight(), ii.getFormat(), ii.getFormatName(), ii.getBitsPerPixel(), ii
+		        .getPhysicalWidthDpi(), ii.getPhysicalHeightDpi());
+	}
+
+	/**
+	 * Create a new ImageMetadata.
+	 *
+	 * @param width
+	 *            the width in pixels.
+	 * @param height
+	 *            the height in pixels.
+	 * @param format
+	 *            the format as one of the ImageInfo FORMAT_xyz constants.
+	 * @param formatName
+	 *            the format name.
+	 * @param bitsPerPixel
+	 *            the number of bits per pixel.
+	 * @param physicalWidthDpi
+	 *            the horizontal resolution in dpi or -1 if unknown.
+	 * @param physicalHeightDpi
+	 *            the vertical resolution in dpi or -1 if unknown.
+	 */
+	public ImageMetadata(final int width, final int height, final int format, final String formatName,
+	        final int bitsPerPixel, final int physicalWidthDpi, final int physicalHeightDpi) {
+		this.width = width;
+		this.height = height;
+		this.format = format;
+		this.formatName = formatName;
+		this.bitsPerPixel = bitsPerPixel;
+		this.physicalWidthDpi = physicalWidthDpi;
+		this.physicalHeightDpi = physicalHeightDpi;
+	}
+
+	/**
+	 * Gets the number of bits per pixel.
+	 *
+	 * @return the bits per pixel.
+	 */
+	public int getBitsPerPixel() {
+		return bitsPerPixel;
+	}
+
+	/**
+	 * Gets the format as one of the ImageInfo FORMAT_xyz constants.
+	 *
+	 * @return the format.
+	 */
+	public int getFormat() {
+		return format;
+	}
+
+	/**
+	 * Gets the format name.
+	 *
+	 * @return the format name.
+	 */
+	public String getFormatName() {
+		return formatName;
+	}
+
+	/**
+	 * Gets the height in pixels.
+	 *
+	 * @return the height.
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Gets the vertical resolution.
+	 *
+	 * @return the resolution in dpi or -1 if unknown.
+	 */
+	public int getPhysicalHeightDpi() {
+		return physicalHeightDpi;
+	}
+
+	/**
+	 * Gets the physical height.
+	 *
+	 * @return the height in inches or -1 if unknown.
+	 */
+	public float getPhysicalHeightInch() {
+		return (height > 0 && physicalHeightDpi > 0) ? (float) height / (float) physicalHeightDpi : -1.0f;
+	}
+
+	/**
+	 * Gets the horizontal resolution.
+	 *
+	 * @return the resolution in dpi or -1 if unknown.
+	 */
+	public int getPhysicalWidthDpi() {
+		return physicalWidthDpi;
+	}
+
+	/**
+	 * Gets the physical width.
+	 *
+	 * @return the width in inches or -1 if unknown.
+	 */
+	public float getPhysicalWidthInch() {
+		return (width > 0 && physicalWidthDpi > 0) ? (float) width / (float) physicalWidthDpi : -1.0f;
+	}
+
+	/**
+	 * Gets the width in pixels.
+	 *
+	 * @return the width.
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public String toString() {
+		return "ImageMetadata[" + formatName + ", " + width + "x" + height + ", " + bitsPerPixel + " bpp]";
+	}
+}
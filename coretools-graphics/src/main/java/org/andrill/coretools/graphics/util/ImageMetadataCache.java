@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools.graphics.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.andrill.coretools.FileUtils;
+import org.andrill.coretools.JobService;
+import org.andrill.coretools.JobService.Priority;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * A cache of image header information so each image is only opened and examined once. Entries for local files are
+ * keyed on the file's modification time and size and are re-read if either changes. If a file is set, entries for
+ * local files are loaded from it and written back to it in the background as new images are examined.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+@Singleton
+public class ImageMetadataCache {
+	// a cached entry; modified and length are -1 for non-file URLs
+	static class Entry {
+		final ImageMetadata metadata;
+		final long modified;
+		final long length;
+
+		Entry(final ImageMetadata metadata, final long modified, final long length) {
+			this.metadata = metadata;
+			this.modified = modified;
+			this.length = length;
+		}
+	}
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ImageMetadataCache.class);
+
+	protected final JobService jobs;
+	protected final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+	protected final AtomicBoolean saveScheduled = new AtomicBoolean(false);
+	protected volatile File file = null;
+
+	@Inject
+	ImageMetadataCache(final JobService jobs) {
+		this.jobs = jobs;
+	}
+
+	/**
+	 * Records that a local image was copied, so the copy does not need to be examined again.
+	 *
+	 * @param from
+	 *            the original image URL.
+	 * @param to
+	 *            the copied image URL.
+	 */
+	public void copied(final URL from, final URL to) {
+		ImageMetadata metadata = get(from);
+		File copy = FileUtils.toFile(to);
+		if (metadata != null && copy != null && copy.isFile()) {
+			entries.put(to.toExternalForm(), new Entry(metadata, copy.lastModified(), copy.length()));
+			scheduleSave();
+		}
+	}
+
+	/**
+	 * Gets the header information of the specified image, reading it if it is not cached or is out of date.
+	 *
+	 * @param url
+	 *            the image URL.
+	 * @return the image metadata or null if the image could not be read.
+	 */
+	public ImageMetadata get(final URL url) {
+		String path = url.toExternalForm();
+		File local = FileUtils.toFile(url);
+		long modified = (local == null) ? -1 : local.lastModified();
+		long length = (local == null) ? -1 : local.length();
+		Entry entry = entries.get(path);
+		if (entry != null && entry.modified == modified && entry.length == length) {
+			return entry.metadata;
+		}
+
+		ImageInfo ii = new ImageInfo();
+		InputStream is = null;
+		try {
+			is = url.openStream();
+			ii.setInput(is);
+			if (!ii.check()) {
+				return null;
+			}
+			ImageMetadata metadata = new ImageMetadata(ii);
+			entries.put(path, new Entry(metadata, modified, length));
+			if (local != null) {
+				scheduleSave();
+			}
+			return metadata;
+		} catch (IOException e) {
+			LOGGER.error("Unable to read image {}: {}", url, e.getMessage());
+			return null;
+		} finally {
+			FileUtils.closeQuietly(is);
+		}
+	}
+
+	/**
+	 * Gets the file the cache is persisted to.
+	 *
+	 * @return the file or null if the cache is not persisted.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Sets the file the cache is persisted to, loading any entries already stored in it.
+	 *
+	 * @param file
+	 *            the file or null to stop persisting the cache.
+	 */
+	public synchronized void setFile(final File file) {
+		this.file = file;
+		if (file == null || !file.isFile()) {
+			return;
+		}
+		InputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			Properties p = new Properties();
+			p.load(in);
+			for (String path : p.stringPropertyNames()) {
+				Entry entry = parse(p.getProperty(path));
+				if (entry != null) {
+					entries.putIfAbsent(path, entry);
+				}
+			}
+		} catch (IOException e) {
+			LOGGER.debug("Unable to read image metadata {}: {}", file, e.getMessage());
+		} finally {
+			FileUtils.closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Writes the entries for local images to the cache file, if one is set.
+	 */
+	public synchronized void save() {
+		File f = file;
+		if (f == null) {
+			return;
+		}
+		Properties p = new Properties();
+		for (Map.Entry<String, Entry> e : entries.entrySet()) {
+			if (e.getValue().modified >= 0) {
+				p.setProperty(e.getKey(), format(e.getValue()));
+			}
+		}
+		File tmp = new File(f.getPath() + ".tmp");
+		OutputStream out = null;
+		try {
+			out = new FileOutputStream(tmp);
+			p.store(out, "Image metadata");
+			out.close();
+			out = null;
+			FileUtils.replace(tmp, f);
+		} catch (IOException e) {
+			LOGGER.debug("Unable to write image metadata {}: {}", f, e.getMessage());
+			tmp.delete();
+		} finally {
+			FileUtils.closeQuietly(out);
+		}
+	}
+
+	// coalesces the saves triggered by a burst of new entries into one background write
+	protected void scheduleSave() {
+		if (file != null && saveScheduled.compareAndSet(false, true)) {
+			jobs.submit(new Callable<Object>() {
+				public Object call() {
+					saveScheduled.set(false);
+					save();
+					return null;
+				}
+			}, Priority.LOW);
+		}
+	}
+
+	protected String format(final Entry entry) {
+		ImageMetadata m = entry.metadata;
+		return entry.modified + "," + entry.length + "," + m.getWidth() + "," + m.getHeight() + "," + m.getFormat()
+		        + "," + m.getFormatName() + "," + m.getBitsPerPixel() + "," + m.getPhysicalWidthDpi() + ","
+		        + m.getPhysicalHeightDpi();
+	}
+
+	protected Entry parse(final String value) {
+		String[] v = value.split(",");
+		if (v.length != 9) {
+			return null;
+		}
+		try {
+			return new Entry(new ImageMetadata(Integer.parseInt(v[2]), Integer.parseInt(v[3]), Integer.parseInt(v[4]),
+			        v[5], Integer.parseInt(v[6]), Integer.parseInt(v[7]), Integer.parseInt(v[8])), Long.parseLong(v[0]),
+			        Long.parseLong(v[1]));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+}
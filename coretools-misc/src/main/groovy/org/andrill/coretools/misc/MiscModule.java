@@ -15,13 +15,16 @@
  */
 package org.andrill.coretools.misc;
 
+import org.andrill.coretools.misc.io.BinaryReaderWriter;
 import org.andrill.coretools.misc.io.ExcelReaderWriter;
 import org.andrill.coretools.misc.io.LegacyReader;
 import org.andrill.coretools.misc.io.XMLReaderWriter;
+import org.andrill.coretools.misc.scheme.SchemeTexturePreloader;
 import org.andrill.coretools.misc.scheme.XMLSchemeFactory;
 import org.andrill.coretools.model.io.ModelReader;
 import org.andrill.coretools.model.io.ModelWriter;
 import org.andrill.coretools.model.scheme.SchemeManager;
+import org.andrill.coretools.scene.DefaultScene;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.multibindings.Multibinder;
@@ -31,16 +34,23 @@ public class MiscModule extends AbstractModule {
 	protected void configure() {
 	    // configure our XML Scheme Factory
 		Multibinder.newSetBinder(binder(), SchemeManager.Factory.class).addBinding().to(XMLSchemeFactory.class);
+
+		// preload scheme textures and redraw scenes when the schemes change
+		Multibinder<SchemeManager.Listener> listeners = Multibinder.newSetBinder(binder(), SchemeManager.Listener.class);
+		listeners.addBinding().to(SchemeTexturePreloader.class);
+		listeners.addBinding().to(DefaultScene.SchemeListener.class);
 		
 		// configure our ModelReaders
 		Multibinder<ModelReader> readers = Multibinder.newSetBinder(binder(), ModelReader.class);
 		readers.addBinding().to(LegacyReader.class);
 		readers.addBinding().to(XMLReaderWriter.class);
 		readers.addBinding().to(ExcelReaderWriter.class);
+		readers.addBinding().to(BinaryReaderWriter.class);
 		
 		// configure our ModelWriters
 		Multibinder<ModelWriter> writers = Multibinder.newSetBinder(binder(), ModelWriter.class);
 		writers.addBinding().to(XMLReaderWriter.class);
 		writers.addBinding().to(ExcelReaderWriter.class);
+		writers.addBinding().to(BinaryReaderWriter.class);
 	}
 }
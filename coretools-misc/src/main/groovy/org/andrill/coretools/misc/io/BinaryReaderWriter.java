@@ -0,0 +1,359 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools.misc.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.andrill.coretools.model.Model;
+import org.andrill.coretools.model.ModelContainer;
+import org.andrill.coretools.model.ModelManager;
+import org.andrill.coretools.model.io.ModelReader;
+import org.andrill.coretools.model.io.ModelWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+
+/**
+ * A compact binary reader and writer for containers. It holds exactly the same information as the XML format: the
+ * type of each model and its properties, in order, as strings.
+ * <p>
+ * The file starts with the bytes <code>CTB</code> and a version byte, followed by a varint count of models. Each model
+ * is a string reference to its type, a varint count of properties and, for each property, a string reference to its
+ * name and a tagged value. A string reference is a varint: 0 is followed by a new string, which is added to the string
+ * table, and any other value n refers to the (n-1)th string in the table. Values are one of:
+ * <ul>
+ * <li>a decimal number, written as a zig-zag varint unscaled value and a varint scale</li>
+ * <li>a length: a decimal number followed by a string reference to its unit</li>
+ * <li>a string reference, for short strings such as scheme references</li>
+ * <li>an inline string, for long strings such as descriptions</li>
+ * </ul>
+ * Numbers are only written as decimals when they read back as the exact same string, so the format is lossless.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public class BinaryReaderWriter implements ModelReader, ModelWriter {
+	private static final Logger LOGGER = LoggerFactory.getLogger(BinaryReaderWriter.class);
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final byte[] MAGIC = { 'C', 'T', 'B' };
+	private static final int VERSION = 1;
+	private static final int DECIMAL = 0;
+	private static final int LENGTH = 1;
+	private static final int SHARED = 2;
+	private static final int INLINE = 3;
+	private static final int MAX_SHARED = 64;
+
+	// the strings of a file, in the order they were first written
+	private static class Strings {
+		final Map<String, Integer> indices = new HashMap<String, Integer>();
+		final List<String> strings = new ArrayList<String>();
+
+		String read(final DataInputStream in) throws IOException {
+			int ref = readVarInt(in);
+			if (ref == 0) {
+				String s = readString(in);
+				strings.add(s);
+				return s;
+			} else if (ref > strings.size()) {
+				throw new IOException("Invalid string reference " + ref);
+			}
+			return strings.get(ref - 1);
+		}
+
+		void write(final String s, final DataOutputStream out) throws IOException {
+			Integer index = indices.get(s);
+			if (index == null) {
+				writeVarInt(0, out);
+				writeString(s, out);
+				strings.add(s);
+				indices.put(s, strings.size());
+			} else {
+				writeVarInt(index, out);
+			}
+		}
+	}
+
+	protected final ModelManager factory;
+
+	/**
+	 * Create a new BinaryReaderWriter.
+	 *
+	 * @param factory
+	 *            the model manager to build models with.
+	 */
+	@Inject
+	public BinaryReaderWriter(final ModelManager factory) {
+		this.factory = factory;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public String getFormat() {
+		return "bin";
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void read(final ModelContainer container, final InputStream stream) throws IOException {
+		long start = System.currentTimeMillis();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 16384));
+		for (byte b : MAGIC) {
+			if (in.readByte() != b) {
+				throw new IOException("Not a binary container");
+			}
+		}
+		int version = in.readUnsignedByte();
+		if (version != VERSION) {
+			throw new IOException("Unsupported binary container version " + version);
+		}
+
+		Strings strings = new Strings();
+		Map<String, String> data = new LinkedHashMap<String, String>();
+		int count = readVarInt(in);
+		int built = 0;
+		for (int i = 0; i < count; i++) {
+			String type = strings.read(in);
+			int properties = readVarInt(in);
+			data.clear();
+			for (int j = 0; j < properties; j++) {
+				String name = strings.read(in);
+				String value;
+				int tag = in.readUnsignedByte();
+				switch (tag) {
+					case DECIMAL:
+						value = readDecimal(in);
+						break;
+					case LENGTH:
+						value = readDecimal(in) + ' ' + strings.read(in);
+						break;
+					case SHARED:
+						value = strings.read(in);
+						break;
+					case INLINE:
+						value = readString(in);
+						break;
+					default:
+						throw new IOException("Invalid value tag " + tag);
+				}
+				if (ImagePaths.isImagePath(type, name)) {
+					value = ImagePaths.resolve(container, value);
+				}
+				data.put(name, value);
+			}
+
+			// create our model
+			Model model = factory.build(type, data);
+			if (model != null) {
+				container.add(model);
+				built++;
+			} else {
+				LOGGER.warn("Unable to create model for type {}", type);
+			}
+		}
+		LOGGER.debug("Read {} binary models in {} ms", built, (System.currentTimeMillis() - start));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void write(final ModelContainer container, final OutputStream stream) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 16384));
+		out.write(MAGIC);
+		out.writeByte(VERSION);
+
+		Strings strings = new Strings();
+		List<Model> models = container.getModels();
+		writeVarInt(models.size(), out);
+		for (Model m : models) {
+			String type = m.getModelType();
+			List<Entry<String, String>> data = new ArrayList<Entry<String, String>>();
+			for (Entry<String, String> e : m.getModelData().entrySet()) {
+				if (e.getValue() != null) {
+					data.add(e);
+				}
+			}
+			strings.write(type, out);
+			writeVarInt(data.size(), out);
+			for (Entry<String, String> e : data) {
+				String value = String.valueOf(e.getValue());
+				if (ImagePaths.isImagePath(type, e.getKey())) {
+					value = ImagePaths.relativize(value);
+				}
+				strings.write(e.getKey(), out);
+				writeValue(value, strings, out);
+			}
+		}
+		out.flush();
+	}
+
+	private void writeValue(final String value, final Strings strings, final DataOutputStream out)
+	        throws IOException {
+		int space = value.indexOf(' ');
+		int end = (space == -1) ? value.length() : space;
+		int scale = scale(value, end);
+		if (scale >= 0) {
+			if (space == -1) {
+				out.writeByte(DECIMAL);
+				writeDecimal(value, end, scale, out);
+				return;
+			}
+			String unit = value.substring(space + 1);
+			if ((unit.length() > 0) && (unit.indexOf(' ') == -1)) {
+				out.writeByte(LENGTH);
+				writeDecimal(value, end, scale, out);
+				strings.write(unit, out);
+				return;
+			}
+		}
+		if (value.length() <= MAX_SHARED) {
+			out.writeByte(SHARED);
+			strings.write(value, out);
+		} else {
+			out.writeByte(INLINE);
+			writeString(value, out);
+		}
+	}
+
+	// the scale of a number written exactly as BigDecimal.toPlainString() would, or -1 if it can't be read back as is
+	private static int scale(final String s, final int end) {
+		int i = ((end > 0) && (s.charAt(0) == '-')) ? 1 : 0;
+		int start = i;
+		int digits = 0;
+		int point = -1;
+		boolean zero = true;
+		for (; i < end; i++) {
+			char c = s.charAt(i);
+			if ((c >= '0') && (c <= '9')) {
+				digits++;
+				zero &= (c == '0');
+			} else if ((c == '.') && (point == -1)) {
+				point = i;
+			} else {
+				return -1;
+			}
+		}
+		int whole = ((point == -1) ? end : point) - start;
+		if ((digits == 0) || (digits > 18) || (whole == 0) || (point == end - 1)) {
+			return -1; // empty, too long, or missing digits around the point
+		}
+		if ((whole > 1) && (s.charAt(start) == '0')) {
+			return -1; // leading zero
+		}
+		if ((start == 1) && zero) {
+			return -1; // negative zero
+		}
+		return (point == -1) ? 0 : end - point - 1;
+	}
+
+	private static void writeDecimal(final String s, final int end, final int scale, final DataOutputStream out)
+	        throws IOException {
+		long unscaled = 0;
+		for (int i = (s.charAt(0) == '-') ? 1 : 0; i < end; i++) {
+			char c = s.charAt(i);
+			if (c != '.') {
+				unscaled = (unscaled * 10) + (c - '0');
+			}
+		}
+		if (s.charAt(0) == '-') {
+			unscaled = -unscaled;
+		}
+		writeVarLong((unscaled << 1) ^ (unscaled >> 63), out);
+		writeVarInt(scale, out);
+	}
+
+	private static String readDecimal(final DataInputStream in) throws IOException {
+		long zigzag = readVarLong(in);
+		long unscaled = (zigzag >>> 1) ^ -(zigzag & 1);
+		int scale = readVarInt(in);
+		if (scale > 18) {
+			throw new IOException("Invalid decimal scale " + scale);
+		}
+		StringBuilder digits = new StringBuilder(24).append(Math.abs(unscaled));
+		while (digits.length() <= scale) {
+			digits.insert(0, '0');
+		}
+		if (scale > 0) {
+			digits.insert(digits.length() - scale, '.');
+		}
+		if (unscaled < 0) {
+			digits.insert(0, '-');
+		}
+		return digits.toString();
+	}
+
+	private static void writeString(final String s, final DataOutputStream out) throws IOException {
+		byte[] bytes = s.getBytes(UTF8);
+		writeVarInt(bytes.length, out);
+		out.write(bytes);
+	}
+
+	private static String readString(final DataInputStream in) throws IOException {
+		byte[] bytes = new byte[readVarInt(in)];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	private static void writeVarInt(final int value, final DataOutputStream out) throws IOException {
+		writeVarLong(value & 0xFFFFFFFFL, out);
+	}
+
+	private static int readVarInt(final DataInputStream in) throws IOException {
+		long value = readVarLong(in);
+		if ((value < 0) || (value > Integer.MAX_VALUE)) {
+			throw new IOException("Invalid varint " + value);
+		}
+		return (int) value;
+	}
+
+	private static void writeVarLong(long value, final DataOutputStream out) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	private static long readVarLong(final DataInputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.read();
+			if (b == -1) {
+				throw new EOFException();
+			}
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Invalid varint");
+	}
+}
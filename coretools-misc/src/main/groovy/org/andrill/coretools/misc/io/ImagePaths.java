@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools.misc.io;
+
+import org.andrill.coretools.model.ModelContainer;
+import org.andrill.coretools.model.Project;
+
+/**
+ * Converts image paths between the absolute URLs that Image models hold and the project-relative form they are stored
+ * in, so every container format stores them the same way.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+final class ImagePaths {
+
+	private ImagePaths() {
+		// not instantiable
+	}
+
+	/**
+	 * Checks whether a property holds an image path.
+	 *
+	 * @param type
+	 *            the model type.
+	 * @param name
+	 *            the property name.
+	 * @return true if the property is the path of an Image model.
+	 */
+	static boolean isImagePath(final String type, final String name) {
+		return "Image".equals(type) && "path".equals(name);
+	}
+
+	/**
+	 * Resolves a stored image path against the container's project.
+	 *
+	 * @param container
+	 *            the container being read.
+	 * @param value
+	 *            the stored path.
+	 * @return the absolute path or the value unchanged if the container has no project.
+	 */
+	static String resolve(final ModelContainer container, final String value) {
+		// brg 3/11/2014: image paths are stored relative to the project, as file:/images/<file>
+		Project project = container.getProject();
+		if ((project != null) && (value.length() > 6)) {
+			return project.getPath().toString() + value.substring(6);
+		}
+		return value;
+	}
+
+	/**
+	 * Strips an image path down to the form it is stored in.
+	 *
+	 * @param value
+	 *            the image URL.
+	 * @return the project-relative path.
+	 */
+	static String relativize(final String value) {
+		// brg 3/11/2014: strip down URL to image directory
+		return "file:/images/" + value.substring(value.lastIndexOf('/') + 1);
+	}
+}
@@ -22,6 +22,7 @@ import java.io.InputStream
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 
+import org.andrill.coretools.misc.scheme.XMLScheme
 import org.andrill.coretools.model.ModelContainer;
 import org.andrill.coretools.model.ModelManager;
 import org.andrill.coretools.model.io.ModelReader;
@@ -222,11 +223,19 @@ class LegacyReader implements ModelReader {
 		split.remove('stain')
 		code = split.join(',')
 		
+		// prefer an exact match in any scheme over the closest match in one
 		def guess
-		for (scheme in schemes.getSchemes(type)) {
-			guess = scheme.get(code)
+		def candidates = schemes.getSchemes(type)
+		for (scheme in candidates) {
+			guess = scheme.getEntry(code)
 			if (guess) break
 		}
+		if (!guess) {
+			for (scheme in candidates) {
+				guess = (scheme instanceof XMLScheme) ? scheme.getEntry(code, true) : null
+				if (guess) break
+			}
+		}
 		
 		if (guess) {
 			return "${guess.scheme.id}:${guess.code}"
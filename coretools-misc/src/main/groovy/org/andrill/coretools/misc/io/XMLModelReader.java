@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools.misc.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.andrill.coretools.model.Model;
+import org.andrill.coretools.model.ModelContainer;
+import org.andrill.coretools.model.ModelManager;
+import org.andrill.coretools.model.io.ModelReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+
+/**
+ * Reads containers in the XML format written by {@link XMLReaderWriter}. The document is streamed and each model is
+ * built as soon as its element ends, so memory use does not grow with the size of the file.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public class XMLModelReader implements ModelReader {
+	private static final Logger LOGGER = LoggerFactory.getLogger(XMLModelReader.class);
+	private static final String MODEL = "model";
+	private static final String PROPERTY = "property";
+	private final ModelManager factory;
+	private final XMLInputFactory inputs;
+
+	/**
+	 * Create a new XMLModelReader.
+	 *
+	 * @param factory
+	 *            the model manager to build models with.
+	 */
+	@Inject
+	public XMLModelReader(final ModelManager factory) {
+		this.factory = factory;
+		inputs = XMLInputFactory.newInstance();
+		inputs.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		inputs.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+		inputs.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		inputs.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public String getFormat() {
+		return "xml";
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void read(final ModelContainer container, final InputStream stream) throws IOException {
+		long start = System.currentTimeMillis();
+		int count = 0;
+		XMLStreamReader xml;
+		synchronized (inputs) {
+			try {
+				xml = inputs.createXMLStreamReader(stream);
+			} catch (XMLStreamException e) {
+				throw new IOException("Unable to read XML: " + e.getMessage());
+			}
+		}
+
+		try {
+			Map<String, String> data = new LinkedHashMap<String, String>();
+			StringBuilder text = new StringBuilder();
+			String type = null;
+			String name = null;
+			int depth = 0;
+			while (xml.hasNext()) {
+				switch (xml.next()) {
+					case XMLStreamConstants.START_ELEMENT:
+						depth++;
+						if ((depth == 2) && MODEL.equals(xml.getLocalName())) {
+							type = attribute(xml, "type");
+							data.clear();
+						} else if ((depth == 3) && (type != null) && PROPERTY.equals(xml.getLocalName())) {
+							name = attribute(xml, "name");
+							text.setLength(0);
+						}
+						break;
+					case XMLStreamConstants.CHARACTERS:
+					case XMLStreamConstants.CDATA:
+					case XMLStreamConstants.SPACE:
+						if (name != null) {
+							text.append(xml.getText());
+						}
+						break;
+					case XMLStreamConstants.END_ELEMENT:
+						if ((depth == 3) && (name != null)) {
+							String value = text.toString();
+							if (ImagePaths.isImagePath(type, name)) {
+								value = ImagePaths.resolve(container, value);
+							}
+							data.put(name, value);
+							name = null;
+						} else if ((depth == 2) && (type != null)) {
+							// create our model
+							Model model = factory.build(type, data);
+							if (model != null) {
+								container.add(model);
+								count++;
+							} else {
+								LOGGER.warn("Unable to create model for type {}", type);
+							}
+							type = null;
+						}
+						depth--;
+						break;
+					default:
+						break;
+				}
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException("Unable to read XML: " + e.getMessage());
+		} finally {
+			try {
+				xml.close();
+			} catch (XMLStreamException e) {
+				// ignore
+			}
+		}
+		LOGGER.debug("Read {} XML models in {} ms", count, (System.currentTimeMillis() - start));
+	}
+
+	private String attribute(final XMLStreamReader xml, final String name) {
+		String value = xml.getAttributeValue(null, name);
+		return (value == null) ? "" : value;
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools.misc.io;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.andrill.coretools.model.Model;
+import org.andrill.coretools.model.ModelContainer;
+import org.andrill.coretools.model.io.ModelWriter;
+
+/**
+ * Writes containers in the XML format read by {@link XMLModelReader}. Models are written to the stream as they are
+ * visited rather than built up as a document first.
+ * <p>
+ * Every character outside of printable ASCII is written as a numeric character reference, so the output does not
+ * depend on the platform encoding.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public class XMLModelWriter implements ModelWriter {
+	private static final String NEWLINE = "\n";
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public String getFormat() {
+		return "xml";
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void write(final ModelContainer container, final OutputStream stream) throws IOException {
+		Writer out = new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"), 16384);
+		if (container.getModels().isEmpty()) {
+			out.write("<container />");
+		} else {
+			out.write("<container>");
+			for (Model m : container.getModels()) {
+				String type = m.getModelType();
+				Map<String, String> data = m.getModelData();
+				out.write(NEWLINE);
+				out.write("  <model type='");
+				escape(type, true, out);
+				if (data.isEmpty()) {
+					out.write("' />");
+					continue;
+				}
+				out.write("'>");
+				for (Entry<String, String> e : data.entrySet()) {
+					if (e.getValue() == null) {
+						continue;
+					}
+					String value = String.valueOf(e.getValue());
+					if (ImagePaths.isImagePath(type, e.getKey())) {
+						value = ImagePaths.relativize(value);
+					}
+					out.write(NEWLINE);
+					out.write("    <property name='");
+					escape(e.getKey(), true, out);
+					out.write("'>");
+					escape(value, false, out);
+					out.write("</property>");
+				}
+				out.write(NEWLINE);
+				out.write("  </model>");
+			}
+			out.write(NEWLINE);
+			out.write("</container>");
+		}
+		out.flush();
+	}
+
+	/**
+	 * Writes a string as XML text or attribute content.
+	 *
+	 * @param s
+	 *            the string.
+	 * @param attribute
+	 *            true if the string is a single-quoted attribute value.
+	 * @param out
+	 *            the writer.
+	 * @throws IOException
+	 *             thrown if the string cannot be written.
+	 */
+	protected static void escape(final String s, final boolean attribute, final Writer out) throws IOException {
+		int start = 0;
+		int length = s.length();
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			String replacement = null;
+			if (c == '&') {
+				replacement = "&amp;";
+			} else if (c == '<') {
+				replacement = "&lt;";
+			} else if (c == '>') {
+				replacement = "&gt;";
+			} else if (attribute && (c == '\'')) {
+				replacement = "&apos;";
+			} else if ((c > 127) || ((c < 32) && (c != '\t') && (c != '\n') && (c != '\r'))) {
+				// 1/20/2015 brg: write anything that isn't low ASCII as a decimal character reference
+				int code = s.codePointAt(i);
+				replacement = ((code < 32) || ((code >= 0xD800) && (code <= 0xDFFF))) ? "" : ("&#" + code + ';');
+				if (Character.charCount(code) == 2) {
+					out.write(s, start, i - start);
+					out.write(replacement);
+					i++;
+					start = i + 1;
+					continue;
+				}
+			}
+			if (replacement != null) {
+				out.write(s, start, i - start);
+				out.write(replacement);
+				start = i + 1;
+			}
+		}
+		out.write(s, start, length - start);
+	}
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools.misc.scheme;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An inverted index of the letter pairs in a set of keys, for finding the key most similar to a string. Similarity is
+ * the Dice coefficient of the letter pairs of the comma-separated words in each string: twice the number of pairs
+ * they share divided by the total number of pairs. Only keys that share at least one pair with the string are scored,
+ * so a lookup does not have to compare against every key.
+ * <p>
+ * Keys are added once, before the index is used; lookups may then be made from any thread.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public class BigramIndex<T> {
+	// the keys containing a pair and how many times each contains it
+	private static class Posting {
+		int[] keys = new int[4];
+		int[] counts = new int[4];
+		int size = 0;
+
+		void add(final int key, final int count) {
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, size * 2);
+				counts = Arrays.copyOf(counts, size * 2);
+			}
+			keys[size] = key;
+			counts[size] = count;
+			size++;
+		}
+	}
+
+	private final Map<String, Posting> postings = new HashMap<String, Posting>();
+	private final List<T> values = new ArrayList<T>();
+	private int[] sizes = new int[16];
+
+	/**
+	 * Adds a key to the index.
+	 *
+	 * @param key
+	 *            the key.
+	 * @param value
+	 *            the value returned when the key is the best match.
+	 */
+	public void add(final String key, final T value) {
+		int id = values.size();
+		values.add(value);
+		Map<String, Integer> pairs = pairs(key);
+		for (Map.Entry<String, Integer> e : pairs.entrySet()) {
+			Posting posting = postings.get(e.getKey());
+			if (posting == null) {
+				posting = new Posting();
+				postings.put(e.getKey(), posting);
+			}
+			posting.add(id, e.getValue());
+		}
+		if (id == sizes.length) {
+			sizes = Arrays.copyOf(sizes, id * 2);
+		}
+		sizes[id] = size(pairs);
+	}
+
+	/**
+	 * Finds the key most similar to a string. If several keys are equally similar, the one added first is found.
+	 *
+	 * @param str
+	 *            the string.
+	 * @param threshold
+	 *            the similarity the key must exceed.
+	 * @return the value of the key or null if no key is similar enough.
+	 */
+	public T match(final String str, final double threshold) {
+		return match(str, threshold, new int[values.size()], new int[values.size()]);
+	}
+
+	/**
+	 * Finds the keys most similar to many strings, as {@link #match(String, double)} would.
+	 *
+	 * @param strs
+	 *            the strings.
+	 * @param threshold
+	 *            the similarity a key must exceed.
+	 * @return the value of the best key for each string, or null for strings with no key similar enough.
+	 */
+	public List<T> match(final List<String> strs, final double threshold) {
+		int[] shared = new int[values.size()];
+		int[] touched = new int[values.size()];
+		Map<String, T> matched = new HashMap<String, T>();
+		List<T> results = new ArrayList<T>(strs.size());
+		for (String str : strs) {
+			if (!matched.containsKey(str)) {
+				matched.put(str, match(str, threshold, shared, touched));
+			}
+			results.add(matched.get(str));
+		}
+		return results;
+	}
+
+	/**
+	 * Computes the similarity of two strings.
+	 *
+	 * @param str1
+	 *            the first string.
+	 * @param str2
+	 *            the second string.
+	 * @return the similarity, from 0 to 1.
+	 */
+	public static double similarity(final String str1, final String str2) {
+		Map<String, Integer> pairs1 = pairs(str1);
+		Map<String, Integer> pairs2 = pairs(str2);
+		int shared = 0;
+		for (Map.Entry<String, Integer> e : pairs1.entrySet()) {
+			Integer count = pairs2.get(e.getKey());
+			if (count != null) {
+				shared += Math.min(count, e.getValue());
+			}
+		}
+		int total = size(pairs1) + size(pairs2);
+		return (total == 0) ? 0 : (2.0 * shared) / total;
+	}
+
+	/**
+	 * Gets the number of keys in the index.
+	 *
+	 * @return the number of keys.
+	 */
+	public int size() {
+		return values.size();
+	}
+
+	// scores the keys sharing pairs with the string; shared must be all zeros and is left that way
+	private T match(final String str, final double threshold, final int[] shared, final int[] touched) {
+		Map<String, Integer> pairs = pairs(str);
+		int count = 0;
+		for (Map.Entry<String, Integer> e : pairs.entrySet()) {
+			Posting posting = postings.get(e.getKey());
+			if (posting != null) {
+				int n = e.getValue();
+				for (int i = 0; i < posting.size; i++) {
+					int id = posting.keys[i];
+					if (shared[id] == 0) {
+						touched[count++] = id;
+					}
+					shared[id] += Math.min(n, posting.counts[i]);
+				}
+			}
+		}
+
+		int size = size(pairs);
+		int best = -1;
+		double bestScore = threshold;
+		for (int i = 0; i < count; i++) {
+			int id = touched[i];
+			double score = (2.0 * shared[id]) / (size + sizes[id]);
+			if ((score > bestScore) || ((score == bestScore) && (best >= 0) && (id < best))) {
+				best = id;
+				bestScore = score;
+			}
+			shared[id] = 0;
+		}
+		return (best < 0) ? null : values.get(best);
+	}
+
+	/**
+	 * Counts the letter pairs of the comma-separated words in a string.
+	 *
+	 * @param str
+	 *            the string.
+	 * @return the count of each pair.
+	 */
+	protected static Map<String, Integer> pairs(final String str) {
+		Map<String, Integer> pairs = new HashMap<String, Integer>();
+		for (String word : str.split(",")) {
+			for (int i = 0; i < word.length() - 1; i++) {
+				String pair = word.substring(i, i + 2);
+				Integer count = pairs.get(pair);
+				pairs.put(pair, (count == null) ? 1 : count + 1);
+			}
+		}
+		return pairs;
+	}
+
+	private static int size(final Map<String, Integer> pairs) {
+		int size = 0;
+		for (int count : pairs.values()) {
+			size += count;
+		}
+		return size;
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools.misc.scheme;
+
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import org.andrill.coretools.JobService;
+import org.andrill.coretools.JobService.Priority;
+import org.andrill.coretools.graphics.driver.ImageCache;
+import org.andrill.coretools.model.scheme.Scheme;
+import org.andrill.coretools.model.scheme.SchemeEntry;
+import org.andrill.coretools.model.scheme.SchemeManager.Listener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Loads the textures of registered schemes into the {@link ImageCache} in the background, so they are ready before
+ * they are first painted. Each scheme is preloaded by one low priority job that loads its textures one at a time.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+@Singleton
+public class SchemeTexturePreloader implements Listener {
+	private static final Logger LOGGER = LoggerFactory.getLogger(SchemeTexturePreloader.class);
+	private final ImageCache cache;
+	private final JobService jobs;
+
+	@Inject
+	SchemeTexturePreloader(final ImageCache cache, final JobService jobs) {
+		this.cache = cache;
+		this.jobs = jobs;
+	}
+
+	public void schemeRegistered(final Scheme scheme) {
+		jobs.submit(new Callable<Object>() {
+			public Object call() {
+				// load one texture at a time, waiting for each before requesting the next, so the preload never has
+				// more than one job queued ahead of the textures being painted
+				int count = 0;
+				for (SchemeEntry entry : scheme.getEntries()) {
+					URL image = entry.getImageURL();
+					if (image != null) {
+						try {
+							cache.get(image, 1, null).get();
+							count++;
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							break;
+						} catch (CancellationException e) {
+							// evicted or cancelled before it loaded; it is loaded again when it is painted
+						} catch (ExecutionException e) {
+							LOGGER.debug("unable to preload texture {}: {}", image, e.getCause().getMessage());
+						}
+					}
+				}
+				LOGGER.debug("preloaded {} textures for scheme {}", count, scheme.getId());
+				return null;
+			}
+		}, Priority.LOW);
+	}
+
+	public void schemeUnregistered(final Scheme scheme) {
+		// nothing to do; the textures are evicted from the cache as needed
+	}
+}
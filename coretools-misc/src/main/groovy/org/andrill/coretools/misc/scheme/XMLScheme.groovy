@@ -32,6 +32,9 @@ public class XMLScheme implements Scheme {
 	private final ResourceLoader loader
 	
 	List<SchemeEntry> entryList = []
+	private Map<String, SchemeEntry> entryIndex = [:] // key: normalized code
+	private ImmutableSet<SchemeEntry> entrySet = ImmutableSet.of()
+	private BigramIndex<SchemeEntry> fuzzyIndex = new BigramIndex<SchemeEntry>()
 	String id = null
 	String input = null
 	String name = null
@@ -46,61 +49,49 @@ public class XMLScheme implements Scheme {
 	 * {@inheritDoc}
 	 */
 	public SchemeEntry getEntry(String code, fuzzyCompare=false) {
+		// codes are usually already normalized, so try them as they are first
+		def match = entryIndex.get(code)
+		if (match) { return match }
 		def c = code.trim().toLowerCase()
-		def match = entryList.find { it.code == c }
+		match = entryIndex.get(c)
 		if (match) { return match }
 
 		// fuzzy compare
 		if (fuzzyCompare) {
-			int score = THRESHOLD
-			entryList.each {
-				int s = compare(c, it?.code)
-				if (s > score) {
-					score = s
-					match = it
-				}
-			}
+			match = fuzzyIndex.match(c, THRESHOLD)
 		}
 		return match
 	}
 	
-	public ImmutableSet<SchemeEntry> getEntries() { ImmutableSet.copyOf(entryList) }
+	public ImmutableSet<SchemeEntry> getEntries() { entrySet }
 
-	private def compare(str1, str2) {
-		def pairs1 = wordLetterPairs(str1)
-		def pairs2 = wordLetterPairs(str2)
-
-		int intersection = 0
-		int union = pairs1.size() + pairs2.size()
-		pairs1.each { pair1 ->
-			for(int j = 0; j < pairs2.size(); j++) {
-				def pair2 = pairs2[j]
-				if (pair1.equals(pair2)) {
-					intersection++
-					pairs2.remove(j)
-					break
-				}
+	/**
+	 * Gets the entries for many codes at once, as {@link #getEntry(String, boolean)} would.
+	 * 
+	 * @param codes
+	 *            the codes.
+	 * @param fuzzyCompare
+	 *            true if codes with no exact match should be matched to the most similar entry.
+	 * @return the entries keyed by code; codes with no match are left out.
+	 */
+	public Map<String, SchemeEntry> getEntries(Collection<String> codes, fuzzyCompare=false) {
+		def matches = [:]
+		def unmatched = []
+		codes.each { code ->
+			def match = entryIndex.get(code) ?: entryIndex.get(code.trim().toLowerCase())
+			if (match) {
+				matches[code] = match
+			} else {
+				unmatched << code
 			}
 		}
-		return ((2 * intersection) / union)
-	}
-
-	private def letterPairs(String str) {
-		int numPairs = str.length() - 1
-		def pairs = []
-		for (int i = 0; i < numPairs; i++) {
-			pairs[i] = str.substring(i, i+2)
-		}
-		return pairs
-	}
-
-
-	private def wordLetterPairs(String str) {
-		def allPairs = []
-		str.tokenize(",").each { w ->
-			allPairs.addAll(letterPairs(w))
+		if (fuzzyCompare && unmatched) {
+			def fuzzy = fuzzyIndex.match(unmatched.collect { it.trim().toLowerCase() }, THRESHOLD)
+			unmatched.eachWithIndex { code, i ->
+				if (fuzzy[i]) { matches[code] = fuzzy[i] }
+			}
 		}
-		return allPairs
+		return matches
 	}
 
 	/**
@@ -137,6 +128,20 @@ public class XMLScheme implements Scheme {
 			}
 		}
 		entryList.each { it.scheme = this }
+		updateIndex()
+	}
+
+	// indexes the entries by code, exactly and by letter pairs; if several entries share a code, the first is found
+	private void updateIndex() {
+		def index = new HashMap<String, SchemeEntry>()
+		def fuzzy = new BigramIndex<SchemeEntry>()
+		entryList.each { e ->
+			if (e.code != null && !index.containsKey(e.code)) { index.put(e.code, e) }
+			if (e.code != null) { fuzzy.add(e.code, e) }
+		}
+		entryIndex = index
+		fuzzyIndex = fuzzy
+		entrySet = ImmutableSet.copyOf(entryList)
 	}
 	
 	public File getInput() {
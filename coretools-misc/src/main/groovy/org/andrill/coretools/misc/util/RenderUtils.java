@@ -18,23 +18,128 @@ package org.andrill.coretools.misc.util;
 import java.awt.geom.AffineTransform;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 
 import org.andrill.coretools.graphics.GraphicsContext;
 import org.andrill.coretools.graphics.PDFGraphics;
 import org.andrill.coretools.graphics.RasterGraphics;
 import org.andrill.coretools.graphics.SVGGraphics;
+import org.andrill.coretools.graphics.driver.DisplayList;
+import org.andrill.coretools.graphics.driver.RecordingDriver;
 import org.andrill.coretools.graphics.util.Paper;
+import org.andrill.coretools.model.ModelContainer;
+import org.andrill.coretools.scene.DefaultScene;
 import org.andrill.coretools.scene.PageableScene;
 import org.andrill.coretools.scene.Scene;
+import org.andrill.coretools.scene.Track;
 
 /**
  * Various rendering-related utility methods.
+ * <p>
+ * Multi-page renders are split across a number of worker threads, each rendering pages from its own copy of the scene.
+ * Raster and SVG pages are written by the workers as they finish. PDF pages are recorded by the workers and drawn
+ * into the document in page order, so the PDF is the same as one rendered on a single thread.
  * 
  * @author Josh Reed (jareed@andrill.org)
  */
 public class RenderUtils {
+	// marks the threads we render on so nested renders don't start their own workers
+	private static class Worker extends Thread {
+		Worker(final Runnable r, final int id) {
+			super(r, "RenderUtils-" + id);
+			setDaemon(true);
+		}
+	}
+
+	private static volatile int workers = Runtime.getRuntime().availableProcessors();
+
 	/**
-	 * Render the scene as a multi-page PDF.
+	 * Creates a copy of a scene for rendering on another thread. The copy has new instances of the tracks, with the
+	 * same constraints and parameters, and the same render hints and parameters as the scene.
+	 * 
+	 * @param scene
+	 *            the scene.
+	 * @param models
+	 *            the models the copy should show.
+	 * @return the copy.
+	 */
+	public static Scene copyScene(final Scene scene, final ModelContainer models) {
+		return new DefaultScene(scene, models);
+	}
+
+	/**
+	 * Gets the number of threads multi-page renders are split across.
+	 * 
+	 * @return the number of threads.
+	 */
+	public static int getWorkers() {
+		return workers;
+	}
+
+	/**
+	 * Runs the specified render jobs concurrently on the render workers and waits for them to finish. Each job renders
+	 * its own pages sequentially.
+	 * 
+	 * @param jobs
+	 *            the jobs.
+	 * @return the results of the jobs, in order.
+	 */
+	public static <T> List<T> invokeAll(final List<? extends Callable<T>> jobs) throws IOException {
+		List<T> results = new ArrayList<T>(jobs.size());
+		ExecutorService executor = createExecutor(jobs.size());
+		if (executor == null) {
+			for (Callable<T> job : jobs) {
+				results.add(call(job));
+			}
+			return results;
+		}
+		try {
+			List<Future<T>> futures = new ArrayList<Future<T>>(jobs.size());
+			for (Callable<T> job : jobs) {
+				futures.add(executor.submit(job));
+			}
+			for (Future<T> f : futures) {
+				results.add(get(f));
+			}
+			return results;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Detaches a copy made by {@link #copyScene(Scene, ModelContainer)} from its models, leaving any other scene that
+	 * shows the same models untouched.
+	 * 
+	 * @param copy
+	 *            the copy.
+	 */
+	public static void releaseScene(final Scene copy) {
+		ModelContainer models = copy.getModels();
+		if (models == null) {
+			return;
+		}
+		if (copy instanceof ModelContainer.Listener) {
+			models.removeListener((ModelContainer.Listener) copy);
+		}
+		for (Track t : copy.getTracks()) {
+			if (t instanceof ModelContainer.Listener) {
+				models.removeListener((ModelContainer.Listener) t);
+			}
+		}
+	}
+	/**
+	 * Render the scene as a multi-page PDF. Each page is written to the file as soon as it is finished, so memory use
+	 * depends on the page size rather than the length of the scene.
 	 * 
 	 * @param scene
 	 *            the scene.
@@ -56,18 +161,64 @@ public class RenderUtils {
 	public static void renderPDF(final Scene scene, final Paper paper, final double start, final double end,
 	        final double pageSize, final boolean renderHeader, final boolean renderFooter, final String sectionName,
 	        final File file) {
-		// wrap the scene to make it pageable
-		PageableScene pageable = new PageableScene(scene, paper, start, pageSize, renderHeader, renderFooter);
-		pageable.validate();
+		final int pages = (int) Math.max(Math.ceil((end - start) / pageSize), 1);
+		ExecutorService executor = createExecutor(pages);
+		if (executor == null) {
+			// wrap the scene to make it pageable
+			PageableScene pageable = new PageableScene(scene, paper, start, pageSize, renderHeader, renderFooter);
+			pageable.validate();
 
-		// render our PDF
-		PDFGraphics pdf = new PDFGraphics(file, paper);
-		int pages = (int) Math.max(Math.ceil((end - start) / pageSize), 1);
-		for (int i = 1; i <= pages; i++) {
-			GraphicsContext page = pdf.newPage();
-			renderPage(pageable, page, i, renderHeader, renderFooter, sectionName);
+			// render our PDF
+			PDFGraphics pdf = new PDFGraphics(file, paper);
+			pdf.setStreaming(true);
+			for (int i = 1; i <= pages; i++) {
+				GraphicsContext page = pdf.newPage();
+				renderPage(pageable, page, i, renderHeader, renderFooter, sectionName);
+			}
+			pdf.write();
+			return;
+		}
+
+		// record the pages on the workers and draw them into the document in order
+		final PDFGraphics pdf = new PDFGraphics(file, paper);
+		pdf.setStreaming(true);
+		final List<PageableScene> created = createPageables(scene, paper, start, pageSize, renderHeader, renderFooter,
+		        Math.min(workers, pages));
+		final BlockingQueue<PageableScene> pageables = new LinkedBlockingQueue<PageableScene>(created);
+		try {
+			List<Future<DisplayList>> futures = new ArrayList<Future<DisplayList>>(pages);
+			int window = 2 * pageables.size();
+			for (int i = 1; i <= pages; i++) {
+				// keep a bounded number of recorded pages in memory
+				while ((futures.size() < pages) && (futures.size() < i + window)) {
+					final int pageNum = futures.size() + 1;
+					futures.add(executor.submit(new Callable<DisplayList>() {
+						public DisplayList call() throws Exception {
+							PageableScene pageable = pageables.take();
+							GraphicsContext scratch = pdf.createScratchPage();
+							try {
+								RecordingDriver recorder = new RecordingDriver(scratch, scratch.getClip());
+								renderPage(pageable, new GraphicsContext(recorder), pageNum, renderHeader,
+								        renderFooter, sectionName);
+								return recorder.getDisplayList();
+							} finally {
+								scratch.dispose();
+								pageables.put(pageable);
+							}
+						}
+					}));
+				}
+				DisplayList page = get(futures.set(i - 1, null));
+				page.replay(pdf.newPage());
+			}
+			pdf.write();
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to render PDF", e);
+		} finally {
+			// workers still running after shutdownNow hold pageables outside the queue, so release every one created
+			executor.shutdownNow();
+			releasePageables(created);
 		}
-		pdf.write();
 	}
 
 	/**
@@ -94,18 +245,17 @@ public class RenderUtils {
 	        final double pageSize, final boolean renderHeader, final boolean renderFooter, final String sectionName,
 	        final File file)
 	        throws IOException {
-		// wrap the scene to make it pageable
-		PageableScene pageable = new PageableScene(scene, paper, start, pageSize, renderHeader, renderFooter);
-		pageable.validate();
-
 		// figure out the raster type and render each page as a separate raster
-		String extension = file.getName().substring(file.getName().lastIndexOf('.'));
+		final String extension = file.getName().substring(file.getName().lastIndexOf('.'));
 		int pages = (int) Math.max(Math.ceil((end - start) / pageSize), 1);
-		for (int i = 1; i <= pages; i++) {
-			RasterGraphics page = new RasterGraphics(paper.getPrintableWidth() + 1, paper.getPrintableHeight() - 1, true);
-			renderPage(pageable, page, i, renderHeader, renderFooter, sectionName);
-			page.write(new File(file.getParentFile(), file.getName().replace(extension, "-" + i + extension)));
-		}
+		renderPages(scene, paper, start, pageSize, renderHeader, renderFooter, pages, new PageRenderer() {
+			public void render(final PageableScene pageable, final int i) throws IOException {
+				RasterGraphics page = new RasterGraphics(paper.getPrintableWidth() + 1,
+				        paper.getPrintableHeight() - 1, true);
+				renderPage(pageable, page, i, renderHeader, renderFooter, sectionName);
+				page.write(new File(file.getParentFile(), file.getName().replace(extension, "-" + i + extension)));
+			}
+		});
 	}
 
 	/**
@@ -132,16 +282,15 @@ public class RenderUtils {
 	        final double pageSize, final boolean renderHeader, final boolean renderFooter, final String sectionName,
 	        final File file)
 	        throws IOException {
-		PageableScene pageable = new PageableScene(scene, paper, start, pageSize, renderHeader, renderFooter);
-		pageable.validate();
-
 		// render each page as a separate SVG file
 		int pages = (int) Math.max(Math.ceil((end - start) / pageSize), 1);
-		for (int i = 1; i <= pages; i++) {
-			SVGGraphics page = new SVGGraphics();
-			renderPage(pageable, page, i, renderHeader, renderFooter, sectionName);
-			page.write(new File(file.getParentFile(), file.getName().replace(".svg", "-" + i + ".svg")));
-		}
+		renderPages(scene, paper, start, pageSize, renderHeader, renderFooter, pages, new PageRenderer() {
+			public void render(final PageableScene pageable, final int i) throws IOException {
+				SVGGraphics page = new SVGGraphics();
+				renderPage(pageable, page, i, renderHeader, renderFooter, sectionName);
+				page.write(new File(file.getParentFile(), file.getName().replace(".svg", "-" + i + ".svg")));
+			}
+		});
 	}
 
 	public static void renderPage(PageableScene pageable, GraphicsContext page, final int pageNum,
@@ -164,6 +313,131 @@ public class RenderUtils {
 		}
 	}
 	
+	/**
+	 * Sets the number of threads multi-page renders are split across. One renders every page on the calling thread.
+	 * 
+	 * @param workers
+	 *            the number of threads.
+	 */
+	public static void setWorkers(final int workers) {
+		RenderUtils.workers = Math.max(1, workers);
+	}
+
+	// renders a single page that is independent of the others
+	private interface PageRenderer {
+		void render(PageableScene pageable, int page) throws IOException;
+	}
+
+	private static <T> T call(final Callable<T> job) throws IOException {
+		try {
+			return job.call();
+		} catch (IOException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	// a pool of workers for the specified number of jobs, or null if the jobs should run on the calling thread
+	private static ExecutorService createExecutor(final int jobs) {
+		final int threads = Math.min(workers, jobs);
+		if ((threads < 2) || (Thread.currentThread() instanceof Worker)) {
+			return null;
+		}
+		return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private int count = 0;
+
+			public synchronized Thread newThread(final Runnable r) {
+				return new Worker(r, ++count);
+			}
+		});
+	}
+
+	// a pageable copy of the scene for each worker
+	private static List<PageableScene> createPageables(final Scene scene, final Paper paper, final double start,
+	        final double pageSize, final boolean renderHeader, final boolean renderFooter, final int count) {
+		List<PageableScene> pageables = new ArrayList<PageableScene>(count);
+		for (int i = 0; i < count; i++) {
+			Scene copy = copyScene(scene, scene.getModels());
+			PageableScene pageable = new PageableScene(copy, paper, start, pageSize, renderHeader, renderFooter);
+			pageable.validate();
+			pageables.add(pageable);
+		}
+		return pageables;
+	}
+
+	private static <T> T get(final Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while rendering", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			} else {
+				throw new RuntimeException(cause);
+			}
+		}
+	}
+
+	private static void releasePageables(final List<PageableScene> pageables) {
+		for (PageableScene pageable : pageables) {
+			releaseScene(pageable.getScene());
+		}
+	}
+
+	private static void renderPages(final Scene scene, final Paper paper, final double start, final double pageSize,
+	        final boolean renderHeader, final boolean renderFooter, final int pages, final PageRenderer renderer)
+	        throws IOException {
+		ExecutorService executor = createExecutor(pages);
+		if (executor == null) {
+			// wrap the scene to make it pageable
+			PageableScene pageable = new PageableScene(scene, paper, start, pageSize, renderHeader, renderFooter);
+			pageable.validate();
+			for (int i = 1; i <= pages; i++) {
+				renderer.render(pageable, i);
+			}
+			return;
+		}
+
+		// the pages are independent so each worker renders and writes them on its own
+		final List<PageableScene> created = createPageables(scene, paper, start, pageSize, renderHeader, renderFooter,
+		        Math.min(workers, pages));
+		final BlockingQueue<PageableScene> pageables = new LinkedBlockingQueue<PageableScene>(created);
+		try {
+			List<Future<Object>> futures = new ArrayList<Future<Object>>(pages);
+			for (int i = 1; i <= pages; i++) {
+				final int pageNum = i;
+				futures.add(executor.submit(new Callable<Object>() {
+					public Object call() throws Exception {
+						PageableScene pageable = pageables.take();
+						try {
+							renderer.render(pageable, pageNum);
+						} finally {
+							pageables.put(pageable);
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Object> f : futures) {
+				get(f);
+			}
+		} finally {
+			// workers still running after shutdownNow hold pageables outside the queue, so release every one created
+			executor.shutdownNow();
+			releasePageables(created);
+		}
+	}
+
 	private RenderUtils() {
 		// not to be instantiated
 	}
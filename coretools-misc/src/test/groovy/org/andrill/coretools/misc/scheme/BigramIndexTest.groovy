@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools.misc.scheme
+
+import groovy.util.GroovyTestCase
+
+class BigramIndexTest extends GroovyTestCase {
+	BigramIndex<String> index
+
+	void setUp() {
+		index = new BigramIndex<String>()
+		['sand', 'silty sand', 'silt', 'clay', 'sandy clay', 'diamict,clast-rich'].each { index.add(it, it) }
+	}
+
+	void testSimilarity() {
+		assert 1.0 == BigramIndex.similarity('sand', 'sand')
+		assert 0.0 == BigramIndex.similarity('sand', 'clay')
+		assert 0.0 == BigramIndex.similarity('a', 'b')
+		// sa an nd vs sa an nd dy
+		assertEquals(6 / 7.0d, BigramIndex.similarity('sand', 'sandy'), 0.0001)
+		// words are split on commas, so no pair spans them
+		assert 1.0 == BigramIndex.similarity('ab,cd', 'ab,cd')
+		assert 0.0 == BigramIndex.similarity('a,b', 'ab')
+	}
+
+	void testMatch() {
+		assert 'sand' == index.match('sand', 0.25)
+		assert 'sandy clay' == index.match('sandy clays', 0.25)
+		assert 'silt' == index.match('silts', 0.25)
+		assert 'diamict,clast-rich' == index.match('diamict,clast-poor', 0.25)
+		assert null == index.match('gravel', 0.25)
+		assert null == index.match('sandstone', 0.9)
+	}
+
+	void testMatchesBruteForce() {
+		def keys = ['sand', 'silty sand', 'silt', 'clay', 'sandy clay', 'diamict,clast-rich']
+		['san', 'sandy', 'slit', 'clayey silt', 'silty clay', 'diamict', 'x', ''].each { str ->
+			def best = null
+			def score = 0.25
+			keys.each {
+				def s = BigramIndex.similarity(str, it)
+				if (s > score) {
+					score = s
+					best = it
+				}
+			}
+			assert best == index.match(str, 0.25)
+		}
+	}
+
+	void testBatch() {
+		assert ['sand', null, 'silt', 'sand'] == index.match(['sand', 'gravel', 'silts', 'sand'], 0.25)
+	}
+}
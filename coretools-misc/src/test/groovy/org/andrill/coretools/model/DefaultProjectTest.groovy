@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools.model
+
+import org.andrill.coretools.Platform
+import org.andrill.coretools.misc.io.BinaryReaderWriter
+import org.andrill.coretools.model.io.TestFactory
+import org.andrill.coretools.model.io.TestModel
+
+import groovy.util.GroovyTestCase
+
+class DefaultProjectTest extends GroovyTestCase {
+	File dir
+	File journal
+
+	void setUp() {
+		Platform.start()
+		Platform.getService(ModelManager.class).register(new TestFactory())
+		dir = File.createTempFile("project", "")
+		dir.delete()
+		new File(dir, "data").mkdirs()
+		new File(dir, "data/a.xml").text = '<container><model type="Test"><property name="x">1</property></model></container>'
+		journal = new File(dir, "data/.a.journal")
+	}
+
+	void tearDown() {
+		dir.deleteDir()
+	}
+
+	def values(container) {
+		container.models.collect { it.modelData.x }
+	}
+
+	void testRecover() {
+		// edited but never saved
+		def container = new DefaultProject(dir).openContainer('a')
+		container.add(new TestModel(modelType: 'Test', modelData: [x: '2']))
+		assert journal.exists()
+
+		// replayed and written back to the container file when it is next opened
+		container = new DefaultProject(dir).openContainer('a')
+		assert ['1', '2'] == values(container)
+		assert !journal.exists()
+
+		// edited again after recovery; nothing is lost or applied twice
+		container.add(new TestModel(modelType: 'Test', modelData: [x: '3']))
+		assert ['1', '2', '3'] == values(new DefaultProject(dir).openContainer('a'))
+		assert ['1', '2', '3'] == values(new DefaultProject(dir).openContainer('a'))
+	}
+
+	void testDeclineSave() {
+		// edited, then closed without saving as PSICAT does when the user declines to save
+		def project = new DefaultProject(dir)
+		def container = project.openContainer('a')
+		container.add(new TestModel(modelType: 'Test', modelData: [x: '2']))
+		assert journal.exists()
+		project.closeContainer(container)
+		assert !journal.exists()
+
+		// the declined edit doesn't come back when the container is reopened
+		assert ['1'] == values(project.openContainer('a'))
+		assert ['1'] == values(new DefaultProject(dir).openContainer('a'))
+	}
+
+	void testPeek() {
+		new DefaultProject(dir).openContainer('a').add(new TestModel(modelType: 'Test', modelData: [x: '2']))
+		def file = new File(dir, 'data/a.xml')
+		def saved = file.text
+
+		// peeking reads the file as saved and leaves the journal alone
+		def project = new DefaultProject(dir)
+		def peeked = project.peekContainer('a')
+		assert ['1'] == values(peeked)
+		assert saved == file.text
+		assert journal.exists()
+
+		// so opening it recovers the changes rather than using the peeked container
+		def opened = project.openContainer('a')
+		assert !opened.is(peeked)
+		assert ['1', '2'] == values(opened)
+	}
+
+	void testDuplicateNames() {
+		// the same container converted but left in both formats
+		def container = new DefaultContainer()
+		container.add(new TestModel(modelType: 'Test', modelData: [x: '2']))
+		new File(dir, "data/a.bin").withOutputStream { new BinaryReaderWriter(null).write(container, it) }
+
+		// listed once and read from the project's data format
+		def project = new DefaultProject(dir)
+		assert ['a'] == project.containers
+		assert ['1'] == values(project.openContainer('a'))
+	}
+
+	void testSaveFailure() {
+		// a data directory that can't be written to
+		def data = new File(dir, "unwritable")
+		data.text = ''
+		def project = new DefaultProject(dir)
+		project.configuration['data-dir'] = 'unwritable'
+		def container = project.createContainer('b')
+		container.add(new TestModel(modelType: 'Test', modelData: [x: '2']))
+		shouldFail(RuntimeException) { project.save() }
+
+		// still unsaved, so it is written once the directory can be
+		data.delete()
+		data.mkdirs()
+		project.save()
+		assert ['2'] == values(new DefaultProject(dir).openContainer('b'))
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools.model.io
+
+import org.andrill.coretools.Platform
+import org.andrill.coretools.model.DefaultContainer;
+import org.andrill.coretools.model.ModelManager;
+import org.andrill.coretools.model.io.ModelFormatManager;
+
+import groovy.util.GroovyTestCase
+class BinaryReaderWriterTest extends GroovyTestCase {
+
+	void setUp() {
+		Platform.start()
+		Platform.getService(ModelManager.class).register(new TestFactory())
+	}
+
+	void testRegistered() {
+		def formats = Platform.getService(ModelFormatManager.class)
+		assert null != formats.getReader("bin")
+		assert null != formats.getWriter("bin")
+	}
+
+	void testRoundTrip() {
+		def rw = Platform.getService(ModelFormatManager.class).getWriter('bin')
+		def data = [
+			"top":"0.50 m", "base":"-12 cm", "grainSize":"0.125", "lithology":"lithology:sand",
+			"description":"\u201Csand\u201D " * 20, "odd":"007", "zero":"-0.0", "spaced":"1  m", "empty":""
+		]
+		def container = new DefaultContainer()
+		container.add(new TestModel(modelType:"Test", modelData:data))
+
+		def stream = new ByteArrayOutputStream()
+		rw.write(container, stream)
+
+		def copy = new DefaultContainer()
+		rw.read(copy, new ByteArrayInputStream(stream.toByteArray()))
+		assert 1 == copy.models.size()
+		assert "Test" == copy.models[0].modelType
+		assert data.entrySet() as List == copy.models[0].modelData.entrySet() as List
+	}
+
+	void testInvalid() {
+		def rw = Platform.getService(ModelFormatManager.class).getReader('bin')
+		shouldFail(IOException) {
+			rw.read(new DefaultContainer(), new ByteArrayInputStream("<container />".getBytes("UTF-8")))
+		}
+	}
+}
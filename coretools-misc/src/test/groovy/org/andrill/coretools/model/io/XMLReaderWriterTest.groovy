@@ -64,6 +64,32 @@ import groovy.util.GroovyTestCase
 		assert "10 m" == model.modelData?.base?.toString()
 	}
 	
+	void testReadEscaped() {
+		def xmlrw = Platform.getService(ModelFormatManager.class).getReader('xml')
+		Platform.getService(ModelManager.class).register(new TestFactory())
+		
+		def xml = new ByteArrayInputStream(
+			"""<?xml version="1.0" encoding="UTF-8"?>
+				<container>
+					<model type="Unknown">
+						<property name="top">5 m</property>
+					</model>
+					<model type="Test">
+						<property name="top">0 m</property>
+						<property name="description">&#8220;sand &amp; silt&#8221;<![CDATA[ <1 cm>]]></property>
+					</model>
+				</container>
+			""".getBytes("UTF-8")
+		)
+		
+		def container = new DefaultContainer()
+		xmlrw.read(container, xml)
+		
+		assert 1 == container.models.size()
+		assert "0 m" == container.models[0].modelData.top
+		assert "\u201Csand & silt\u201D <1 cm>" == container.models[0].modelData.description
+	}
+	
 	void testWrite() {
 		def xmlrw = Platform.getService(ModelFormatManager.class).getReader('xml')
 		def container = new DefaultContainer()
@@ -79,6 +105,26 @@ import groovy.util.GroovyTestCase
   </model>
 </container>""" == stream.toString()
 	}
+	
+	void testWriteEscaped() {
+		def xmlrw = Platform.getService(ModelFormatManager.class).getReader('xml')
+		Platform.getService(ModelManager.class).register(new TestFactory())
+		def container = new DefaultContainer()
+		container.add(new TestModel(modelType:"Test", modelData:["description":"\u201Csand & <silt>\u201D", "name":"caf\u00E9"]))
+		
+		def stream = new ByteArrayOutputStream()
+		xmlrw.write(container, stream)
+		assert """<container>
+  <model type='Test'>
+    <property name='description'>&#8220;sand &amp; &lt;silt&gt;&#8221;</property>
+    <property name='name'>caf&#233;</property>
+  </model>
+</container>""" == stream.toString()
+		
+		def copy = new DefaultContainer()
+		xmlrw.read(copy, new ByteArrayInputStream(stream.toByteArray()))
+		assert container.models[0].modelData == copy.models[0].modelData
+	}
 }
 
 class TestFactory implements ModelManager.Factory {
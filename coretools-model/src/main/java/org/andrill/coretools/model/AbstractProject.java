@@ -17,34 +17,66 @@ package org.andrill.coretools.model;
 
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.andrill.coretools.JobService;
+import org.andrill.coretools.JobService.Priority;
+
 import com.google.inject.internal.MapMaker;
 
 /**
  * An abstract implementation of the Project interface.
+ * <p>
+ * Containers are opened on demand and reference counted. When the last reference to an unmodified container is closed,
+ * it is kept in a least-recently-used cache so reopening it is cheap; the cache is bounded by a number of containers and
+ * a total number of models, and the least recently used containers are released when either is exceeded. Modified
+ * containers are released when closed, so unsaved changes are never resurrected.
+ * <p>
+ * Containers are marked modified when their models are added, removed or updated, and {@link #save()} only writes the
+ * open containers that were modified since they were last saved.
  * 
  * @author Josh Reed (jareed@andrill.org)
  */
 public abstract class AbstractProject implements Project {
-	static class Ref {
+	static class Ref implements ModelContainer.Listener {
 		ModelContainer container;
+		Reference<ModelContainer> peeked;
 		AtomicInteger count = new AtomicInteger(0);
+		volatile boolean modified = false;
+		int size = 0;
 
 		Ref() {
 		}
 
-		Ref(final ModelContainer container) {
-			this.container = container;
+		public void modelAdded(final Model model) {
+			modified = true;
+		}
+
+		public void modelRemoved(final Model model) {
+			modified = true;
+		}
+
+		public void modelUpdated(final Model model) {
+			modified = true;
 		}
 	}
 
+	public static final int DEFAULT_CACHE_CONTAINERS = 32;
+	public static final int DEFAULT_CACHE_MODELS = 50000;
+
 	protected final PropertyChangeSupport pcs = new PropertyChangeSupport(this);
 	protected final Map<String, String> configuration = new MapMaker().makeMap();
 	protected final ConcurrentMap<String, Ref> containers = new MapMaker().makeMap();
@@ -54,6 +86,12 @@ public abstract class AbstractProject implements Project {
 	protected URL path;
 	protected boolean parsed = false;
 
+	// closed but unmodified containers, least recently used first
+	private final LinkedHashMap<String, Ref> cache = new LinkedHashMap<String, Ref>(16, 0.75f, true);
+	private int cacheModels = 0;
+	private volatile int maxCacheContainers = DEFAULT_CACHE_CONTAINERS;
+	private volatile int maxCacheModels = DEFAULT_CACHE_MODELS;
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -65,18 +103,93 @@ public abstract class AbstractProject implements Project {
 	 * {@inheritDoc}
 	 */
 	public void closeContainer(final ModelContainer container) {
-		for (Ref ref : containers.values()) {
+		for (Entry<String, Ref> entry : containers.entrySet()) {
+			Ref ref = entry.getValue();
 			if (ref.container == container) {
+				List<String> evicted = null;
 				synchronized (ref) {
 					if (ref.count.decrementAndGet() == 0) {
-						ref.container = null;
-						closed(container);
+						if (ref.modified || (maxCacheContainers <= 0)) {
+							release(ref);
+						} else {
+							evicted = cache(entry.getKey(), ref);
+						}
+					}
+				}
+				if (evicted != null) {
+					evict(evicted);
+				}
+			}
+		}
+	}
+
+	// adds a closed container to the cache and returns the names of the containers that no longer fit
+	private List<String> cache(final String name, final Ref ref) {
+		synchronized (cache) {
+			ref.size = ref.container.getModels().size();
+			cache.put(name, ref);
+			cacheModels += ref.size;
+			return trim();
+		}
+	}
+
+	// removes the least recently used containers from the cache until it is within its limits
+	private List<String> trim() {
+		List<String> evicted = new ArrayList<String>();
+		Iterator<Entry<String, Ref>> i = cache.entrySet().iterator();
+		while (i.hasNext() && ((cache.size() > maxCacheContainers) || (cacheModels > maxCacheModels))) {
+			Entry<String, Ref> e = i.next();
+			cacheModels -= e.getValue().size;
+			evicted.add(e.getKey());
+			i.remove();
+		}
+		return evicted;
+	}
+
+	// removes a container from the cache, if it is there
+	private void uncache(final String name) {
+		synchronized (cache) {
+			Ref ref = cache.remove(name);
+			if (ref != null) {
+				cacheModels -= ref.size;
+			}
+		}
+	}
+
+	// releases containers removed from the cache unless they were reopened in the meantime
+	private void evict(final List<String> names) {
+		for (String name : names) {
+			Ref ref = containers.get(name);
+			if (ref != null) {
+				synchronized (ref) {
+					boolean cached;
+					synchronized (cache) {
+						cached = cache.containsKey(name);
+					}
+					if ((ref.count.get() == 0) && (ref.container != null) && !cached) {
+						release(ref);
 					}
 				}
 			}
 		}
 	}
 
+	private void attach(final String name, final Ref ref, final ModelContainer container) {
+		ref.container = container;
+		ref.peeked = null;
+		ref.modified = false;
+		container.setProject(this);
+		container.addListener(ref);
+		opened(name, container);
+	}
+
+	private void release(final Ref ref) {
+		ModelContainer container = ref.container;
+		container.removeListener(ref);
+		ref.container = null;
+		closed(container);
+	}
+
 	protected void closed(final ModelContainer container) {
 		// hook to remove listeners
 	}
@@ -92,9 +205,13 @@ public abstract class AbstractProject implements Project {
 		}
 
 		// build our reference
-		if (containers.putIfAbsent(name, new Ref(create(name))) == null) {
+		Ref created = new Ref();
+		if (containers.putIfAbsent(name, created) == null) {
+			synchronized (created) {
+				attach(name, created, create(name));
+				created.modified = true; // never saved
+			}
 			containerNames.add(name);
-			containers.get(name).container.setProject(this);
 			pcs.firePropertyChange(CONTAINERS_KEY, null, name);
 		}
 
@@ -109,6 +226,7 @@ public abstract class AbstractProject implements Project {
 	public void deleteContainer(final String name) {
 		if (containers.containsKey(name)) {
 			containers.remove(name);
+			uncache(name);
 			containerNames.remove(name);
 			delete(name);
 			pcs.firePropertyChange(CONTAINERS_KEY, name, null);
@@ -122,6 +240,33 @@ public abstract class AbstractProject implements Project {
 		return configuration;
 	}
 
+	/**
+	 * Gets the job service used to save containers in parallel.
+	 * 
+	 * @return the job service or null to save containers one at a time.
+	 */
+	protected JobService getJobService() {
+		return null;
+	}
+
+	/**
+	 * Gets the maximum number of closed containers kept in memory.
+	 * 
+	 * @return the number of containers.
+	 */
+	public int getMaxCacheContainers() {
+		return maxCacheContainers;
+	}
+
+	/**
+	 * Gets the maximum total number of models in the closed containers kept in memory.
+	 * 
+	 * @return the number of models.
+	 */
+	public int getMaxCacheModels() {
+		return maxCacheModels;
+	}
+
 	protected String getContainerName(final ModelContainer container) {
 		for (Entry<String, Ref> entry : containers.entrySet()) {
 			if (entry.getValue().container == container) {
@@ -178,6 +323,37 @@ public abstract class AbstractProject implements Project {
 
 	protected abstract ModelContainer open(String name);
 
+	/**
+	 * Opens a container, optionally without the recovery a project may do as it opens containers, such as replaying
+	 * unsaved changes and writing them back. Peeked containers are opened without it, so a peek never changes
+	 * anything on disk.
+	 * 
+	 * @param name
+	 *            the name.
+	 * @param recover
+	 *            true to recover the container, false to open it as last saved.
+	 * @return the container.
+	 */
+	protected ModelContainer open(final String name, final boolean recover) {
+		return open(name);
+	}
+
+	/**
+	 * Checks whether opening a container would recover anything, in which case a container opened without recovery
+	 * can't be used in its place.
+	 * 
+	 * @param name
+	 *            the name.
+	 * @return true if the container has something to recover, false otherwise.
+	 */
+	protected boolean needsRecovery(final String name) {
+		return false;
+	}
+
+	protected void opened(final String name, final ModelContainer container) {
+		// hook to add listeners
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -190,13 +366,45 @@ public abstract class AbstractProject implements Project {
 
 		synchronized (ref) {
 			if (ref.count.getAndIncrement() == 0) {
-				ref.container = open(name);
-				ref.container.setProject(this);
+				if (ref.container == null) {
+					ModelContainer container = ((ref.peeked == null) || needsRecovery(name)) ? null : ref.peeked.get();
+					attach(name, ref, (container == null) ? open(name) : container);
+				} else {
+					uncache(name);
+				}
 			}
 			return ref.container;
 		}
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public ModelContainer peekContainer(final String name) {
+		Ref ref = containers.get(name);
+		if (ref == null) {
+			throw new IllegalArgumentException("No container with name '" + name + "'");
+		}
+
+		synchronized (ref) {
+			if (ref.container != null) {
+				synchronized (cache) {
+					cache.get(name); // mark as recently used
+				}
+				return ref.container;
+			}
+
+			// only hold on to the container while the caller does
+			ModelContainer container = (ref.peeked == null) ? null : ref.peeked.get();
+			if (container == null) {
+				container = open(name, false);
+				container.setProject(this);
+				ref.peeked = new WeakReference<ModelContainer>(container);
+			}
+			return container;
+		}
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -208,12 +416,52 @@ public abstract class AbstractProject implements Project {
 	 * {@inheritDoc}
 	 */
 	public void save() {
-		// save all of the open containers
+		// find the open containers that changed since they were last saved
+		List<ModelContainer> dirty = new ArrayList<ModelContainer>();
 		for (Ref ref : containers.values()) {
-			if (ref.count.get() > 0) {
-				saveContainer(ref.container);
+			ModelContainer container = ref.container;
+			if ((ref.count.get() > 0) && ref.modified && (container != null)) {
+				dirty.add(container);
+			}
+		}
+
+		// save them, in parallel if there is more than one
+		JobService jobs = (dirty.size() > 1) ? getJobService() : null;
+		if (jobs == null) {
+			for (ModelContainer container : dirty) {
+				saveContainer(container);
+			}
+			return;
+		}
+		List<Future<Object>> futures = new ArrayList<Future<Object>>();
+		for (final ModelContainer container : dirty.subList(1, dirty.size())) {
+			futures.add(jobs.submit(new Callable<Object>() {
+				public Object call() {
+					saveContainer(container);
+					return null;
+				}
+			}, Priority.MEDIUM));
+		}
+		saveContainer(dirty.get(0));
+
+		// wait for the rest
+		RuntimeException failure = null;
+		for (Future<Object> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while saving", e);
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					failure = (e.getCause() instanceof RuntimeException) ? (RuntimeException) e.getCause()
+					        : new RuntimeException(e.getCause());
+				}
 			}
 		}
+		if (failure != null) {
+			throw failure;
+		}
 	}
 
 	protected abstract void save(ModelContainer container);
@@ -222,7 +470,41 @@ public abstract class AbstractProject implements Project {
 	 * {@inheritDoc}
 	 */
 	public void saveContainer(final ModelContainer container) {
-		save(container);
+		// mark it clean first so changes made while it is being written aren't lost
+		Ref saved = null;
+		for (Ref ref : containers.values()) {
+			if (ref.container == container) {
+				ref.modified = false;
+				saved = ref;
+			}
+		}
+		try {
+			save(container);
+		} catch (RuntimeException e) {
+			if (saved != null) {
+				saved.modified = true;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Sets how many closed containers are kept in memory. Setting either limit to 0 releases containers as soon as
+	 * they are closed.
+	 * 
+	 * @param containers
+	 *            the maximum number of containers.
+	 * @param models
+	 *            the maximum total number of models in those containers.
+	 */
+	public void setCacheLimits(final int containers, final int models) {
+		List<String> evicted;
+		synchronized (cache) {
+			maxCacheContainers = (models <= 0) ? 0 : containers;
+			maxCacheModels = models;
+			evicted = trim();
+		}
+		evict(evicted);
 	}
 
 	/**
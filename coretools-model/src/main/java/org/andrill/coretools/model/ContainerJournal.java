@@ -0,0 +1,567 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools.model;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append-only journal of the changes made to an open container since it was last saved. Each added, removed or
+ * updated model is written to the journal file as a small record as soon as the container reports it, so the changes
+ * survive a crash without rewriting the whole container on every edit.
+ * <p>
+ * The file starts with the bytes <code>CTJ</code>, a version byte and the stamp of the container file the changes
+ * apply to. Each record is its length, its CRC32 and its contents: the type and data of an added model, the index of a
+ * removed model, the index, type and data of an updated model, or a checkpoint. A checkpoint holds the stamp of a
+ * container file written with every change before it, so the journal can be replayed over either file. A torn record
+ * at the end of the file is ignored.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public class ContainerJournal implements ModelContainer.Listener {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ContainerJournal.class);
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final byte[] MAGIC = { 'C', 'T', 'J' };
+	private static final int VERSION = 1;
+	private static final int HEADER = MAGIC.length + 1 + 16;
+	private static final int MAX_RECORD = 64 * 1024 * 1024;
+	private static final int ADD = 1;
+	private static final int REMOVE = 2;
+	private static final int UPDATE = 3;
+	private static final int CHECKPOINT = 4;
+
+	/**
+	 * Identifies the contents of a container file by its length and CRC32.
+	 */
+	public static final class Stamp {
+		/**
+		 * The stamp of a container file that does not exist.
+		 */
+		public static final Stamp NONE = new Stamp(-1, 0);
+
+		private final long length;
+		private final long crc;
+
+		/**
+		 * Create a new Stamp.
+		 *
+		 * @param length
+		 *            the length of the file.
+		 * @param crc
+		 *            the CRC32 of the file.
+		 */
+		public Stamp(final long length, final long crc) {
+			this.length = length;
+			this.crc = crc;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof Stamp)) {
+				return false;
+			}
+			Stamp other = (Stamp) obj;
+			return (length == other.length) && (crc == other.crc);
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (length ^ crc);
+		}
+
+		@Override
+		public String toString() {
+			return length + ":" + Long.toHexString(crc);
+		}
+	}
+
+	// a model that holds its data exactly as it was journaled
+	static class RawModel implements Model {
+		private final String type;
+		private final Map<String, String> data;
+		private ModelContainer container;
+
+		RawModel(final String type, final Map<String, String> data) {
+			this.type = type;
+			this.data = data;
+		}
+
+		public <E> E getAdapter(final Class<E> adapter) {
+			return null;
+		}
+
+		public ModelContainer getContainer() {
+			return container;
+		}
+
+		public Map<String, String> getModelData() {
+			return data;
+		}
+
+		public String getModelType() {
+			return type;
+		}
+
+		public void setContainer(final ModelContainer container) {
+			this.container = container;
+		}
+	}
+
+	protected final File file;
+	protected final List<Model> models = new ArrayList<Model>();
+	protected final ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+	protected final DataOutputStream record = new DataOutputStream(buffer);
+	protected final CRC32 crc = new CRC32();
+	protected ModelContainer container;
+	protected FileOutputStream out;
+	protected Stamp stamp = null;
+	protected long valid = -1;
+	protected boolean edited = false;
+	protected int generation = 0;
+
+	/**
+	 * Create a new ContainerJournal.
+	 *
+	 * @param file
+	 *            the journal file.
+	 */
+	public ContainerJournal(final File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Starts journaling the changes to the specified container. The changes apply to the container file last passed to
+	 * {@link #recover(List, Stamp)} or {@link #reset(Stamp)}.
+	 *
+	 * @param container
+	 *            the container.
+	 */
+	public synchronized void attach(final ModelContainer container) {
+		if (this.container != null) {
+			this.container.removeListener(this);
+		}
+		closeFile();
+		this.container = container;
+		models.clear();
+		models.addAll(container.getModels());
+		edited = false;
+		container.addListener(this);
+	}
+
+	/**
+	 * Appends a checkpoint for a container file about to replace the original, if the journal has any changes.
+	 *
+	 * @param stamp
+	 *            the stamp of the new container file.
+	 */
+	public synchronized void checkpoint(final Stamp stamp) {
+		if ((out != null) || ((valid >= 0) && file.exists())) {
+			try {
+				buffer.reset();
+				record.writeByte(CHECKPOINT);
+				writeStamp(stamp, record);
+				append();
+			} catch (IOException e) {
+				LOGGER.error("Unable to write to journal " + file.getAbsolutePath(), e);
+			}
+		}
+	}
+
+	/**
+	 * Stops journaling and closes the journal file, leaving it on disk.
+	 */
+	public synchronized void close() {
+		if (container != null) {
+			container.removeListener(this);
+			container = null;
+		}
+		closeFile();
+	}
+
+	protected void closeFile() {
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException e) {
+				LOGGER.error("Unable to close journal " + file.getAbsolutePath(), e);
+			}
+			out = null;
+		}
+	}
+
+	/**
+	 * Stops journaling and deletes the journal file, discarding any changes in it.
+	 */
+	public synchronized void discard() {
+		close();
+		delete();
+	}
+
+	protected void delete() {
+		if (file.exists() && !file.delete()) {
+			LOGGER.warn("Unable to delete journal {}", file.getAbsolutePath());
+		}
+		valid = -1;
+	}
+
+	/**
+	 * Checks whether the journal file exists, that is whether there may be changes to recover.
+	 *
+	 * @return true if the journal file exists.
+	 */
+	public synchronized boolean exists() {
+		return file.exists();
+	}
+
+	/**
+	 * Gets the container being journaled.
+	 *
+	 * @return the container or null.
+	 */
+	public synchronized ModelContainer getContainer() {
+		return container;
+	}
+
+	/**
+	 * Gets the number of times the journal has been reset.
+	 *
+	 * @return the generation.
+	 */
+	public synchronized int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Checks whether any changes have been journaled since the container was attached or the journal was reset.
+	 *
+	 * @return true if there are journaled changes.
+	 */
+	public synchronized boolean isEdited() {
+		return edited;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public synchronized void modelAdded(final Model model) {
+		models.add(model);
+		try {
+			buffer.reset();
+			record.writeByte(ADD);
+			writeModel(model, record);
+			append();
+		} catch (IOException e) {
+			LOGGER.error("Unable to write to journal " + file.getAbsolutePath(), e);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public synchronized void modelRemoved(final Model model) {
+		// the container removes the first equal model, so we do the same
+		int index = models.indexOf(model);
+		if (index == -1) {
+			return;
+		}
+		models.remove(index);
+		try {
+			buffer.reset();
+			record.writeByte(REMOVE);
+			record.writeInt(index);
+			append();
+		} catch (IOException e) {
+			LOGGER.error("Unable to write to journal " + file.getAbsolutePath(), e);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public synchronized void modelUpdated(final Model model) {
+		int index = -1;
+		for (int i = models.size() - 1; i >= 0; i--) {
+			if (models.get(i) == model) {
+				index = i;
+				break;
+			}
+		}
+		if (index == -1) {
+			return;
+		}
+		try {
+			buffer.reset();
+			record.writeByte(UPDATE);
+			record.writeInt(index);
+			writeModel(model, record);
+			append();
+		} catch (IOException e) {
+			LOGGER.error("Unable to write to journal " + file.getAbsolutePath(), e);
+		}
+	}
+
+	/**
+	 * Replays the journal over the models read from a container file.
+	 *
+	 * @param snapshot
+	 *            the models read from the container file.
+	 * @param stamp
+	 *            the stamp of the container file.
+	 * @return the models with the journaled changes applied, or null if there are no changes to apply.
+	 */
+	public synchronized List<Model> recover(final List<Model> snapshot, final Stamp stamp) {
+		closeFile();
+		valid = -1;
+		this.stamp = stamp;
+		if ((stamp == null) || !file.exists()) {
+			return null;
+		}
+
+		// find the changes made since the container file was written
+		List<byte[]> records = new ArrayList<byte[]>();
+		boolean matched;
+		long length = HEADER;
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 16384));
+			for (byte b : MAGIC) {
+				if (in.readByte() != b) {
+					throw new IOException("Not a container journal");
+				}
+			}
+			int version = in.readUnsignedByte();
+			if (version != VERSION) {
+				throw new IOException("Unsupported container journal version " + version);
+			}
+			matched = stamp.equals(readStamp(in));
+			byte[] bytes;
+			while ((bytes = readRecord(in)) != null) {
+				length += 8 + bytes.length;
+				if (bytes[0] == CHECKPOINT) {
+					if (stamp.equals(readStamp(new DataInputStream(new ByteArrayInputStream(bytes, 1,
+					        bytes.length - 1))))) {
+						matched = true;
+						records.clear();
+					}
+				} else {
+					records.add(bytes);
+				}
+			}
+		} catch (IOException e) {
+			LOGGER.warn("Discarding unreadable journal " + file.getAbsolutePath(), e);
+			return null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException ignored) {
+					// ignored
+				}
+			}
+		}
+		if (!matched) {
+			LOGGER.info("Discarding journal {}: it does not match the container file", file.getAbsolutePath());
+			return null;
+		}
+		valid = length;
+		if (records.isEmpty()) {
+			return null;
+		}
+
+		// apply them
+		List<Model> recovered = new ArrayList<Model>(snapshot.size() + records.size());
+		for (Model m : snapshot) {
+			recovered.add(new RawModel(m.getModelType(), new LinkedHashMap<String, String>(m.getModelData())));
+		}
+		try {
+			for (byte[] bytes : records) {
+				DataInputStream r = new DataInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1));
+				switch (bytes[0]) {
+					case ADD:
+						recovered.add(readModel(r));
+						break;
+					case REMOVE:
+						recovered.remove(readIndex(r, recovered.size()));
+						break;
+					case UPDATE:
+						int index = readIndex(r, recovered.size());
+						recovered.set(index, readModel(r));
+						break;
+					default:
+						throw new IOException("Invalid journal record " + bytes[0]);
+				}
+			}
+		} catch (IOException e) {
+			LOGGER.warn("Discarding inconsistent journal " + file.getAbsolutePath(), e);
+			valid = -1;
+			return null;
+		}
+		LOGGER.info("Recovered {} changes from journal {}", records.size(), file.getAbsolutePath());
+		return recovered;
+	}
+
+	/**
+	 * Clears the journal after the container has been written in full.
+	 *
+	 * @param stamp
+	 *            the stamp of the new container file.
+	 */
+	public synchronized void reset(final Stamp stamp) {
+		closeFile();
+		delete();
+		this.stamp = stamp;
+		edited = false;
+		generation++;
+	}
+
+	protected void append() throws IOException {
+		if (out == null) {
+			open();
+		}
+		byte[] bytes = buffer.toByteArray();
+		crc.reset();
+		crc.update(bytes, 0, bytes.length);
+		ByteArrayOutputStream framed = new ByteArrayOutputStream(bytes.length + 8);
+		DataOutputStream data = new DataOutputStream(framed);
+		data.writeInt(bytes.length);
+		data.writeInt((int) crc.getValue());
+		data.write(bytes);
+
+		// one write per record, so each change reaches the OS before the next one is made
+		try {
+			out.write(framed.toByteArray());
+		} catch (IOException e) {
+			closeFile();
+			valid = -1;
+			throw e;
+		}
+		valid += framed.size();
+		if (bytes[0] != CHECKPOINT) {
+			edited = true;
+		}
+	}
+
+	protected void open() throws IOException {
+		if ((valid >= 0) && file.exists()) {
+			// drop anything after the last good record before appending to it
+			out = new FileOutputStream(file, true);
+			out.getChannel().truncate(valid);
+		} else {
+			out = new FileOutputStream(file);
+			ByteArrayOutputStream header = new ByteArrayOutputStream(HEADER);
+			DataOutputStream data = new DataOutputStream(header);
+			data.write(MAGIC);
+			data.writeByte(VERSION);
+			writeStamp((stamp == null) ? Stamp.NONE : stamp, data);
+			out.write(header.toByteArray());
+			valid = HEADER;
+		}
+	}
+
+	private static int readIndex(final DataInputStream in, final int size) throws IOException {
+		int index = in.readInt();
+		if ((index < 0) || (index >= size)) {
+			throw new IOException("Invalid model index " + index);
+		}
+		return index;
+	}
+
+	private static Model readModel(final DataInputStream in) throws IOException {
+		String type = readString(in);
+		int count = in.readInt();
+		Map<String, String> data = new LinkedHashMap<String, String>();
+		for (int i = 0; i < count; i++) {
+			data.put(readString(in), readString(in));
+		}
+		return new RawModel(type, data);
+	}
+
+	// reads the next record, or returns null at the end of the journal or at a torn or corrupt record
+	private byte[] readRecord(final DataInputStream in) throws IOException {
+		try {
+			int length = in.readInt();
+			int expected = in.readInt();
+			if ((length <= 0) || (length > MAX_RECORD)) {
+				return null;
+			}
+			byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			crc.reset();
+			crc.update(bytes, 0, length);
+			return ((int) crc.getValue() == expected) ? bytes : null;
+		} catch (EOFException e) {
+			return null;
+		}
+	}
+
+	private static Stamp readStamp(final DataInputStream in) throws IOException {
+		return new Stamp(in.readLong(), in.readLong());
+	}
+
+	private static String readString(final DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if ((length < 0) || (length > MAX_RECORD)) {
+			throw new IOException("Invalid string length " + length);
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	private static void writeModel(final Model model, final DataOutputStream out) throws IOException {
+		List<Entry<String, String>> data = new ArrayList<Entry<String, String>>();
+		for (Entry<String, String> e : model.getModelData().entrySet()) {
+			if (e.getValue() != null) {
+				data.add(e);
+			}
+		}
+		writeString(model.getModelType(), out);
+		out.writeInt(data.size());
+		for (Entry<String, String> e : data) {
+			writeString(e.getKey(), out);
+			writeString(String.valueOf(e.getValue()), out);
+		}
+	}
+
+	private static void writeStamp(final Stamp stamp, final DataOutputStream out) throws IOException {
+		out.writeLong(stamp.length);
+		out.writeLong(stamp.crc);
+	}
+
+	private static void writeString(final String s, final DataOutputStream out) throws IOException {
+		byte[] bytes = s.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+}
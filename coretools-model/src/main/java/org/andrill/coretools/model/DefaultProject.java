@@ -19,16 +19,23 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
 
+import org.andrill.coretools.FileUtils;
+import org.andrill.coretools.JobService;
 import org.andrill.coretools.Platform;
 import org.andrill.coretools.AlphanumComparator;
 import org.andrill.coretools.model.io.ModelFormatManager;
@@ -57,9 +64,13 @@ public class DefaultProject extends AbstractProject {
 	private static final String DATA_DIR = "data-dir";
 	private static final String SCENE_DIR = "scene-dir";
 	private static final String CONFIG_FILE = "project.properties";
+	private static final String CACHE_CONTAINERS = "cache-containers";
+	private static final String CACHE_MODELS = "cache-models";
 	protected final File directory;
 	protected final ModelFormatManager formats;
 	protected final ConcurrentMap<String, File> files;
+	protected final ConcurrentMap<String, ContainerJournal> journals;
+	protected Map<String, String> savedConfiguration = null;
 
 	/**
 	 * Create a new DefaultProject.
@@ -88,7 +99,10 @@ public class DefaultProject extends AbstractProject {
         }
 		this.formats = formats;
 		files = new MapMaker().makeMap();
+		journals = new MapMaker().makeMap();
 		init();
+		setCacheLimits(getIntProperty(CACHE_CONTAINERS, DEFAULT_CACHE_CONTAINERS),
+		        getIntProperty(CACHE_MODELS, DEFAULT_CACHE_MODELS));
 	}
 
 	@Override
@@ -96,13 +110,33 @@ public class DefaultProject extends AbstractProject {
 		File dataDir = getDataDir();
 		dataDir.mkdirs();
 		files.put(name, new File(dataDir, name + "." + getDataFormat()));
+		getJournal(name).reset(ContainerJournal.Stamp.NONE);
 		return Platform.getService(ModelContainer.class);
 	}
 	
+	@Override
+	protected void closed(final ModelContainer container) {
+		for (ContainerJournal journal : journals.values()) {
+			if (journal.getContainer() == container) {
+				// closed without saving, so its changes are thrown away
+				if (journal.isEdited()) {
+					journal.discard();
+				} else {
+					journal.close();
+				}
+			}
+		}
+	}
+
 	@Override
 	protected void delete(final String name) {
 		File dataDir = getDataDir();
 		files.remove(name);
+		ContainerJournal journal = journals.remove(name);
+		if (journal != null) {
+			journal.discard();
+		}
+		new File(dataDir, "." + name + ".journal").delete();
 		File fileToDelete = new File(dataDir, name + '.' + getDataFormat());
 		try {
 			fileToDelete.delete();
@@ -120,6 +154,21 @@ public class DefaultProject extends AbstractProject {
 		return name;
 	}
 
+	@Override
+	protected JobService getJobService() {
+		return Platform.getService(JobService.class);
+	}
+
+	protected ContainerJournal getJournal(final String name) {
+		ContainerJournal journal = journals.get(name);
+		if (journal == null) {
+			File file = files.get(name);
+			journals.putIfAbsent(name, new ContainerJournal(new File(file.getParentFile(), "." + name + ".journal")));
+			journal = journals.get(name);
+		}
+		return journal;
+	}
+
 	protected File getDataDir() {
 		return new File(directory, getProperty(DATA_DIR, DEFAULT_DATA_DIR));
 	}
@@ -163,6 +212,18 @@ public class DefaultProject extends AbstractProject {
 		return value == null ? defaultValue : value;
 	}
 
+	protected int getIntProperty(final String key, final int defaultValue) {
+		String value = configuration.get(key);
+		if (value != null) {
+			try {
+				return Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				LOGGER.warn("Invalid value '{}' for project property '{}'", value, key);
+			}
+		}
+		return defaultValue;
+	}
+
 	protected File getSceneDir() {
 		return new File(directory, getProperty(SCENE_DIR, DEFAULT_SCENE_DIR));
 	}
@@ -201,6 +262,7 @@ public class DefaultProject extends AbstractProject {
 				Properties properties = new Properties();
 				properties.load(fis);
 				configuration.putAll((Map) properties);
+				savedConfiguration = new HashMap<String, String>(configuration);
 			} catch (FileNotFoundException e) {
 				// should never happen
 				LOGGER.error("Unable to load project configuration", e);
@@ -236,9 +298,21 @@ public class DefaultProject extends AbstractProject {
 		File dataDir = getDataDir();
 		if (dataDir.exists() && dataDir.isDirectory()) {
 			for (File file : dataDir.listFiles()) {
-				if (formats.getReader(getExtension(file)) != null) {
-					files.put(removeExtension(file), file);
-					sortedContainers.add(removeExtension(file));
+				if (formats.getReader(getExtension(file)) == null) {
+					continue;
+				}
+
+				// only one file per container, preferring the project's data format
+				String name = removeExtension(file);
+				File existing = files.get(name);
+				if (existing == null) {
+					files.put(name, file);
+					sortedContainers.add(name);
+				} else if (getDataFormat().equals(getExtension(file))) {
+					LOGGER.warn("Ignoring {}: container '{}' is also stored in {}", existing, name, file);
+					files.put(name, file);
+				} else {
+					LOGGER.warn("Ignoring {}: container '{}' is also stored in {}", file, name, existing);
 				}
 			}
 		}
@@ -248,9 +322,15 @@ public class DefaultProject extends AbstractProject {
 	
 	@Override
 	protected ModelContainer open(final String name) {
+		return open(name, true);
+	}
+
+	@Override
+	protected ModelContainer open(final String name, final boolean recover) {
 		ModelContainer container = Platform.getService(ModelContainer.class);
 		container.setProject(this);
 		File file = files.get(name);
+		ContainerJournal.Stamp stamp = ContainerJournal.Stamp.NONE;
 		if (file.exists()) {
 			// get our reader
 			ModelReader reader = formats.getReader(getExtension(file));
@@ -265,9 +345,24 @@ public class DefaultProject extends AbstractProject {
 
 			// read in our data
 			FileInputStream fis = null;
+			stamp = null;
 			try {
+				long length = file.length();
 				fis = new FileInputStream(file);
-				reader.read(container, fis);
+				CheckedInputStream cis = new CheckedInputStream(fis, new CRC32());
+				reader.read(container, new FilterInputStream(cis) {
+					@Override
+					public void close() {
+						// we still need to read the rest of the file
+					}
+				});
+
+				// checksum the rest of the file so we know which journal entries apply to it
+				byte[] buf = new byte[8192];
+				while (cis.read(buf) != -1) {
+					// keep reading
+				}
+				stamp = new ContainerJournal.Stamp(length, cis.getChecksum().getValue());
 			} catch (FileNotFoundException e) {
 				// should never happen
 				LOGGER.error("Unable to open " + file.getAbsolutePath(), e);
@@ -283,16 +378,59 @@ public class DefaultProject extends AbstractProject {
 				}
 			}
 		}
+
+		// peeked containers are opened as last saved
+		if (!recover) {
+			return container;
+		}
+
+		// apply any changes that were journaled but never saved
+		ContainerJournal journal = getJournal(name);
+		List<Model> recovered = journal.recover(container.getModels(), stamp);
+		if (recovered != null) {
+			ModelManager factory = Platform.getService(ModelManager.class);
+			container = Platform.getService(ModelContainer.class);
+			container.setProject(this);
+			for (Model m : recovered) {
+				Model model = factory.build(m.getModelType(), m.getModelData());
+				if (model != null) {
+					container.add(model);
+				} else {
+					LOGGER.warn("Unable to create model for type {}", m.getModelType());
+				}
+			}
+
+			// write the recovered models back before the journal is attached, so no edit can be made in between; if
+			// this fails the journal is kept and replayed again next time
+			synchronized (file) {
+				ContainerJournal.Stamp written = write(name, container, journal);
+				if (written != null) {
+					journal.reset(written);
+				}
+			}
+		}
 		return container;
 	}
 
+	@Override
+	protected boolean needsRecovery(final String name) {
+		return getJournal(name).exists();
+	}
+
+	@Override
+	protected void opened(final String name, final ModelContainer container) {
+		getJournal(name).attach(container);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public void save() {
 		super.save();
-		saveConfiguration();
+		if (!configuration.equals(savedConfiguration)) {
+			saveConfiguration();
+		}
 	}
 
 	/**
@@ -309,6 +447,22 @@ public class DefaultProject extends AbstractProject {
 
 	protected void save(final String name, final ModelContainer container) {
 		File file = files.get(name);
+		ContainerJournal journal = journals.get(name);
+		synchronized (file) {
+			ContainerJournal.Stamp stamp = write(name, container, journal);
+			if (stamp == null) {
+				// so the container stays modified and the journal keeps its changes
+				throw new RuntimeException("Unable to save container: " + file.getAbsolutePath());
+			}
+			if (journal != null) {
+				journal.reset(stamp);
+			}
+		}
+	}
+
+	protected ContainerJournal.Stamp write(final String name, final ModelContainer container,
+	        final ContainerJournal journal) {
+		File file = files.get(name);
 
 		// make our directory structure
 		if (!file.getParentFile().exists()) {
@@ -325,17 +479,46 @@ public class DefaultProject extends AbstractProject {
 			throw new RuntimeException("Unable to save container: no ModelWriter found");
 		}
 
-		// write out the file
+		// write to a temporary file and move it over the original, so a failed save leaves the original intact
+		File temp = null;
 		FileOutputStream fos = null;
 		try {
-			fos = new FileOutputStream(file);
-			writer.write(container, fos);
-		} catch (FileNotFoundException e) {
-			// should never happen
-			LOGGER.error("Unable to save " + file.getAbsolutePath(), e);
+			temp = File.createTempFile("." + name + ".", ".tmp", file.getParentFile());
+			fos = new FileOutputStream(temp);
+			CheckedOutputStream cos = new CheckedOutputStream(fos, new CRC32());
+			writer.write(container, cos);
+			cos.flush();
+			fos.getFD().sync();
+			fos.close();
+			fos = null;
+
+			// the journal has to know about the new file before it replaces the old one
+			ContainerJournal.Stamp stamp = new ContainerJournal.Stamp(temp.length(), cos.getChecksum().getValue());
+			if (journal != null) {
+				journal.checkpoint(stamp);
+			}
+			replace(temp, file);
+			temp = null;
+			return stamp;
 		} catch (IOException e) {
 			LOGGER.error("Unable to save " + file.getAbsolutePath(), e);
+		} finally {
+			if (fos != null) {
+				try {
+					fos.close();
+				} catch (IOException ignored) {
+					// ignored
+				}
+			}
+			if (temp != null) {
+				temp.delete();
+			}
 		}
+		return null;
+	}
+
+	protected void replace(final File source, final File target) throws IOException {
+		FileUtils.replace(source, target);
 	}
 
 	public void saveConfiguration() {
@@ -347,11 +530,20 @@ public class DefaultProject extends AbstractProject {
 		try {
 			fos = new FileOutputStream(new File(directory, CONFIG_FILE));
 			properties.store(fos, null);
+			savedConfiguration = new HashMap<String, String>(configuration);
 		} catch (FileNotFoundException e) {
 			// should never happen
 			LOGGER.error("Unable to save configuration", e);
 		} catch (IOException e) {
 			LOGGER.error("Unable to save configuration", e);
+		} finally {
+			if (fos != null) {
+				try {
+					fos.close();
+				} catch (IOException ignored) {
+					// ignored
+				}
+			}
 		}
 	}
 
@@ -105,6 +105,18 @@ public interface Project {
 	 */
 	ModelContainer openContainer(String name);
 
+	/**
+	 * Gets the model container with the specified name for reading, without opening it. If the container is already
+	 * in memory, it is returned; otherwise it is loaded, as last saved, and only kept for as long as the caller holds
+	 * on to it. Loading a container to peek at it never changes it on disk. Peeked containers must not be modified and
+	 * are not closed.
+	 * 
+	 * @param name
+	 *            the name.
+	 * @return the model container.
+	 */
+	ModelContainer peekContainer(String name);
+
 	/**
 	 * Removes a property change listener.
 	 * 
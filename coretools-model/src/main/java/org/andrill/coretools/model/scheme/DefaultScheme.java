@@ -34,6 +34,7 @@ public class DefaultScheme implements EditableScheme {
 	protected final String name;
 	protected final String type;
 	protected final Map<String, SchemeEntry> entries;
+	protected ImmutableSet<SchemeEntry> snapshot = null;
 
 	/**
 	 * Create a new DefaultScheme.
@@ -58,6 +59,7 @@ public class DefaultScheme implements EditableScheme {
 	public void addEntry(final SchemeEntry entry) {
 		String code = entry.getCode();
 		entries.put(code, entry);
+		snapshot = null;
 		entry.setScheme(this);
 		LOGGER.debug("Registered scheme entry {} in scheme {}", code, id);
 	}
@@ -66,7 +68,10 @@ public class DefaultScheme implements EditableScheme {
 	 * {@inheritDoc}
 	 */
 	public ImmutableSet<SchemeEntry> getEntries() {
-		return ImmutableSet.copyOf(entries.values());
+		if (snapshot == null) {
+			snapshot = ImmutableSet.copyOf(entries.values());
+		}
+		return snapshot;
 	}
 
 	/**
@@ -15,8 +15,13 @@
  */
 package org.andrill.coretools.model.scheme;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,6 +39,12 @@ import com.google.inject.Singleton;
 public class DefaultSchemeManager implements SchemeManager {
 	private static final Logger LOGGER = LoggerFactory.getLogger(DefaultSchemeManager.class);
 	private final Set<Scheme> schemes = new HashSet<Scheme>();
+	private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+	// snapshots of the registered schemes and an index of them by id, replaced whenever the schemes change so
+	// lookups never copy or lock
+	private volatile ImmutableSet<Scheme> snapshot = ImmutableSet.of();
+	private volatile Map<String, Scheme> index = Collections.emptyMap();
 
 	/**
 	 * Create a new DefaultSchemeManager.
@@ -42,6 +53,16 @@ public class DefaultSchemeManager implements SchemeManager {
 		LOGGER.debug("initialized");
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public void addListener(final Listener listener) {
+		listeners.add(listener);
+		for (Scheme s : getSchemes()) {
+			listener.schemeRegistered(s);
+		}
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -58,21 +79,14 @@ public class DefaultSchemeManager implements SchemeManager {
 	 * {@inheritDoc}
 	 */
 	public Scheme getScheme(final String id) {
-		if (id != null) {
-			for (Scheme s : getSchemes()) {
-				if (id.equals(s.getId())) {
-					return s;
-				}
-			}
-		}
-		return null;
+		return (id == null) ? null : index.get(id);
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	public ImmutableSet<Scheme> getSchemes() {
-		return ImmutableSet.copyOf(schemes);
+		return snapshot;
 	}
 
 	/**
@@ -91,26 +105,83 @@ public class DefaultSchemeManager implements SchemeManager {
 	@Inject(optional = true)
 	void injectFactories(final Set<Factory> factories) {
 		for (Factory set : factories) {
-			schemes.addAll(set.getSchemes());
+			for (Scheme s : set.getSchemes()) {
+				registerScheme(s);
+			}
+		}
+	}
+
+	@Inject(optional = true)
+	void injectListeners(final Set<Listener> injected) {
+		for (Listener l : injected) {
+			addListener(l);
 		}
 	}
 
 	@Inject(optional = true)
 	void injectSchemes(final Set<Scheme> injected) {
-		schemes.addAll(injected);
+		for (Scheme s : injected) {
+			registerScheme(s);
+		}
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	public void registerScheme(final Scheme scheme) {
-		schemes.add(scheme);
+		boolean added;
+		synchronized (schemes) {
+			added = schemes.add(scheme);
+			if (added) {
+				update();
+			}
+		}
+		if (added) {
+			for (Listener l : listeners) {
+				l.schemeRegistered(scheme);
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void removeListener(final Listener listener) {
+		listeners.remove(listener);
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	public void unregisterScheme(final Scheme scheme) {
-		schemes.remove(scheme);
+		boolean removed;
+		synchronized (schemes) {
+			removed = schemes.remove(scheme);
+			if (removed) {
+				update();
+			}
+		}
+		if (removed) {
+			for (Listener l : listeners) {
+				l.schemeUnregistered(scheme);
+			}
+		}
+	}
+
+	// rebuilds the snapshots; if several schemes share an id, the one registered first is found
+	private void update() {
+		Map<String, Scheme> ids = new HashMap<String, Scheme>();
+		for (Map.Entry<String, Scheme> e : index.entrySet()) {
+			if (schemes.contains(e.getValue())) {
+				ids.put(e.getKey(), e.getValue());
+			}
+		}
+		for (Scheme s : schemes) {
+			if ((s.getId() != null) && !ids.containsKey(s.getId())) {
+				ids.put(s.getId(), s);
+			}
+		}
+		snapshot = ImmutableSet.copyOf(schemes);
+		index = ids;
 	}
 }
@@ -49,6 +49,8 @@ public class SchemeEntry {
 	protected final ResourceLoader loader;
 	protected Color color = null;
 	protected BufferedImage image = null;
+	protected String imagePath = null;
+	protected URL imageURL = null;
 	protected Icon icon = null;
 
 	/**
@@ -173,8 +175,16 @@ public class SchemeEntry {
 		String path = properties.get("image");
 		if ((path == null) || (loader == null)) {
 			return null;
+		} else if (path.equals(imagePath)) {
+			return imageURL;
 		} else {
-			return loader.getResource(path);
+			// only found resources are remembered, as the loader may find more later
+			URL url = loader.getResource(path);
+			if (url != null) {
+				imagePath = path;
+				imageURL = url;
+			}
+			return url;
 		}
 	}
 
@@ -41,6 +41,36 @@ public interface SchemeManager {
 		Set<Scheme> getSchemes();
 	}
 
+	/**
+	 * Listens for schemes being registered and unregistered.
+	 */
+	interface Listener {
+
+		/**
+		 * Called when a scheme is registered.
+		 * 
+		 * @param scheme
+		 *            the scheme.
+		 */
+		void schemeRegistered(Scheme scheme);
+
+		/**
+		 * Called when a scheme is unregistered.
+		 * 
+		 * @param scheme
+		 *            the scheme.
+		 */
+		void schemeUnregistered(Scheme scheme);
+	}
+
+	/**
+	 * Adds a listener. The listener is notified of all schemes already registered.
+	 * 
+	 * @param listener
+	 *            the listener.
+	 */
+	void addListener(Listener listener);
+
 	/**
 	 * Gets a scheme entry by scheme id and code.
 	 * 
@@ -85,6 +115,14 @@ public interface SchemeManager {
 	 */
 	void registerScheme(Scheme scheme);
 
+	/**
+	 * Removes a listener.
+	 * 
+	 * @param listener
+	 *            the listener.
+	 */
+	void removeListener(Listener listener);
+
 	/**
 	 * Unregisters a scheme.
 	 * 
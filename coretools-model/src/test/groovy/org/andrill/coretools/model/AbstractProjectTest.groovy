@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools.model
+
+import groovy.util.GroovyTestCase;
+
+class AbstractProjectTest extends GroovyTestCase {
+    TestProject project
+
+    void setUp() {
+        project = new TestProject(['a', 'b', 'c', 'd'])
+        project.setCacheLimits(2, 100)
+    }
+
+    void testReopenCached() {
+        def a = project.openContainer('a')
+        assert a.is(project.openContainer('a'))
+        project.closeContainer(a)
+        project.closeContainer(a)
+        assert a.is(project.openContainer('a'))
+        assert ['a'] == project.opened
+        assert [] == project.released
+    }
+
+    void testEvictLeastRecentlyUsed() {
+        ['a', 'b', 'c'].each { project.closeContainer(project.openContainer(it)) }
+        assert ['a'] == project.released
+        project.closeContainer(project.openContainer('b'))
+        project.closeContainer(project.openContainer('d'))
+        assert ['a', 'c'] == project.released
+    }
+
+    void testModelBudget() {
+        project.setCacheLimits(10, 3)
+        ['a', 'b'].each { name ->
+            def container = project.openContainer(name)
+            2.times { container.add(new TestModel()) }
+            project.saveContainer(container)
+            project.closeContainer(container)
+        }
+        assert ['a'] == project.released
+    }
+
+    void testModifiedNotCached() {
+        def a = project.openContainer('a')
+        a.add(new TestModel())
+        project.closeContainer(a)
+        assert ['a'] == project.released
+        assert !a.is(project.openContainer('a'))
+    }
+
+    void testSaveOnlyModified() {
+        def a = project.openContainer('a')
+        def b = project.openContainer('b')
+        project.save()
+        assert [] == project.saved
+        b.add(new TestModel())
+        project.save()
+        assert ['b'] == project.saved
+        project.save()
+        assert ['b'] == project.saved
+        def c = project.createContainer('e')
+        project.save()
+        assert ['b', 'e'] == project.saved
+    }
+
+    void testPeek() {
+        def a = project.peekContainer('a')
+        assert a.is(project.peekContainer('a'))
+        assert a.is(project.openContainer('a'))
+        assert ['a'] == project.opened
+        assert a.is(project.peekContainer('a'))
+    }
+}
+
+class TestProject extends AbstractProject {
+    def opened = []
+    def released = []
+    def saved = []
+    def names = [:]
+    def list
+
+    TestProject(list) {
+        this.list = list
+        init()
+    }
+
+    protected ModelContainer create(String name) {
+        def container = new DefaultContainer()
+        names[container] = name
+        return container
+    }
+    protected void delete(String name) { }
+    protected List<String> load() { list }
+    protected void save(ModelContainer container) { saved << names[container] }
+
+    protected ModelContainer open(String name) {
+        def container = new DefaultContainer()
+        opened << name
+        names[container] = name
+        return container
+    }
+
+    protected void closed(ModelContainer container) {
+        released << names[container]
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools.model
+
+import groovy.util.GroovyTestCase;
+
+class ContainerJournalTest extends GroovyTestCase {
+    File file
+    ContainerJournal journal
+    ModelContainer container
+    def stamp = new ContainerJournal.Stamp(100, 12345)
+
+    void setUp() {
+        file = File.createTempFile("container", ".journal")
+        file.delete()
+        journal = new ContainerJournal(file)
+        journal.reset(stamp)
+        container = new DefaultContainer()
+        container.add(new TestModel(modelData: [x: '1']))
+        container.add(new TestModel(modelData: [x: '2']))
+        journal.attach(container)
+    }
+
+    void tearDown() {
+        journal.discard()
+    }
+
+    def snapshot() {
+        [new TestModel(modelData: [x: '1']), new TestModel(modelData: [x: '2'])]
+    }
+
+    void testRecover() {
+        assert !file.exists()
+        def model = new TestModel(modelData: [x: '3'])
+        container.add(model)
+        model.modelData.x = '3\u201C'
+        model.updated()
+        container.remove(container.models[0])
+        assert file.exists()
+        assert journal.edited
+
+        journal.close()
+        def recovered = new ContainerJournal(file).recover(snapshot(), stamp)
+        assert ['2', '3\u201C'] == recovered.collect { it.modelData.x }
+        assert ['TestModel', 'TestModel'] == recovered.collect { it.modelType }
+    }
+
+    void testTornRecord() {
+        container.add(new TestModel(modelData: [x: '3']))
+        journal.close()
+        file.append([0, 0, 0, 20, 1, 2, 3] as byte[])
+        assert ['1', '2', '3'] == new ContainerJournal(file).recover(snapshot(), stamp).collect { it.modelData.x }
+    }
+
+    void testCheckpoint() {
+        container.add(new TestModel(modelData: [x: '3']))
+        def compacted = new ContainerJournal.Stamp(200, 67890)
+        journal.checkpoint(compacted)
+        container.add(new TestModel(modelData: [x: '4']))
+        journal.close()
+
+        // replayed over either file
+        def recovered = new ContainerJournal(file).recover(snapshot(), stamp)
+        assert ['1', '2', '3', '4'] == recovered.collect { it.modelData.x }
+        recovered = new ContainerJournal(file).recover(snapshot() + new TestModel(modelData: [x: '3']), compacted)
+        assert ['1', '2', '3', '4'] == recovered.collect { it.modelData.x }
+    }
+
+    void testStale() {
+        container.add(new TestModel(modelData: [x: '3']))
+        journal.close()
+        assert null == new ContainerJournal(file).recover(snapshot(), new ContainerJournal.Stamp(100, 1))
+    }
+
+    void testReset() {
+        container.add(new TestModel(modelData: [x: '3']))
+        journal.reset(new ContainerJournal.Stamp(200, 67890))
+        assert !file.exists()
+        assert !journal.edited
+        assert 2 == journal.generation
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools.model.scheme
+
+import groovy.util.GroovyTestCase;
+
+class DefaultSchemeManagerTest extends GroovyTestCase {
+    DefaultSchemeManager manager
+
+    void setUp() {
+        manager = new DefaultSchemeManager()
+    }
+
+    DefaultScheme scheme(id, type, codes) {
+        def scheme = new DefaultScheme(id, id, type)
+        codes.each { scheme.addEntry(new SchemeEntry(it, it, [:], null)) }
+        return scheme
+    }
+
+    void testRegisterUnregister() {
+        def lithology = scheme("lithology", "lithology", ["sand", "silt"])
+        assert null == manager.getScheme("lithology")
+        manager.registerScheme(lithology)
+        assert lithology == manager.getScheme("lithology")
+        assert "silt" == manager.getEntry("lithology", "silt").code
+        assert null == manager.getEntry("lithology", "clay")
+        assert null == manager.getEntry("missing", "sand")
+        assert [lithology] as Set == manager.getSchemes()
+        assert [lithology] as Set == manager.getSchemes("lithology")
+        assert manager.getSchemes("symbol").isEmpty()
+        manager.unregisterScheme(lithology)
+        assert null == manager.getScheme("lithology")
+        assert manager.getSchemes().isEmpty()
+    }
+
+    void testDuplicateIds() {
+        def first = scheme("lithology", "lithology", ["sand"])
+        def second = scheme("lithology", "lithology", ["silt"])
+        manager.registerScheme(first)
+        manager.registerScheme(second)
+        assert first == manager.getScheme("lithology")
+        manager.unregisterScheme(first)
+        assert second == manager.getScheme("lithology")
+    }
+
+    void testListeners() {
+        def events = []
+        def lithology = scheme("lithology", "lithology", ["sand"])
+        def symbols = scheme("symbols", "symbol", ["shell"])
+        manager.registerScheme(lithology)
+        def listener = [
+            schemeRegistered: { events << "+${it.id}" },
+            schemeUnregistered: { events << "-${it.id}" }
+        ] as SchemeManager.Listener
+        manager.addListener(listener)
+        assert ["+lithology"] == events*.toString()
+        manager.registerScheme(symbols)
+        manager.registerScheme(symbols)
+        manager.unregisterScheme(lithology)
+        assert ["+lithology", "+symbols", "-lithology"] == events*.toString()
+        manager.removeListener(listener)
+        manager.unregisterScheme(symbols)
+        assert 3 == events.size()
+    }
+
+    void testEntriesSnapshot() {
+        def lithology = scheme("lithology", "lithology", ["sand"])
+        def entries = lithology.entries
+        assert entries.is(lithology.entries)
+        lithology.addEntry(new SchemeEntry("silt", "silt", [:], null))
+        assert 1 == entries.size()
+        assert 2 == lithology.entries.size()
+    }
+}
@@ -21,10 +21,15 @@ import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.lang.Class;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -32,9 +37,13 @@ import org.andrill.coretools.Adaptable;
 import org.andrill.coretools.AdapterManager;
 import org.andrill.coretools.Platform;
 import org.andrill.coretools.graphics.GraphicsContext;
+import org.andrill.coretools.graphics.driver.DisplayList;
+import org.andrill.coretools.graphics.driver.RecordingDriver;
 import org.andrill.coretools.model.Model;
 import org.andrill.coretools.model.ModelContainer;
 import org.andrill.coretools.model.edit.CommandStack;
+import org.andrill.coretools.model.scheme.Scheme;
+import org.andrill.coretools.model.scheme.SchemeManager;
 import org.andrill.coretools.scene.event.DefaultSceneEventHandler;
 import org.andrill.coretools.scene.event.SceneEventHandler;
 import org.slf4j.Logger;
@@ -49,8 +58,81 @@ import com.google.common.collect.ImmutableMap;
  * @author Josh Reed (jareed@andrill.org)
  */
 public class DefaultScene implements Scene, ModelContainer.Listener, LabelProvider {
+	/**
+	 * Invalidates every live scene when a scheme is registered or unregistered, so fills and symbols recorded from
+	 * the old schemes are drawn again.
+	 */
+	public static class SchemeListener implements SchemeManager.Listener {
+		/**
+		 * {@inheritDoc}
+		 */
+		public void schemeRegistered(final Scheme scheme) {
+			invalidateAll();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void schemeUnregistered(final Scheme scheme) {
+			invalidateAll();
+		}
+
+		private void invalidateAll() {
+			List<DefaultScene> live;
+			synchronized (SCENES) {
+				live = new ArrayList<DefaultScene>(SCENES);
+			}
+			for (DefaultScene scene : live) {
+				scene.invalidate();
+			}
+		}
+	}
+
+	// identifies the display list of one depth tile of a track rendered into specific bounds. Tiles are fixed
+	// TILE_HEIGHT rows aligned to 0 and the bounds are those of the whole track, not the area being painted, so every
+	// paint that covers a row replays the same recording.
+	private static class TileKey {
+		final Track track;
+		final Rectangle bounds;
+		final int tile;
+
+		TileKey(final Track track, final Rectangle bounds, final int tile) {
+			this.track = track;
+			this.bounds = bounds;
+			this.tile = tile;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof TileKey)) {
+				return false;
+			}
+			TileKey other = (TileKey) obj;
+			return (track == other.track) && (tile == other.tile) && bounds.equals(other.bounds);
+		}
+
+		@Override
+		public int hashCode() {
+			return (31 * ((31 * System.identityHashCode(track)) + bounds.hashCode())) + tile;
+		}
+	}
+
 	private static final Logger LOGGER = LoggerFactory.getLogger(DefaultScene.class);
 	private static final String ORIGIN_PROP = "origin";
+	private static final String DISPLAY_LISTS_PROP = "display-lists";
+	// the scenes a SchemeListener invalidates; held weakly so scenes are never kept alive just to be invalidated
+	private static final Set<DefaultScene> SCENES = Collections.synchronizedSet(Collections
+	        .newSetFromMap(new WeakHashMap<DefaultScene, Boolean>()));
+
+	/**
+	 * The height of the depth tiles track contents are recorded in.
+	 */
+	public static final int TILE_HEIGHT = 512;
+
+	/**
+	 * The approximate memory the recorded display lists may use.
+	 */
+	public static final long DISPLAY_LIST_BUDGET = 16 * 1024 * 1024;
 
 	protected ModelContainer models = null;
 	protected Map<Track, String> constraints = new HashMap<Track, String>();
@@ -69,6 +151,12 @@ public class DefaultScene implements Scene, ModelContainer.Listener, LabelProvid
 	protected int preferredWidth = -1;
 	protected final AdapterManager manager;
 	protected Map<String, String> parameters = new HashMap<String, String>();
+	protected final LinkedHashMap<TileKey, DisplayList> displayLists = new LinkedHashMap<TileKey, DisplayList>(64,
+	        0.75f, true);
+	protected final Map<Track, ImmutableMap<String, String>> recordedParameters = new HashMap<Track, ImmutableMap<String, String>>();
+	protected long displayListBytes = 0;
+	protected int displayListGeneration = 0;
+	protected boolean recordedEditable = false;
 
 	/**
 	 * Create a new DefaultScene.
@@ -97,6 +185,7 @@ public class DefaultScene implements Scene, ModelContainer.Listener, LabelProvid
 	 */
 	public DefaultScene(final Origin origin, final AdapterManager manager) {
 		this.manager = manager;
+		SCENES.add(this);
 		setOrigin(origin);
 	}
 
@@ -119,14 +208,47 @@ public class DefaultScene implements Scene, ModelContainer.Listener, LabelProvid
 	 *            the manager.
 	 */
 	public DefaultScene(final Scene scene, final AdapterManager manager) {
+		this(scene, scene.getModels(), manager);
+	}
+
+	/**
+	 * Create a new DefaultScene from the specified scene, showing the specified models.
+	 * 
+	 * @param scene
+	 *            the scene.
+	 * @param models
+	 *            the models.
+	 */
+	public DefaultScene(final Scene scene, final ModelContainer models) {
+		this(scene, models, Platform.getService(AdapterManager.class));
+	}
+
+	/**
+	 * Create a new DefaultScene from the specified scene, showing the specified models. The new scene has new
+	 * instances of the tracks, with the same constraints and parameters, and the same render hints and parameters as
+	 * the scene.
+	 * 
+	 * @param scene
+	 *            the scene.
+	 * @param models
+	 *            the models.
+	 * @param manager
+	 *            the manager.
+	 */
+	public DefaultScene(final Scene scene, final ModelContainer models, final AdapterManager manager) {
 		this.manager = manager;
+		SCENES.add(this);
 		setOrigin(scene.getOrigin());
-		setModels(scene.getModels());
+		setModels(models);
 		setPreferredWidth(scene.getPreferredWidth());
 		setScalingFactor(scene.getScalingFactor());
 		for (Track t : scene.getTracks()) {
 			try {
-				addTrack(t.getClass().newInstance(), scene.getTrackConstraints(t));
+				Track track = t.getClass().newInstance();
+				addTrack(track, scene.getTrackConstraints(t));
+				for (Entry<String, String> e : t.getParameters().entrySet()) {
+					track.setParameter(e.getKey(), e.getValue());
+				}
 			} catch (InstantiationException e) {
 				LOGGER.error("Unable to clone track {}: {}", t.getClass().getName(), e.getMessage());
 			} catch (IllegalAccessException e) {
@@ -403,6 +525,7 @@ public class DefaultScene implements Scene, ModelContainer.Listener, LabelProvid
 	 * {@inheritDoc}
 	 */
 	public void invalidate() {
+		clearDisplayLists();
 		if (valid.getAndSet(false)) {
 			for (ChangeListener l : changeListeners) {
 				l.sceneChanged();
@@ -523,6 +646,50 @@ public class DefaultScene implements Scene, ModelContainer.Listener, LabelProvid
 	public void moveTrack(Track track, int index) {
 		tracks.remove(track);
 		tracks.add(index, track);
+		clearDisplayLists();
+	}
+
+	/**
+	 * Discards the recorded track contents so they are rendered again the next time they are drawn.
+	 */
+	public synchronized void clearDisplayLists() {
+		displayLists.clear();
+		recordedParameters.clear();
+		displayListBytes = 0;
+		displayListGeneration++;
+	}
+
+	// gets the display list for one tile of a track, recording it if needed. The track is rendered outside the scene
+	// lock so painting never waits on another thread's recording; a recording is only kept if nothing was discarded
+	// while it was being made.
+	protected DisplayList getDisplayList(final Track track, final GraphicsContext graphics, final Rectangle bounds,
+	        final int tile, final Rectangle2D clip) {
+		TileKey key = new TileKey(track, bounds, tile);
+		int generation;
+		synchronized (this) {
+			DisplayList list = displayLists.get(key);
+			if (list != null) {
+				return list;
+			}
+			generation = displayListGeneration;
+		}
+
+		RecordingDriver recorder = new RecordingDriver(graphics, clip);
+		track.renderContents(new GraphicsContext(recorder), bounds);
+		DisplayList list = recorder.getDisplayList();
+
+		synchronized (this) {
+			if ((generation == displayListGeneration) && !displayLists.containsKey(key)) {
+				displayLists.put(key, list);
+				displayListBytes += list.getByteCount();
+				Iterator<DisplayList> i = displayLists.values().iterator();
+				while ((displayListBytes > DISPLAY_LIST_BUDGET) && (displayLists.size() > 1) && i.hasNext()) {
+					displayListBytes -= i.next().getByteCount();
+					i.remove();
+				}
+			}
+		}
+		return list;
 	}
 
 	protected double parse(final String number) {
@@ -590,7 +757,11 @@ public class DefaultScene implements Scene, ModelContainer.Listener, LabelProvid
 			Rectangle bounds = new Rectangle(x, (int) Math.floor(r.getY()), w, (int) Math.ceil(r.getHeight()));
 			graphics.setClip(bounds);
 			graphics.pushState();
-			t.renderContents(graphics, bounds);
+			if (shouldUseDisplayLists()) {
+				renderRecorded(t, graphics, bounds);
+			} else {
+				t.renderContents(graphics, bounds);
+			}
 			graphics.popState();
 			graphics.setClip(null);
 			if (shouldRenderBorders()) {
@@ -601,6 +772,66 @@ public class DefaultScene implements Scene, ModelContainer.Listener, LabelProvid
 		graphics.popTransform();
 	}
 
+	/**
+	 * Renders the contents of a track by replaying the display lists of the depth tiles that intersect the clip,
+	 * recording any that have not been recorded yet. The recordings are discarded when the models, selection, render
+	 * hints or parameters of the scene or the parameters of the track change.
+	 * 
+	 * @param track
+	 *            the track.
+	 * @param graphics
+	 *            the graphics.
+	 * @param bounds
+	 *            the track bounds.
+	 */
+	protected void renderRecorded(final Track track, final GraphicsContext graphics, final Rectangle bounds) {
+		Rectangle2D clip = graphics.getClip();
+		Rectangle2D visible = (clip == null) ? bounds : clip.createIntersection(bounds);
+		if (visible.isEmpty()) {
+			return;
+		}
+		validateDisplayLists(track);
+
+		int first = (int) Math.floor(visible.getMinY() / TILE_HEIGHT);
+		int last = (int) Math.ceil(visible.getMaxY() / TILE_HEIGHT) - 1;
+		for (int i = first; i <= last; i++) {
+			Rectangle2D tile = bounds.createIntersection(new Rectangle(bounds.x, i * TILE_HEIGHT, bounds.width,
+			        TILE_HEIGHT));
+			if (tile.isEmpty()) {
+				continue;
+			}
+			DisplayList list = getDisplayList(track, graphics, bounds, i, tile);
+			if (!list.isEmpty()) {
+				graphics.setClip(tile);
+				graphics.pushState();
+				list.replay(graphics, tile);
+				graphics.popState();
+			}
+		}
+	}
+
+	// discards recordings made with different track parameters or editability
+	protected synchronized void validateDisplayLists(final Track track) {
+		boolean editable = (commandStack != null) && commandStack.isEditable();
+		if (editable != recordedEditable) {
+			clearDisplayLists();
+			recordedEditable = editable;
+		}
+		ImmutableMap<String, String> current = track.getParameters();
+		ImmutableMap<String, String> recorded = recordedParameters.put(track, current);
+		if ((recorded != null) && !recorded.equals(current)) {
+			displayListGeneration++;
+			Iterator<Entry<TileKey, DisplayList>> i = displayLists.entrySet().iterator();
+			while (i.hasNext()) {
+				Entry<TileKey, DisplayList> e = i.next();
+				if (e.getKey().track == track) {
+					displayListBytes -= e.getValue().getByteCount();
+					i.remove();
+				}
+			}
+		}
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -646,6 +877,7 @@ public class DefaultScene implements Scene, ModelContainer.Listener, LabelProvid
 	 */
 	public void setCommandStack(final CommandStack commandStack) {
 		this.commandStack = commandStack;
+		clearDisplayLists();
 	}
 
 	/**
@@ -685,6 +917,7 @@ public class DefaultScene implements Scene, ModelContainer.Listener, LabelProvid
 		} else {
 			parameters.put(name, value);
 		}
+		clearDisplayLists();
 	}
 
 	/**
@@ -699,7 +932,10 @@ public class DefaultScene implements Scene, ModelContainer.Listener, LabelProvid
 	 * {@inheritDoc}
 	 */
 	public void setRenderHint(final String name, final String value) {
-		hints.put(name, value);
+		String old = hints.put(name, value);
+		if ((old == null) ? (value != null) : !old.equals(value)) {
+			clearDisplayLists();
+		}
 	}
 
 	/**
@@ -721,6 +957,7 @@ public class DefaultScene implements Scene, ModelContainer.Listener, LabelProvid
 		this.selection = (selection == null) ? Selection.EMPTY : selection;
 		if (!old.equals(this.selection)) {
 			LOGGER.debug("Selection changed {}", this.selection);
+			clearDisplayLists();
 			for (SelectionListener l : selectionListeners) {
 				LOGGER.debug("Notifying {} of selection change", l);
 				l.selectionChanged(this.selection);
@@ -728,6 +965,10 @@ public class DefaultScene implements Scene, ModelContainer.Listener, LabelProvid
 		}
 	}
 
+	private boolean shouldUseDisplayLists() {
+		return Boolean.parseBoolean(getProperty(DISPLAY_LISTS_PROP, "true"));
+	}
+
 	private boolean shouldRenderBorders() {
 		return Boolean.parseBoolean(getProperty("borders", "true"));
 	}
@@ -31,6 +31,7 @@ import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -40,6 +41,8 @@ import javax.swing.Scrollable;
 import javax.swing.SwingConstants;
 import javax.swing.SwingUtilities;
 
+import org.andrill.coretools.JobService;
+import org.andrill.coretools.Platform;
 import org.andrill.coretools.graphics.GraphicsContext;
 import org.andrill.coretools.graphics.driver.Java2DDriver;
 import org.andrill.coretools.model.Model;
@@ -116,6 +119,8 @@ public class ScenePanel extends JPanel implements MouseListener, MouseMotionList
 	protected SelectionProvider selectionProvider = DEFAULT_PROVIDER;
 	protected KeySelectionProvider keySelectionProvider = DEFAULT_KEY_SELECTION_PROVIDER;
 	protected int scrollUnits = 20;
+	protected boolean tiled = true;
+	protected SceneTileCache tiles = null;
 	
 	/**
 	 * Create a new ScenePanel.
@@ -280,6 +285,28 @@ public class ScenePanel extends JPanel implements MouseListener, MouseMotionList
 		return scene;
 	}
 
+	// the transform from scene to component coordinates
+	private AffineTransform getSceneTransform() {
+		AffineTransform tx = new AffineTransform();
+		if (orientation == Orientation.HORIZONTAL) {
+			tx.rotate(-Math.PI / 2);
+			tx.translate(-scene.getContentSize().getWidth(), 0);
+		}
+		return tx;
+	}
+
+	/**
+	 * Gets the backing store the scene contents are painted from.
+	 * 
+	 * @return the tile cache.
+	 */
+	protected SceneTileCache getTiles() {
+		if (tiles == null) {
+			tiles = new SceneTileCache(this, Platform.getService(JobService.class));
+		}
+		return tiles;
+	}
+
 	public int getScrollableBlockIncrement(final Rectangle visibleRect, final int orientation, final int direction) {
 		if (orientation == SwingConstants.HORIZONTAL) {
 			return visibleRect.width - scrollUnits;
@@ -382,6 +409,7 @@ public class ScenePanel extends JPanel implements MouseListener, MouseMotionList
 	}
 
 	public void modelAdded(final Model model) {
+		invalidateTiles();
 		if ((part == ScenePart.CONTENTS) && (scene != null) && (scene.getOrigin() == Origin.BASE)) {
 			int diff = (int) (scene.getContentSize().getHeight() - height);
 			Rectangle visible = getVisibleRect();
@@ -394,11 +422,26 @@ public class ScenePanel extends JPanel implements MouseListener, MouseMotionList
 	}
 
 	public void modelRemoved(final Model model) {
-		// do nothing
+		invalidateTiles();
 	}
 
 	public void modelUpdated(final Model model) {
-		// do nothing
+		invalidateTiles();
+	}
+
+	private void invalidateTiles() {
+		if (tiles != null) {
+			tiles.invalidate();
+		}
+	}
+
+	/**
+	 * Checks whether the scene contents are painted from a backing store of tiles rendered in the background.
+	 * 
+	 * @return true if the contents are tiled, false if they are rendered directly on each paint.
+	 */
+	public boolean isTiled() {
+		return tiled;
 	}
 
 	public void mouseClicked(final MouseEvent e) {
@@ -511,9 +554,9 @@ public class ScenePanel extends JPanel implements MouseListener, MouseMotionList
 
 		// get a graphics context
 		if (orientation == Orientation.HORIZONTAL) {
-			g2d.rotate(-Math.PI / 2);
-			g2d.translate(-scene.getContentSize().getWidth(), 0);
+			g2d.transform(getSceneTransform());
 		}
+		// one driver starts the image cache pass for this paint; anything else drawing into this paint joins it
 		GraphicsContext gfx = new GraphicsContext(new Java2DDriver(g2d, false, this));
 		switch (part) {
 			case HEADER:
@@ -522,10 +565,16 @@ public class ScenePanel extends JPanel implements MouseListener, MouseMotionList
 			case CONTENTS:
 				Dimension size = getPreferredSize();
 				Rectangle2D sc = scene.getContentSize();
+				Rectangle bounds;
 				if (orientation == Orientation.VERTICAL) {
-					scene.renderContents(gfx, new Rectangle(0, (int) sc.getY(), size.width, size.height));
+					bounds = new Rectangle(0, (int) sc.getY(), size.width, size.height);
+				} else {
+					bounds = new Rectangle(0, (int) sc.getY(), size.height, size.width);
+				}
+				if (tiled) {
+					getTiles().paint(scene, g2d, bounds, getSceneTransform());
 				} else {
-					scene.renderContents(gfx, new Rectangle(0, (int) sc.getY(), size.height, size.width));
+					scene.renderContents(gfx, bounds);
 				}
 				break;
 			case FOOTER:
@@ -544,6 +593,11 @@ public class ScenePanel extends JPanel implements MouseListener, MouseMotionList
 	 * {@inheritDoc}
 	 */
 	public void sceneChanged() {
+		invalidateTiles();
+		refresh();
+	}
+
+	private void refresh() {
 		invalidate();
 		Component parent = getParent();
 		if (parent != null) {
@@ -560,6 +614,20 @@ public class ScenePanel extends JPanel implements MouseListener, MouseMotionList
 		sceneChanged();
 	}
 
+	/**
+	 * Sets whether the scene contents are painted from a backing store of tiles rendered in the background.
+	 * 
+	 * @param tiled
+	 *            true if the contents should be tiled, false if they should be rendered directly on each paint.
+	 */
+	public void setTiled(final boolean tiled) {
+		this.tiled = tiled;
+		if (!tiled) {
+			tiles = null;
+		}
+		repaint();
+	}
+
 	public void setScrollUnitIncrement(final int pixels) {
 		scrollUnits = pixels;
 	}
@@ -603,6 +671,9 @@ public class ScenePanel extends JPanel implements MouseListener, MouseMotionList
 			}
 		}
 		this.scene = scene;
+		if (tiles != null) {
+			tiles.clear();
+		}
 		if (scene != null) {
 			handler = scene.getAdapter(SceneEventHandler.class);
 			scene.addChangeListener(this);
@@ -638,6 +709,6 @@ public class ScenePanel extends JPanel implements MouseListener, MouseMotionList
 		} else {
 			setCursor(getCursor(feedback.getCursorType()));
 		}
-		sceneChanged();
+		refresh();
 	}
 }
@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools.ui;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+
+import org.andrill.coretools.JobService;
+import org.andrill.coretools.JobService.Priority;
+import org.andrill.coretools.graphics.GraphicsContext;
+import org.andrill.coretools.graphics.driver.DisplayList;
+import org.andrill.coretools.graphics.driver.Java2DDriver;
+import org.andrill.coretools.graphics.driver.RecordingDriver;
+import org.andrill.coretools.scene.Scene;
+import org.andrill.coretools.scene.Track;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A backing store for the contents of a scene. The contents are divided into fixed-height depth tiles that are
+ * recorded on the event dispatch thread, so the models are only ever read there, and rasterized into images on
+ * background threads from the recordings. Tiles are drawn from the cache on paint. When the scene changes the tiles are
+ * marked stale rather than discarded: a stale tile is still drawn until its replacement has been rendered, so edits
+ * never block painting. Tiles are discarded when the scale, render hints, tracks, track parameters or size of the
+ * scene change. Tiles that have never been rendered are drawn directly.
+ * <p>
+ * All methods must be called on the event dispatch thread.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public class SceneTileCache {
+	// everything that changes the geometry of the rendered contents
+	private static class RenderState {
+		final Rectangle2D bounds;
+		final double scale;
+		final double deviceScale;
+		final Map<String, String> hints;
+		final List<Track> tracks;
+		final List<Map<String, String>> parameters = new ArrayList<Map<String, String>>();
+
+		RenderState(final Scene scene, final Rectangle2D bounds, final double deviceScale) {
+			this.bounds = (Rectangle2D) bounds.clone();
+			this.scale = scene.getScalingFactor();
+			this.deviceScale = deviceScale;
+			this.hints = new HashMap<String, String>(scene.getRenderHints());
+			this.tracks = scene.getTracks();
+			for (Track t : tracks) {
+				parameters.add(t.getParameters());
+			}
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof RenderState)) {
+				return false;
+			}
+			RenderState other = (RenderState) obj;
+			return bounds.equals(other.bounds) && (scale == other.scale) && (deviceScale == other.deviceScale)
+			        && hints.equals(other.hints) && tracks.equals(other.tracks) && parameters.equals(other.parameters);
+		}
+
+		@Override
+		public int hashCode() {
+			return bounds.hashCode();
+		}
+	}
+
+	// a cached tile; stale tiles are drawn until they are re-rendered
+	private static class Tile {
+		BufferedImage image = null;
+		boolean stale = true;
+		boolean pending = false;
+		int generation = 0;
+
+		long getByteCount() {
+			return (image == null) ? 0 : 4L * image.getWidth() * image.getHeight();
+		}
+	}
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(SceneTileCache.class);
+
+	/**
+	 * The height of a tile in scene units.
+	 */
+	public static final int TILE_HEIGHT = 512;
+
+	/**
+	 * The default number of bytes of tile images to keep.
+	 */
+	public static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+
+	protected final JComponent component;
+	protected final JobService jobs;
+	protected final LinkedHashMap<Integer, Tile> tiles = new LinkedHashMap<Integer, Tile>(32, 0.75f, true);
+	protected long budget = DEFAULT_BUDGET;
+	protected RenderState state = null;
+	protected RenderingHints renderingHints = null;
+
+	/**
+	 * Create a new SceneTileCache.
+	 *
+	 * @param component
+	 *            the component the tiles are painted on.
+	 * @param jobs
+	 *            the job service to render tiles with.
+	 */
+	public SceneTileCache(final JComponent component, final JobService jobs) {
+		this.component = component;
+		this.jobs = jobs;
+	}
+
+	/**
+	 * Discards all tiles.
+	 */
+	public void clear() {
+		tiles.clear();
+		state = null;
+	}
+
+	/**
+	 * Gets the number of bytes of tile images to keep.
+	 *
+	 * @return the budget in bytes.
+	 */
+	public long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Marks all tiles stale so they are rendered again the next time they are painted.
+	 */
+	public void invalidate() {
+		for (Tile tile : tiles.values()) {
+			tile.stale = true;
+			tile.generation++;
+		}
+	}
+
+	/**
+	 * Paints the contents of the scene, as {@link Scene#renderContents(GraphicsContext, Rectangle2D)} would.
+	 *
+	 * @param scene
+	 *            the scene.
+	 * @param g2d
+	 *            the graphics, transformed so that it draws in scene coordinates.
+	 * @param bounds
+	 *            the contents bounds.
+	 * @param toComponent
+	 *            the transform from the coordinates of g2d to those of the component, or null if they are the same.
+	 */
+	public void paint(final Scene scene, final Graphics2D g2d, final Rectangle2D bounds,
+	        final AffineTransform toComponent) {
+		AffineTransform tx = g2d.getTransform();
+		double deviceScale = Math.hypot(tx.getScaleX(), tx.getShearY());
+		RenderState current = new RenderState(scene, bounds, deviceScale);
+		if (!current.equals(state)) {
+			tiles.clear();
+			state = current;
+		}
+		renderingHints = g2d.getRenderingHints();
+
+		Rectangle clip = g2d.getClipBounds();
+		double top = bounds.getMinY() + ((clip == null) ? 0 : clip.getMinY());
+		double bottom = bounds.getMinY() + ((clip == null) ? bounds.getHeight() : clip.getMaxY());
+		int first = (int) Math.floor(Math.max(top, bounds.getMinY()) / TILE_HEIGHT);
+		int last = (int) Math.ceil(Math.min(bottom, bounds.getMaxY()) / TILE_HEIGHT) - 1;
+
+		Rectangle2D missing = null;
+		for (int i = first; i <= last; i++) {
+			Tile tile = tiles.get(i);
+			if (tile == null) {
+				tile = new Tile();
+				tiles.put(i, tile);
+			}
+			if (tile.stale && !tile.pending) {
+				render(scene, i, tile, toComponent);
+			}
+			Rectangle2D area = getArea(i, bounds);
+			if (tile.image == null) {
+				missing = (missing == null) ? area : missing.createUnion(area);
+			} else {
+				AffineTransform at = AffineTransform.getTranslateInstance(area.getX(), area.getY());
+				at.scale(1 / deviceScale, 1 / deviceScale);
+				g2d.drawImage(tile.image, at, null);
+			}
+		}
+
+		// render any tiles we don't have yet directly
+		if (missing != null) {
+			Graphics2D g = (Graphics2D) g2d.create();
+			g.clip(missing);
+			// the component's paint has already started this pass of the image cache
+			GraphicsContext gfx = new GraphicsContext(new Java2DDriver(g, false, component, false));
+			scene.renderContents(gfx, bounds);
+			g.dispose();
+		}
+	}
+
+	/**
+	 * Sets the number of bytes of tile images to keep.
+	 *
+	 * @param budget
+	 *            the budget in bytes.
+	 */
+	public void setBudget(final long budget) {
+		this.budget = budget;
+		evict();
+	}
+
+	protected void evict() {
+		long total = 0;
+		for (Tile tile : tiles.values()) {
+			total += tile.getByteCount();
+		}
+		Iterator<Tile> i = tiles.values().iterator();
+		while ((total > budget) && i.hasNext()) {
+			Tile tile = i.next();
+			total -= tile.getByteCount();
+			i.remove();
+		}
+	}
+
+	// the area of a tile in the coordinates of the graphics passed to paint
+	protected Rectangle2D getArea(final int index, final Rectangle2D bounds) {
+		return new Rectangle2D.Double(bounds.getX(), (index * TILE_HEIGHT) - bounds.getMinY(), bounds.getWidth(),
+		        TILE_HEIGHT);
+	}
+
+	protected void render(final Scene scene, final int index, final Tile tile, final AffineTransform toComponent) {
+		final RenderState requested = state;
+		final RenderingHints hints = renderingHints;
+		final int generation = tile.generation;
+		final DisplayList recording = recordTile(scene, index, requested, hints);
+		tile.pending = true;
+		jobs.submit(new Callable<Object>() {
+			public Object call() {
+				BufferedImage image = null;
+				try {
+					image = renderTile(recording, index, requested, hints);
+				} catch (RuntimeException e) {
+					// the tile is drawn directly instead
+					LOGGER.error("Unable to render tile " + index, e);
+				}
+				final BufferedImage rendered = image;
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						tile.pending = false;
+						if ((rendered == null) || (tiles.get(index) != tile) || !requested.equals(state)) {
+							return;
+						}
+						tile.image = rendered;
+						tile.stale = (tile.generation != generation);
+						evict();
+
+						Rectangle2D area = getArea(index, requested.bounds);
+						if (toComponent != null) {
+							area = toComponent.createTransformedShape(area).getBounds2D();
+						}
+						component.repaint(area.getBounds());
+					}
+				});
+				return null;
+			}
+		}, Priority.LOW);
+	}
+
+	// records the contents of a tile in the coordinates of the graphics passed to paint; string metrics are taken
+	// from a graphics set up like the tile image so the recording lays out as it would have rendered there
+	protected DisplayList recordTile(final Scene scene, final int index, final RenderState state,
+	        final RenderingHints hints) {
+		Graphics2D g = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
+		try {
+			if (hints != null) {
+				g.setRenderingHints(hints);
+			}
+			g.scale(state.deviceScale, state.deviceScale);
+			RecordingDriver recorder = new RecordingDriver(new Java2DDriver(g, false, null), getArea(index,
+			        state.bounds));
+			scene.renderContents(new GraphicsContext(recorder), state.bounds);
+			return recorder.getDisplayList();
+		} finally {
+			g.dispose();
+		}
+	}
+
+	protected BufferedImage renderTile(final DisplayList recording, final int index, final RenderState state,
+	        final RenderingHints hints) {
+		Rectangle2D bounds = state.bounds;
+		int width = (int) Math.ceil(bounds.getWidth() * state.deviceScale);
+		int height = (int) Math.ceil(TILE_HEIGHT * state.deviceScale);
+		if ((width <= 0) || (height <= 0)) {
+			return null;
+		}
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		try {
+			if (hints != null) {
+				g.setRenderingHints(hints);
+			}
+			g.setColor(Color.white);
+			g.fillRect(0, 0, width, height);
+			g.scale(state.deviceScale, state.deviceScale);
+			g.translate(-bounds.getX(), bounds.getMinY() - (index * TILE_HEIGHT));
+			Rectangle2D area = getArea(index, bounds);
+			g.setClip(area);
+
+			// no interactive component, so images are loaded before the tile is finished
+			recording.replay(new Java2DDriver(g, false, null), area);
+		} finally {
+			g.dispose();
+		}
+		return image;
+	}
+}
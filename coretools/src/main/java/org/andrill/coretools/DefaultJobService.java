@@ -15,11 +15,15 @@
  */
 package org.andrill.coretools;
 
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,23 +63,69 @@ public class DefaultJobService implements JobService {
 		}
 	}
 
+	/**
+	 * A job queue that hands out either the oldest (FIFO) or the most recently submitted (LIFO) job first.
+	 */
+	private static class JobQueue extends LinkedBlockingDeque<Runnable> {
+		private static final long serialVersionUID = 1L;
+		private volatile boolean lifo = false;
+
+		@Override
+		public boolean offer(final Runnable job) {
+			return lifo ? offerFirst(job) : offerLast(job);
+		}
+	}
+
 	private static final Logger LOGGER = LoggerFactory.getLogger(DefaultJobService.class);
 
 	protected ExecutorService high;
 	protected ExecutorService medium;
 	protected ExecutorService low;
+	private final Map<Priority, JobQueue> queues = new EnumMap<Priority, JobQueue>(Priority.class);
 
 	/**
 	 * Create a new DefaultJobService.
 	 */
 	public DefaultJobService() {
 		int size = Runtime.getRuntime().availableProcessors() + 1;
-		high = Executors.newFixedThreadPool(size, new PriorityThreadFactory(Priority.HIGH));
-		medium = Executors.newFixedThreadPool(size, new PriorityThreadFactory(Priority.MEDIUM));
-		low = Executors.newFixedThreadPool(size, new PriorityThreadFactory(Priority.LOW));
+		high = createPool(size, Priority.HIGH);
+		medium = createPool(size, Priority.MEDIUM);
+		low = createPool(size, Priority.LOW);
 		LOGGER.debug("initialized");
 	}
 
+	private ExecutorService createPool(final int size, final Priority priority) {
+		JobQueue queue = new JobQueue();
+		queues.put(priority, queue);
+		return new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS, queue, new PriorityThreadFactory(
+		        priority));
+	}
+
+	/**
+	 * Checks whether queued jobs of the specified priority run most recently submitted first.
+	 * 
+	 * @param priority
+	 *            the priority.
+	 * @return true if LIFO, false if FIFO.
+	 */
+	public boolean isLastInFirstOut(final Priority priority) {
+		return queues.get(priority).lifo;
+	}
+
+	/**
+	 * Sets whether queued jobs of the specified priority run most recently submitted first. Interactive clients that
+	 * re-request whatever is currently on screen benefit from LIFO since the latest requests are the visible ones.
+	 * The default is FIFO.
+	 * 
+	 * @param priority
+	 *            the priority.
+	 * @param lifo
+	 *            true for LIFO, false for FIFO.
+	 */
+	public void setLastInFirstOut(final Priority priority, final boolean lifo) {
+		queues.get(priority).lifo = lifo;
+	}
+
 	/**
 	 * Shuts down the job service.
 	 */
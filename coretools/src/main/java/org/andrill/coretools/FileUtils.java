@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * File helpers shared by the caches that keep their data next to, or on behalf of, project files.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public class FileUtils {
+
+	private FileUtils() {
+		// not instantiable
+	}
+
+	/**
+	 * Closes a stream, ignoring any errors.
+	 *
+	 * @param closeable
+	 *            the stream or null.
+	 */
+	public static void closeQuietly(final Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * Moves a file over another, atomically if the file system supports it.
+	 *
+	 * @param source
+	 *            the new file.
+	 * @param target
+	 *            the file to replace.
+	 * @throws IOException
+	 *             thrown if the file could not be replaced.
+	 */
+	public static void replace(final File source, final File target) throws IOException {
+		try {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+			        StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Gets the local file for a URL.
+	 *
+	 * @param url
+	 *            the URL.
+	 * @return the file or null if the URL does not refer to a local file.
+	 */
+	public static File toFile(final URL url) {
+		if (!"file".equals(url.getProtocol())) {
+			return null;
+		}
+		try {
+			return new File(url.toURI());
+		} catch (URISyntaxException e) {
+			return new File(url.getPath());
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+}
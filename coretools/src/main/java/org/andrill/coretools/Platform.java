@@ -24,6 +24,7 @@ import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.google.inject.Module;
@@ -70,6 +71,14 @@ public class Platform {
 			} catch (IOException ioe) {
 				LOGGER.error("Unable to discover modules", ioe);
 			}
+			if ("priority".equals(System.getProperty("coretools.jobservice"))) {
+				modules.add(new AbstractModule() {
+					@Override
+					protected void configure() {
+						bind(JobService.class).to(PriorityJobService.class);
+					}
+				});
+			}
 			LOGGER.info("Starting modules: {}", modules);
 			injector = Guice.createInjector(modules);
 			started = true;
@@ -0,0 +1,387 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Singleton;
+
+/**
+ * A JobService that runs all jobs on a single pool of one thread per processor. Queued jobs are taken strictly in
+ * priority order, then in submission order. Each priority has a bounded queue: once it is full, the submitting thread
+ * runs the job itself rather than blocking until there is room. A pool thread that waits without a timeout on a job
+ * which is still queued runs it instead of blocking, so jobs can wait on jobs of lower priority without starving the
+ * pool; a timed wait only ever waits. Queue depth and wait and run time histograms are kept for each priority.
+ * <p>
+ * Select it over {@link DefaultJobService} by starting the platform with
+ * <code>-Dcoretools.jobservice=priority</code>.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+@Singleton
+public class PriorityJobService implements JobService {
+	/**
+	 * A histogram of durations with power-of-two microsecond buckets.
+	 */
+	public static class Histogram {
+		private final long[] buckets = new long[40];
+		private long count = 0;
+		private long total = 0;
+		private long max = 0;
+
+		synchronized void record(final long nanos) {
+			long micros = Math.max(0, nanos / 1000);
+			int bucket = Math.min(buckets.length - 1, 64 - Long.numberOfLeadingZeros(micros));
+			buckets[bucket]++;
+			count++;
+			total += micros;
+			max = Math.max(max, micros);
+		}
+
+		/**
+		 * Gets the bucket counts. Bucket 0 counts durations under 1 microsecond and bucket <code>i</code> counts
+		 * durations from 2^(i-1) up to 2^i microseconds.
+		 *
+		 * @return the bucket counts.
+		 */
+		public synchronized long[] getBuckets() {
+			return buckets.clone();
+		}
+
+		/**
+		 * Gets the number of recorded durations.
+		 *
+		 * @return the count.
+		 */
+		public synchronized long getCount() {
+			return count;
+		}
+
+		/**
+		 * Gets the longest recorded duration.
+		 *
+		 * @return the duration in microseconds.
+		 */
+		public synchronized long getMaxMicros() {
+			return max;
+		}
+
+		/**
+		 * Gets the mean recorded duration.
+		 *
+		 * @return the duration in microseconds.
+		 */
+		public synchronized long getMeanMicros() {
+			return (count == 0) ? 0 : total / count;
+		}
+
+		/**
+		 * Gets an upper bound on the specified percentile of the recorded durations.
+		 *
+		 * @param percentile
+		 *            the percentile, between 0 and 1.
+		 * @return the duration in microseconds.
+		 */
+		public synchronized long getPercentileMicros(final double percentile) {
+			long target = (long) Math.ceil(percentile * count);
+			long seen = 0;
+			for (int i = 0; i < buckets.length; i++) {
+				seen += buckets[i];
+				if (seen >= target && seen > 0) {
+					return Math.min(max, 1L << i);
+				}
+			}
+			return max;
+		}
+
+		@Override
+		public synchronized String toString() {
+			return "n=" + count + ", mean=" + getMeanMicros() + "us, p50<=" + getPercentileMicros(0.5) + "us, p99<="
+			        + getPercentileMicros(0.99) + "us, max=" + max + "us";
+		}
+	}
+
+	/**
+	 * The statistics for one priority.
+	 */
+	public static class Statistics {
+		private final AtomicInteger queued = new AtomicInteger();
+		private final AtomicInteger maxQueued = new AtomicInteger();
+		private final AtomicLong submitted = new AtomicLong();
+		private final AtomicLong completed = new AtomicLong();
+		private final Histogram waitTime = new Histogram();
+		private final Histogram runTime = new Histogram();
+
+		void queue() {
+			int depth = queued.incrementAndGet();
+			int max;
+			while (depth > (max = maxQueued.get()) && !maxQueued.compareAndSet(max, depth)) {
+				// retry
+			}
+			submitted.incrementAndGet();
+		}
+
+		/**
+		 * Gets the number of jobs completed.
+		 *
+		 * @return the count.
+		 */
+		public long getCompleted() {
+			return completed.get();
+		}
+
+		/**
+		 * Gets the largest number of jobs that have been queued at once.
+		 *
+		 * @return the queue depth.
+		 */
+		public int getMaxQueueDepth() {
+			return maxQueued.get();
+		}
+
+		/**
+		 * Gets the number of jobs waiting to run.
+		 *
+		 * @return the queue depth.
+		 */
+		public int getQueueDepth() {
+			return queued.get();
+		}
+
+		/**
+		 * Gets the times jobs spent running.
+		 *
+		 * @return the run time histogram.
+		 */
+		public Histogram getRunTime() {
+			return runTime;
+		}
+
+		/**
+		 * Gets the number of jobs submitted.
+		 *
+		 * @return the count.
+		 */
+		public long getSubmitted() {
+			return submitted.get();
+		}
+
+		/**
+		 * Gets the times jobs spent queued before running.
+		 *
+		 * @return the wait time histogram.
+		 */
+		public Histogram getWaitTime() {
+			return waitTime;
+		}
+
+		@Override
+		public String toString() {
+			return "queued=" + getQueueDepth() + " (max " + getMaxQueueDepth() + "), submitted=" + getSubmitted()
+			        + ", completed=" + getCompleted() + ", wait[" + waitTime + "], run[" + runTime + "]";
+		}
+	}
+
+	// a queued job; whichever thread claims it first, a pool thread or a thread waiting on it, runs it
+	private class Job<E> extends FutureTask<E> implements Comparable<Job<?>> {
+		private final Priority priority;
+		private final long sequence;
+		private final long queuedAt = System.nanoTime();
+		private final AtomicBoolean claimed = new AtomicBoolean(false);
+
+		Job(final Callable<E> callable, final Priority priority) {
+			super(callable);
+			this.priority = priority;
+			this.sequence = sequencer.incrementAndGet();
+		}
+
+		public int compareTo(final Job<?> other) {
+			if (priority != other.priority) {
+				return priority.compareTo(other.priority);
+			}
+			return (sequence < other.sequence) ? -1 : ((sequence == other.sequence) ? 0 : 1);
+		}
+
+		@Override
+		public E get() throws InterruptedException, ExecutionException {
+			help();
+			return super.get();
+		}
+
+		@Override
+		public E get(final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException,
+		        TimeoutException {
+			// running the job here could take any amount of time, so a timed wait doesn't help
+			return super.get(timeout, unit);
+		}
+
+		@Override
+		public void run() {
+			if (claim()) {
+				execute();
+			}
+		}
+
+		// runs the job on the submitting thread without queueing it
+		void runNow() {
+			claimed.set(true);
+			statistics.get(priority).submitted.incrementAndGet();
+			execute();
+		}
+
+		private void execute() {
+			Statistics s = statistics.get(priority);
+			long start = System.nanoTime();
+			try {
+				super.run();
+			} finally {
+				s.runTime.record(System.nanoTime() - start);
+				s.completed.incrementAndGet();
+			}
+		}
+
+		private boolean claim() {
+			if (!claimed.compareAndSet(false, true)) {
+				return false;
+			}
+			Statistics s = statistics.get(priority);
+			s.queued.decrementAndGet();
+			s.waitTime.record(System.nanoTime() - queuedAt);
+			permits.get(priority).release();
+			return true;
+		}
+
+		// pool threads run a queued job they wait on rather than block a thread the job may need
+		private void help() {
+			if (!isDone() && isPoolThread()) {
+				run();
+			}
+		}
+	}
+
+	// a pool thread
+	private static class Worker extends Thread {
+		private final PriorityJobService service;
+
+		Worker(final PriorityJobService service, final Runnable r, final String name) {
+			super(r, name);
+			this.service = service;
+		}
+	}
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PriorityJobService.class);
+
+	/**
+	 * The default maximum number of queued jobs per priority.
+	 */
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	protected final ThreadPoolExecutor pool;
+	protected final AtomicLong sequencer = new AtomicLong();
+	protected final Map<Priority, Semaphore> permits = new EnumMap<Priority, Semaphore>(Priority.class);
+	protected final Map<Priority, Statistics> statistics = new EnumMap<Priority, Statistics>(Priority.class);
+
+	/**
+	 * Create a new PriorityJobService with one thread per processor and the default queue capacity.
+	 */
+	public PriorityJobService() {
+		this(Runtime.getRuntime().availableProcessors(), DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create a new PriorityJobService.
+	 *
+	 * @param threads
+	 *            the number of threads.
+	 * @param capacity
+	 *            the maximum number of queued jobs per priority.
+	 */
+	public PriorityJobService(final int threads, final int capacity) {
+		for (Priority p : Priority.values()) {
+			permits.put(p, new Semaphore(capacity));
+			statistics.put(p, new Statistics());
+		}
+		final AtomicInteger count = new AtomicInteger();
+		pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+		        new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+			        public Thread newThread(final Runnable r) {
+				        return new Worker(PriorityJobService.this, r, "job-" + count.incrementAndGet());
+			        }
+		        });
+		LOGGER.debug("initialized with {} threads", threads);
+	}
+
+	/**
+	 * Gets the statistics for the specified priority.
+	 *
+	 * @param priority
+	 *            the priority.
+	 * @return the statistics.
+	 */
+	public Statistics getStatistics(final Priority priority) {
+		return statistics.get(priority);
+	}
+
+	/**
+	 * Shuts down the job service.
+	 */
+	public void shutdown() {
+		pool.shutdownNow();
+		for (Priority p : Priority.values()) {
+			LOGGER.debug("{}: {}", p, statistics.get(p));
+		}
+		LOGGER.debug("shutdown");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public <E> Future<E> submit(final Callable<E> job, final Priority priority) {
+		Job<E> task = new Job<E>(job, priority);
+		Semaphore semaphore = permits.get(priority);
+		if (!semaphore.tryAcquire()) {
+			// the queue is full; waiting for it to drain could stall the EDT or deadlock a pool thread, so run the
+			// job ourselves
+			task.runNow();
+			return task;
+		}
+		statistics.get(priority).queue();
+		pool.execute(task);
+		return task;
+	}
+
+	protected boolean isPoolThread() {
+		Thread thread = Thread.currentThread();
+		return (thread instanceof Worker) && ((Worker) thread).service == this;
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools
+
+import groovy.util.GroovyTestCase;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.andrill.coretools.JobService.Priority;
+
+class PriorityJobServiceTest extends GroovyTestCase {
+	PriorityJobService jobs
+
+	void setUp() {
+		jobs = new PriorityJobService(1, 16)
+	}
+
+	void tearDown() {
+		jobs.shutdown()
+	}
+
+	void testSubmit() {
+		assert "Done" == jobs.submit({ "Done" } as Callable, Priority.HIGH).get()
+		assert "Done" == jobs.submit({ "Done" } as Callable, Priority.MEDIUM).get()
+		assert "Done" == jobs.submit({ "Done" } as Callable, Priority.LOW).get()
+		assert 1 == jobs.getStatistics(Priority.HIGH).submitted
+		assert 1 == jobs.getStatistics(Priority.HIGH).waitTime.count
+	}
+
+	void testPriorityOrder() {
+		def gate = new CountDownLatch(1)
+		jobs.submit({ gate.await() } as Callable, Priority.LOW)
+		def order = Collections.synchronizedList([])
+		def futures = [Priority.LOW, Priority.MEDIUM, Priority.HIGH, Priority.LOW, Priority.HIGH].collect { p ->
+			jobs.submit({ order << p } as Callable, p)
+		}
+		gate.countDown()
+		futures.each { it.get(5, TimeUnit.SECONDS) }
+		assert [Priority.HIGH, Priority.HIGH, Priority.MEDIUM, Priority.LOW, Priority.LOW] == order
+	}
+
+	void testNestedWait() {
+		// with a single thread, waiting on a queued job must run it rather than deadlock
+		def outer = jobs.submit({
+			jobs.submit({ 41 } as Callable, Priority.LOW).get() + 1
+		} as Callable, Priority.HIGH)
+		assert 42 == outer.get(5, TimeUnit.SECONDS)
+	}
+
+	void testFullQueue() {
+		// once a queue is full, the submitting thread runs the job instead of waiting for room
+		def gate = new CountDownLatch(1)
+		jobs.submit({ gate.await() } as Callable, Priority.LOW)
+		(1..16).each { jobs.submit({ it } as Callable, Priority.LOW) }
+		def future = jobs.submit({ Thread.currentThread() } as Callable, Priority.LOW)
+		assert future.done
+		assert Thread.currentThread().is(future.get())
+		gate.countDown()
+	}
+
+	void testTimedWait() {
+		// a timed wait on a pool thread must not run the queued job, which could outlast the timeout
+		def gate = new CountDownLatch(1)
+		def outer = jobs.submit({
+			def inner = jobs.submit({ gate.await(); 'inner' } as Callable, Priority.LOW)
+			try {
+				inner.get(50, TimeUnit.MILLISECONDS)
+				return 'ran'
+			} catch (TimeoutException e) {
+				return 'timed out'
+			}
+		} as Callable, Priority.HIGH)
+		assert 'timed out' == outer.get(5, TimeUnit.SECONDS)
+		gate.countDown()
+	}
+}
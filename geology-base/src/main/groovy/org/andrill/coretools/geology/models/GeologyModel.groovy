@@ -37,6 +37,7 @@ abstract class GeologyModel implements Model {
 		Number.metaClass.getProperty { String unit -> new Length(delegate, unit) }
 	}
 	protected static final List SKIP = ['class', 'metaClass', 'modelType', 'modelData', 'container', 'constraints', 'indexMin', 'indexMax']
+	private static final Map DATA_PROPERTIES = Collections.synchronizedMap([:])
 	protected List propertyList
 	protected String sourceSection = null
 	ModelContainer container
@@ -126,17 +127,25 @@ abstract class GeologyModel implements Model {
 	 */
 	Map<String,String> getModelData() {
 		def data = [:]
-		metaClass.properties.each { p ->
-			if (!SKIP.contains(p.name)) {
-				def v = p.getProperty(this)
-				if (v != null) {
-					data[p.name] = handle(v)
-				}
+		dataProperties().each { p ->
+			def v = p.getProperty(this)
+			if (v != null) {
+				data[p.name] = handle(v)
 			}
 		}
 		return data
 	}
 	
+	// the meta properties that make up the model data, looked up once per class
+	protected List dataProperties() {
+		def list = DATA_PROPERTIES[getClass()]
+		if (list == null) {
+			list = metaClass.properties.findAll { !SKIP.contains(it.name) }
+			DATA_PROPERTIES[getClass()] = list
+		}
+		return list
+	}
+	
 	/**
 	 * Gets the model type.
 	 */
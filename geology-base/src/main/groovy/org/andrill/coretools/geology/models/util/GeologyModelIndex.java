@@ -15,8 +15,6 @@
  */
 package org.andrill.coretools.geology.models.util;
 
-import com.google.common.collect.LinkedHashMultimap;
-import com.google.common.collect.Multimap;
 import org.andrill.coretools.geology.models.GeologyModel;
 import org.andrill.coretools.model.Model;
 import org.andrill.coretools.model.ModelContainer;
@@ -24,7 +22,9 @@ import org.andrill.coretools.model.ModelContainer;
 import java.util.*;
 
 /**
- * Indexes GeologyModels so they can be efficiently queried by range intersection.
+ * Indexes GeologyModels so they can be efficiently queried by range intersection. Models are kept in an
+ * augmented interval tree (an AVL tree ordered by {@link #SORT} where each node also tracks the largest
+ * index value in its subtree), so queries are O(log n + k) and come back already sorted.
  * 
  * @author Josh Reed (jareed@andrill.org)
  */
@@ -38,14 +38,27 @@ public class GeologyModelIndex implements ModelContainer.Listener {
 		boolean accept(GeologyModel model);
 	}
 
-	// a simple bookkeeping class so we can efficiently update models
+	// a tree node; the range is captured when the model is added so we can efficiently update models
 	static class IndexRange {
-		int min;
-		int max;
+		final GeologyModel model;
+		final double minValue;
+		final double maxValue;
+		final int min;
+		final int max;
+		final long order;
+		IndexRange left;
+		IndexRange right;
+		int height = 1;
+		int subtreeMax;
 
-		IndexRange(int min, int max) {
-			this.min = min;
-			this.max = max;
+		IndexRange(GeologyModel model, long order) {
+			this.model = model;
+			this.order = order;
+			this.minValue = model.getIndexMin();
+			this.maxValue = model.getIndexMax();
+			this.min = (int) minValue;
+			this.max = (int) maxValue;
+			this.subtreeMax = max;
 		}
 	}
 
@@ -60,7 +73,8 @@ public class GeologyModelIndex implements ModelContainer.Listener {
 	};
 
 	protected Map<GeologyModel, IndexRange> rangeMap = new HashMap<GeologyModel, IndexRange>();
-	protected Multimap<Integer, GeologyModel> indexMap = LinkedHashMultimap.create();
+	protected IndexRange root = null;
+	protected long order = 0;
 	protected ModelContainer container = null;
 
 	/**
@@ -70,12 +84,13 @@ public class GeologyModelIndex implements ModelContainer.Listener {
 	 *            the model to add.
 	 */
 	public void add(GeologyModel model) {
-		int min = (int) model.getIndexMin();
-		int max = (int) model.getIndexMax();
-		rangeMap.put(model, new IndexRange(min, max));
-		for (int i = min; i <= max; i++) {
-			indexMap.put(i, model);
+		IndexRange existing = rangeMap.get(model);
+		if (existing != null) {
+			root = delete(root, existing);
 		}
+		IndexRange range = new IndexRange(model, order++);
+		rangeMap.put(model, range);
+		root = insert(root, range);
 	}
 
 	/**
@@ -150,17 +165,7 @@ public class GeologyModelIndex implements ModelContainer.Listener {
 	 */
 	public List<GeologyModel> get(Number start, Number end, Filter filter) {
 		List<GeologyModel> set = new ArrayList<GeologyModel>();
-		for (int i = start.intValue(); i <= end.intValue(); i++) {
-			Collection<GeologyModel> list = indexMap.get(i);
-			if (list != null) {
-				for (GeologyModel m : list) {
-					if (!set.contains(m) && (filter == null || filter.accept(m))) {
-						set.add(m);
-					}
-				}
-			}
-		}
-		Collections.sort(set, SORT);
+		query(root, start.intValue(), end.intValue(), filter, set);
 		return set;
 	}
 
@@ -183,12 +188,7 @@ public class GeologyModelIndex implements ModelContainer.Listener {
 	 */
 	public List<GeologyModel> getAllModels(Filter filter) {
 		List<GeologyModel> set = new ArrayList<GeologyModel>();
-		for (GeologyModel m : rangeMap.keySet()) {
-			if (!set.contains(m) && (filter == null || filter.accept(m))) {
-				set.add(m);
-			}
-		}
-		Collections.sort(set, SORT);
+		collect(root, filter, set);
 		return set;
 	}
 
@@ -226,11 +226,9 @@ public class GeologyModelIndex implements ModelContainer.Listener {
 	 *            the model.
 	 */
 	public void remove(GeologyModel model) {
-		int min = (int) model.getIndexMin();
-		int max = (int) model.getIndexMax();
-		rangeMap.remove(model);
-		for (int i = min; i <= max; i++) {
-			indexMap.remove(i, model);
+		IndexRange range = rangeMap.remove(model);
+		if (range != null) {
+			root = delete(root, range);
 		}
 	}
 
@@ -240,11 +238,14 @@ public class GeologyModelIndex implements ModelContainer.Listener {
 	 * @return the minimum index value.
 	 */
 	public int getMinIndex() {
-		Set<Integer> keys = indexMap.keySet();
-		if (keys.size() == 0) {
+		if (root == null) {
 			return 0;
 		} else {
-			return keys.toArray(new Integer[0])[0];
+			IndexRange n = root;
+			while (n.left != null) {
+				n = n.left;
+			}
+			return n.min;
 		}
 	}
 
@@ -254,12 +255,7 @@ public class GeologyModelIndex implements ModelContainer.Listener {
 	 * @return the maximum index value.
 	 */
 	public int getMaxIndex() {
-		Set<Integer> keys = indexMap.keySet();
-		if (keys.size() == 0) {
-			return 0;
-		} else {
-			return keys.toArray(new Integer[0])[keys.size() - 1];
-		}
+		return (root == null) ? 0 : root.subtreeMax;
 	}
 
 	/**
@@ -267,7 +263,7 @@ public class GeologyModelIndex implements ModelContainer.Listener {
 	 */
 	public void reset() {
 		rangeMap.clear();
-		indexMap.clear();
+		root = null;
 	}
 
 	/**
@@ -277,10 +273,141 @@ public class GeologyModelIndex implements ModelContainer.Listener {
 	 *            the model.
 	 */
 	public void update(GeologyModel model) {
-		IndexRange oldRange = rangeMap.get(model);
-		for (int i = oldRange.min; i <= oldRange.max; i++) {
-			indexMap.remove(i, model);
-		}
 		add(model);
 	}
+
+	// collects matching models in the subtree whose integer range overlaps [start, end], in sorted order
+	private void query(IndexRange n, int start, int end, Filter filter, List<GeologyModel> out) {
+		if (n == null || n.subtreeMax < start) {
+			return;
+		}
+		query(n.left, start, end, filter, out);
+		if (n.min > end) {
+			return; // everything to the right starts after the end of the query
+		}
+		// inverted ranges (min > max) don't cover any index values, so they never match
+		if (n.max >= start && n.min <= n.max && (filter == null || filter.accept(n.model))) {
+			out.add(n.model);
+		}
+		query(n.right, start, end, filter, out);
+	}
+
+	private void collect(IndexRange n, Filter filter, List<GeologyModel> out) {
+		if (n != null) {
+			collect(n.left, filter, out);
+			if (filter == null || filter.accept(n.model)) {
+				out.add(n.model);
+			}
+			collect(n.right, filter, out);
+		}
+	}
+
+	private static int compare(IndexRange a, IndexRange b) {
+		int result = Double.compare(a.minValue, b.minValue);
+		if (result == 0) {
+			result = Double.compare(a.maxValue, b.maxValue);
+		}
+		if (result == 0) {
+			result = (a.order < b.order) ? -1 : ((a.order == b.order) ? 0 : 1);
+		}
+		return result;
+	}
+
+	private static int height(IndexRange n) {
+		return (n == null) ? 0 : n.height;
+	}
+
+	private static void refresh(IndexRange n) {
+		n.height = 1 + Math.max(height(n.left), height(n.right));
+		int max = n.max;
+		if (n.left != null && n.left.subtreeMax > max) {
+			max = n.left.subtreeMax;
+		}
+		if (n.right != null && n.right.subtreeMax > max) {
+			max = n.right.subtreeMax;
+		}
+		n.subtreeMax = max;
+	}
+
+	private static IndexRange rotateLeft(IndexRange n) {
+		IndexRange r = n.right;
+		n.right = r.left;
+		r.left = n;
+		refresh(n);
+		refresh(r);
+		return r;
+	}
+
+	private static IndexRange rotateRight(IndexRange n) {
+		IndexRange l = n.left;
+		n.left = l.right;
+		l.right = n;
+		refresh(n);
+		refresh(l);
+		return l;
+	}
+
+	private static IndexRange balance(IndexRange n) {
+		refresh(n);
+		int factor = height(n.left) - height(n.right);
+		if (factor > 1) {
+			if (height(n.left.left) < height(n.left.right)) {
+				n.left = rotateLeft(n.left);
+			}
+			return rotateRight(n);
+		} else if (factor < -1) {
+			if (height(n.right.right) < height(n.right.left)) {
+				n.right = rotateRight(n.right);
+			}
+			return rotateLeft(n);
+		}
+		return n;
+	}
+
+	private static IndexRange insert(IndexRange n, IndexRange range) {
+		if (n == null) {
+			return range;
+		}
+		if (compare(range, n) < 0) {
+			n.left = insert(n.left, range);
+		} else {
+			n.right = insert(n.right, range);
+		}
+		return balance(n);
+	}
+
+	private static IndexRange delete(IndexRange n, IndexRange range) {
+		if (n == null) {
+			return null;
+		}
+		int result = compare(range, n);
+		if (result < 0) {
+			n.left = delete(n.left, range);
+		} else if (result > 0) {
+			n.right = delete(n.right, range);
+		} else {
+			if (n.left == null) {
+				return n.right;
+			} else if (n.right == null) {
+				return n.left;
+			}
+			// replace with the smallest node of the right subtree
+			IndexRange successor = n.right;
+			while (successor.left != null) {
+				successor = successor.left;
+			}
+			successor.right = deleteMin(n.right);
+			successor.left = n.left;
+			n = successor;
+		}
+		return balance(n);
+	}
+
+	private static IndexRange deleteMin(IndexRange n) {
+		if (n.left == null) {
+			return n.right;
+		}
+		n.left = deleteMin(n.left);
+		return balance(n);
+	}
 }
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools.geology.models.util
+
+import groovy.util.GroovyTestCase
+import org.andrill.coretools.geology.models.Interval
+import org.andrill.coretools.geology.models.Length
+
+public class GeologyModelIndexTest extends GroovyTestCase {
+	def interval(top, base) {
+		return new Interval(top: new Length(top, 'm'), base: new Length(base, 'm'))
+	}
+
+	void testQuerySorted() {
+		def index = new GeologyModelIndex()
+		def i3 = interval(20, 520)
+		def i1 = interval(1, 2)
+		def i2 = interval(1, 5)
+		[i3, i2, i1].each { index.add(it) }
+
+		assert [i1, i2] == index.get(0, 3)
+		assert [i2] == index.get(5)
+		assert [i1, i2, i3] == index.get(0, 600)
+		assert [i3] == index.get(300)
+		assert [] == index.get(600, 700)
+		assert [i1, i2, i3] == index.allModels
+		assert 1 == index.minIndex
+		assert 520 == index.maxIndex
+	}
+
+	void testFilter() {
+		def index = new GeologyModelIndex()
+		def i1 = interval(1, 2)
+		def i2 = interval(1, 5)
+		[i1, i2].each { index.add(it) }
+
+		assert [i2] == index.get(0, 10, { it.base.value > 2 } as GeologyModelIndex.Filter)
+	}
+
+	void testUpdateAndRemove() {
+		def index = new GeologyModelIndex()
+		def i1 = interval(1, 2)
+		def i2 = interval(3, 4)
+		[i1, i2].each { index.add(it) }
+
+		i1.top = new Length(10, 'm')
+		i1.base = new Length(12, 'm')
+		index.update(i1)
+		assert [] == index.get(1, 2)
+		assert [i2, i1] == index.get(0, 20)
+
+		index.remove(i2)
+		assert [i1] == index.get(0, 20)
+		assert 10 == index.minIndex
+		assert 12 == index.maxIndex
+
+		index.remove(i1)
+		assert [] == index.allModels
+		assert 0 == index.minIndex
+	}
+
+	void testInverted() {
+		def index = new GeologyModelIndex()
+		def i1 = interval(10, 5)
+		def i2 = interval(1, 20)
+		[i1, i2].each { index.add(it) }
+
+		assert [i2] == index.get(0, 30)
+		assert [i2] == index.get(7)
+		assert [i2, i1] == index.allModels
+	}
+}
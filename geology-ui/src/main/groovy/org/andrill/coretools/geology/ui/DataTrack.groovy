@@ -42,8 +42,27 @@ class DataTrack extends GeologyTrack {
 		}
 	}
 	
-	void renderData(DataSet data, GraphicsContext graphics, Rectangle2D bounds) {
-		
+	void renderData(DataSet data, GraphicsContext graphics, Rectangle2D clip) {
+		// a couple of points per pixel row is all a line can show
+		def rows = Math.max(1, (int) Math.ceil(scale(clip.height)))
+		def points
+		if (getParameter('decimation', 'envelope') == 'average') {
+			points = data.getAveraged(clip.minY, clip.maxY, rows)
+		} else {
+			points = data.getDecimated(clip.minY, clip.maxY, rows * 2)
+		}
+
+		// scale the values across the width of the track
+		def min = data.min
+		def range = (data.max > min) ? data.max - min : 1
+		def last = null
+		points.each { d ->
+			def p = pt2d(bounds.x + (d.y - min) / range * bounds.width, pts(d.x, bounds))
+			if (last) {
+				graphics.drawLine(last, p)
+			}
+			last = p
+		}
 	}
 	
 	void setModels(ModelContainer container) {
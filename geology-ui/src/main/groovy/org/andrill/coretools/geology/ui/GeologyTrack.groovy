@@ -29,6 +29,7 @@ import org.andrill.coretools.Platform;
 import org.andrill.coretools.geology.models.Length
 import org.andrill.coretools.geology.models.util.GeologyModelIndex
 import org.andrill.coretools.graphics.GraphicsContext
+import org.andrill.coretools.graphics.fill.*
 import org.andrill.coretools.model.Model
 import org.andrill.coretools.model.ModelContainer
 import org.andrill.coretools.model.scheme.SchemeManager
@@ -49,6 +50,7 @@ import com.google.common.collect.ImmutableMap;
  */
 abstract class GeologyTrack implements ModelContainer.Listener, Track, LabelProvider {
 	protected static def INDEX = [:] // key: ModelContainer; value: GeologyModelIndex
+	protected static def FILLS = Collections.synchronizedMap([:]) // key: [color, image URL, texture scaling]; value: Fill
 	Scene scene
 	protected ModelContainer container
 	protected SceneEventHandler handler
@@ -154,10 +156,10 @@ abstract class GeologyTrack implements ModelContainer.Listener, Track, LabelProv
 		if (this.container) {
 			this.container.addListener(this)
 			if (!INDEX.containsKey(this.container)) {
-				def index = new GeologyModelIndex()
-				index.connect(this.container)
-				INDEX[this.container] = index
+				INDEX[this.container] = new GeologyModelIndex()
 			}
+			// the project can hand out a cached container again after another track disconnected its index
+			INDEX[this.container].connect(this.container)
 		}
 		invalidate()
 	}
@@ -315,6 +317,27 @@ abstract class GeologyTrack implements ModelContainer.Listener, Track, LabelProv
 		scheme == null ? null : scheme.getEntry(code)
 	}
 
+	// the fill for a scheme entry, shared so the driver can reuse the paints it creates for it
+	Fill getSchemeFill(entry, double textureScaling = 1.0) {
+		Color color = entry?.color
+		URL image = entry?.imageURL
+		if (!image && !color) { return null }
+
+		def key = [color, image?.toExternalForm(), textureScaling]
+		def fill = FILLS[key]
+		if (fill == null) {
+			if (image && color) {
+				fill = new MultiFill(new ColorFill(color), new TextureFill(image, textureScaling))
+			} else if (image) {
+				fill = new TextureFill(image, textureScaling)
+			} else {
+				fill = new ColorFill(color)
+			}
+			FILLS[key] = fill
+		}
+		return fill
+	}
+
 	boolean hasParameter(String name) {
 		return parameters.containsKey(name)
 	}
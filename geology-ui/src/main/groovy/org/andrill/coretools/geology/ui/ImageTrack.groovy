@@ -19,9 +19,10 @@ import java.awt.Color
 import java.awt.Dimension
 import java.awt.geom.Rectangle2D
 
+import org.andrill.coretools.Platform
 import org.andrill.coretools.geology.models.Image
 import org.andrill.coretools.graphics.GraphicsContext
-import org.andrill.coretools.graphics.util.ImageInfo
+import org.andrill.coretools.graphics.util.ImageMetadataCache
 import org.andrill.coretools.model.Model
 import org.andrill.coretools.scene.TrackParameter
 
@@ -70,12 +71,9 @@ class ImageTrack extends GeologyTrack {
 	private double physWidth(model) {
 		def physWidth = 0.0
 		try {
-			model?.path?.withInputStream { stream ->
-				ImageInfo ii = new ImageInfo()
-				ii.setInput(stream)
-				if (ii.check()) {
-					physWidth = ((double) ii.width / ((double) ii.height / (mmax(model) - mmin(model))))
-				}
+			def ii = model?.path ? Platform.getService(ImageMetadataCache.class).get(model.path) : null
+			if (ii) {
+				physWidth = ((double) ii.width / ((double) ii.height / (mmax(model) - mmin(model))))
 			}
 		} catch (e) {
 			// ignore
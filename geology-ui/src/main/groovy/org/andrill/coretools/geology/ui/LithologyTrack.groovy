@@ -63,18 +63,7 @@ class LithologyTrack extends GeologyTrack {
 	
 	private Fill getFill(m, fill) {
 		if (m?.lithology) {
-			def entry = getSchemeEntry(m.lithology?.scheme, m.lithology?.code)
-			if (!entry) { return null }
-			
-			Color color = entry.color
-			URL image = entry.imageURL
-			if (image && color) {
-				return new MultiFill(new ColorFill(color), new TextureFill(image))
-			} else if (image) {
-				return new TextureFill(image)
-			} else if (color) {
-				return new ColorFill(color)
-			}
+			return getSchemeFill(getSchemeEntry(m.lithology?.scheme, m.lithology?.code))
 		} else {
 			return new ColorFill(fill)
 		}
@@ -192,19 +192,8 @@ class LithologyTrack extends AbstractIntervalTrack {
 	
 	private Fill getFill(m, fill) {
 		if (m?.scheme) {
-			def entry = getSchemeEntry(m.scheme?.scheme, m.scheme?.code)
-			if (!entry) { return null }
-			
 			final float textureScaling = Double.parseDouble(getParameter("texture-scaling", "1.0"))
-			Color color = entry.color
-			URL image = entry.imageURL
-			if (image && color) {
-				return new MultiFill(new ColorFill(color), new TextureFill(image, textureScaling))
-			} else if (image) {
-				return new TextureFill(image, textureScaling)
-			} else if (color) {
-				return new ColorFill(color)
-			}
+			return getSchemeFill(getSchemeEntry(m.scheme?.scheme, m.scheme?.code), textureScaling)
 		} else {
 			return new ColorFill(fill)
 		}
@@ -60,6 +60,8 @@ import org.andrill.coretools.ui.widget.Widget
 import org.andrill.coretools.ui.widget.swing.SwingWidgetSet
 
 import org.andrill.coretools.graphics.driver.ImageCache
+import org.andrill.coretools.graphics.driver.ImagePyramidStore
+import org.andrill.coretools.graphics.util.ImageMetadataCache
 
 import org.andrill.coretools.Platform
 
@@ -96,7 +98,7 @@ class PSICATController {
 	}
 
 	boolean canClose(evt) {
-		return model.openDiagrams.inject(true) { flag, cur -> flag &= cur.controller.close() }
+		return model.openDiagrams.every { it.controller.close() }
 	}
 	
 	// Is the selected directory a PSICAT project directory?
@@ -142,12 +144,22 @@ class PSICATController {
 		actions.closeAll()
 		model.project = project
 		getMVC('project').controller.project = project
-		if (project) { model.status = "Opened project '${project.name}'" }
+		if (project) {
+			// keep downsampled copies of the project's images alongside it so they aren't decoded again next session
+			def projectDir = new File(project.path.toURI())
+			Platform.getService(ImagePyramidStore.class).directory = new File(projectDir, ".pyramids")
+			Platform.getService(ImageMetadataCache.class).file = new File(projectDir, ".imagemetadata")
+			model.status = "Opened project '${project.name}'"
+		}
 	}
 	
 	void closeProject() {
 		actions.closeAll()
 		def name = model.project.name
+		Platform.getService(ImagePyramidStore.class).directory = null
+		def metadata = Platform.getService(ImageMetadataCache.class)
+		metadata.save()
+		metadata.file = null
 		model.project = null
 		getMVC('project').controller.project = null
 		model.status = "Closed project $name"
@@ -155,6 +167,7 @@ class PSICATController {
 
 	boolean closeDiagram(diagram) {
 		if (diagram && diagram.controller.close()) {
+			diagram.controller.release()
 			model.project.closeContainer(diagram.model.scene.models)
 			int index = model.openDiagrams.indexOf(diagram)
 			model.openDiagrams.remove(index)
@@ -348,7 +361,13 @@ class PSICATController {
 
 	// our action implementations
 	def actions = [
-		'exit': { evt -> if (canClose(evt)) app.shutdown() },
+		'exit': { evt ->
+			if (canClose(evt)) {
+				// close the sections so the journals of any the user chose not to save are discarded
+				actions.closeAll()
+				app.shutdown()
+			}
+		},
 		'newProject': { evt = null ->
 			withMVC('NewProjectWizard') { mvc ->
 				def project = mvc.controller.show()
@@ -474,8 +493,9 @@ class PSICATController {
 			while (model.openDiagrams && !canceled) { canceled = !closeDiagram(model.openDiagrams[0]) } 
 		},
 		'save': 	{ evt = null -> 
-			model.activeDiagram.controller.save()
-			model.status = "Saved section '${model.activeDiagram.model.name}'"
+			if (model.activeDiagram.controller.save()) {
+				model.status = "Saved section '${model.activeDiagram.model.name}'"
+			}
 		},
 		'saveAll': 	{ evt = null -> 
 			model.anyDirty = model.openDiagrams.inject(true) { dirty, diagram -> dirty &= diagram.controller.save() }
@@ -579,11 +599,10 @@ Working Dir: ${System.getProperty("user.dir")}
 			pb.setLocationRelativeTo(app.appFrames[0])
 			doOutside {
 				model.project.containers.each { containerName ->
-					def c = model.project.openContainer(containerName)
+					def c = model.project.peekContainer(containerName)
 					if (c.countModels("Section") > 1) {
 						stratContainers.add(containerName)
 					}
-					model.project.closeContainer(c)
 				}
 				pb.setVisible(false)
 
@@ -730,13 +749,12 @@ Working Dir: ${System.getProperty("user.dir")}
 				doOutside {
 					HashSet modelTypeSet = new HashSet()
 					model.project.containers.each { containerName ->
-						def container = model.project.openContainer(containerName)
+						def container = model.project.peekContainer(containerName)
 						container.models.each { model ->
 							if (!["Section", "Image"].contains(model.modelType)) {
 								modelTypeSet.add(model.modelType)
 							}
 						}
-						model.project.closeContainer(container)
 					}
 					pb.setVisible(false)
 					createMVCGroup('AuditProject', project: model.project, modelTypes: modelTypeSet as List)
@@ -751,7 +769,7 @@ Working Dir: ${System.getProperty("user.dir")}
 			doOutside {
 				def modelCountMap = [:]
 				model.project.containers.each { containerName ->
-					def container = model.project.openContainer(containerName)
+					def container = model.project.peekContainer(containerName)
 					container.models.each { model ->
 						if (modelCountMap.containsKey(model.modelType)) {
 							modelCountMap[model.modelType][0] += 1
@@ -765,7 +783,6 @@ Working Dir: ${System.getProperty("user.dir")}
 							}
 						}
 					}
-					model.project.closeContainer(container)
 				}
 				def uniqueTypesMap = [:]
 				modelCountMap.each { type, data ->
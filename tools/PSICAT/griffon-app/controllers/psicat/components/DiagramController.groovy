@@ -117,8 +117,10 @@ class DiagramController implements ModelContainer.Listener, Scene.SelectionListe
 		def sections = models.findAll { it.modelType == 'Section' }
 		singleSection = sections.size() == 1 && sections[0]?.top && sections[0]?.base
 		if (singleSection) {
+			// shift for display only; without container events, so the project doesn't journal the models or
+			// consider them modified
 			sectionTop = sections[0].top
-			GeoUtils.adjustUp(models, sectionTop)
+			GeoUtils.adjustUp(models, sectionTop, false)
 		}
 
     	// set our properties and listeners
@@ -148,18 +150,34 @@ class DiagramController implements ModelContainer.Listener, Scene.SelectionListe
     	if (model.dirty) {
     		switch (JOptionPane.showConfirmDialog(app.appFrames[0], "Save changes to '${model.name}'?", "PSICAT", JOptionPane.YES_NO_CANCEL_OPTION)) {
     			case JOptionPane.YES_OPTION: return save()
-    			case JOptionPane.NO_OPTION: return true
+    			case JOptionPane.NO_OPTION:
+    				// the edits are discarded with the section's journal when PSICAT closes its container
+    				markClean()
+    				return true
     			default: return false
     		}
     	}
     	return true
     }
 
+	// undoes the display shift before the section is closed, since the project may cache the container and hand the
+	// same models to the next diagram that opens it
+	void release() {
+		if (singleSection && sectionTop) { GeoUtils.adjustDown(model.scene.models, sectionTop, false) }
+	}
+
     boolean save() {
     	if (model.dirty) {
 			if (singleSection && sectionTop) { GeoUtils.adjustDown(model.scene.models, sectionTop, false) }
-    		model.project.saveContainer(model.scene.models)
-    		if (singleSection && sectionTop) { GeoUtils.adjustUp(model.scene.models, sectionTop, false) }
+			try {
+				model.project.saveContainer(model.scene.models)
+			} catch (e) {
+				Dialogs.showErrorDialog('Error', "Unable to save '${model.name}': ${e.message}", app.appFrames[0])
+				return false
+			} finally {
+				// shift back even if the write failed, so the next save doesn't shift the depths twice
+				if (singleSection && sectionTop) { GeoUtils.adjustUp(model.scene.models, sectionTop, false) }
+			}
     		markClean()
     	}
     	return true
@@ -207,17 +225,19 @@ class DiagramController implements ModelContainer.Listener, Scene.SelectionListe
 				view.contents.sceneChanged()
 			}
 
+			// the depths don't change, so convert them without container events: the project would journal every
+			// model and consider the section modified, and this diagram dirty
 			model.scene.models.models.each { 
 				if (it.hasProperty('top')) { it.top = it.top.to(units) }
-				if (it.hasProperty('base')) {
-					it.base = it.base.to(units)
-					it.updated()
-				}
+				if (it.hasProperty('base')) { it.base = it.base.to(units) }
 			}
+			model.scene.invalidate()
 		}
 		model.units = units
 		setState('units', units)
-		if (!allowDirtiness) {
+		if (allowDirtiness) {
+			markDirty()
+		} else {
 			markClean()
 		}
 	}
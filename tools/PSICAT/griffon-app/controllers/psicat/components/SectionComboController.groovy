@@ -39,11 +39,11 @@ class SectionComboController {
 	 * corrupting the "true" set of models maintained in the project or
 	 * disrupting listeners dependent on model/container association.
 	 */
-	private ModelContainer copy(List containerNames) {
+	ModelContainer copy(List containerNames) {
 		def modelManager = Platform.getService(DefaultModelManager.class)
 		def container = Platform.getService(ModelContainer.class)
 		containerNames.each { name ->
-			model.project.openContainer(name).models.each { m ->
+			model.project.peekContainer(name).models.each { m ->
 				container.add(modelManager.build(m.modelType, m.modelData))
 			}
 		}
@@ -77,23 +77,33 @@ class SectionComboController {
 	 *	- a container for a specific section
 	 */
 	def copyContainers() {
-		def project = model.project
 		def containers = [:]
+		containerNames.each { name, sections -> containers[name] = copy(sections) }
+		return containers
+	}
+
+	/**
+	 * Gets the names of the sections each container of the selection is copied from,
+	 * so callers can copy one container at a time with copy().
+	 */
+	def getContainerNames() {
+		def project = model.project
+		def names = [:]
 		if (model.allSections && view.section.selectedItem == model.allSectionsText) {
-			containers[project.name] = copy(project.containers)
+			names[project.name] = project.containers
 		} else if (model.eachSection && view.section.selectedItem == model.eachSectionText) {
 			project.containers.each { c ->
-				containers[c] = copy(c)
+				names[c] = [c]
 			}
 		} else if (view.section.selectedItem == model.selectSectionsText) {
 			model.selectedSections.each { c ->
-				containers[c] = copy(c)
+				names[c] = [c]
 			}
 		} else {
 			def section = view.section.selectedItem
-			containers[section] = copy(section)
+			names[section] = [section]
 		}
-		return containers
+		return names
 	}
 	
     /**
@@ -103,6 +113,7 @@ class SectionComboController {
      *  - a container for each section
 	 *  - a container with selected sections
 	 *	- a container for a specific section
+	 * The containers are peeked rather than opened, so they are for reading only.
      */
     def getContainers() {
     	def project = model.project
@@ -110,16 +121,16 @@ class SectionComboController {
         if (model.allSections && view.section.selectedItem == model.allSectionsText) {
 			def container = Platform.getService(ModelContainer.class)
         	project.containers.each { c ->
-        		project.openContainer(c).models.each { container.add(it) }
+        		project.peekContainer(c).models.each { container.add(it) }
         	}
         	containers[project.name] = container
         } else if (model.eachSection && view.section.selectedItem == model.eachSectionText) {
-			project.containers.each { containers[it] = project.openContainer(it) }
+			project.containers.each { containers[it] = project.peekContainer(it) }
         } else if (view.section.selectedItem == model.selectSectionsText) {
-			model.selectedSections.each { containers[it] = project.openContainer(it) }
+			model.selectedSections.each { containers[it] = project.peekContainer(it) }
 		} else {
 			def section = view.section.selectedItem
-			containers[section] = project.openContainer(section)
+			containers[section] = project.peekContainer(section)
         }
 		return containers
     }
@@ -169,7 +169,7 @@ class AuditProjectController {
 		model.project.containers.each { containerName ->
 			edt { view.progressText.text = "Auditing $containerName, ${auditResults.size} issues found so far..." }
 			
-			def container = model.project.openContainer(containerName)
+			def container = model.project.peekContainer(containerName)
 			List<String> issues = []
 			
 			// Perform selected audits. 'this.&' syntax is required to pass methods around.
@@ -187,8 +187,6 @@ class AuditProjectController {
 			}
 
 			if (issues.size() > 0) { auditResults << new AuditResult(containerName, issues)	}
-			
-			model.project.closeContainer(container)
 		}
 		
 		edt {
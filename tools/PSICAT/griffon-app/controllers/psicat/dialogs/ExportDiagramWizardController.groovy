@@ -15,6 +15,9 @@
  */
 package psicat.dialogs
 
+import java.util.concurrent.Callable
+import java.util.concurrent.atomic.AtomicInteger
+
 import org.andrill.coretools.ResourceLoader
 import org.andrill.coretools.Platform
 import org.andrill.coretools.graphics.util.Paper
@@ -49,8 +52,9 @@ class ExportDiagramWizardController {
 	def export() {
 		def project = model.project
 
-		// get our containers
-		def containers = app.controllers['exportDiagramSections'].copyContainers()
+		// get the sections of each container; the containers are copied as they are rendered
+		def sections = app.controllers['exportDiagramSections']
+		def containers = sections.containerNames
 
 		// select a scene
 		def scene = app.controllers['PSICAT'].getDiagramScene(project)
@@ -59,79 +63,92 @@ class ExportDiagramWizardController {
 		scene.setRenderHint("preferred-units", view.units.selectedItem)
 		scene.setRenderHint("borders", Boolean.toString(model.renderColumnBorders))
 		
-		// export each container
-		containers.eachWithIndex { k, v, index ->
-			view.progress.value = (index / containers.size() * 100).intValue()
-			view.progress.string = "Exporting $k"
-			
-			def sectionTop = 0.0
-			def section = v.models.find { it.modelType == 'Section' }
-			if (section) {
-				sectionTop = section.top
-				GeoUtils.adjustUp(v, sectionTop)
-			}
-			final String sectionName = section?.name ?: ""
-			
-			// validate our scene
-			scene.models = v
-			scene.validate()
-			
-			// figure out the extents
-			def start = model.exportAll ? scene.contentSize.minY / scene.scalingFactor : model.start as Double
-			def end = model.exportAll ? scene.contentSize.maxY / scene.scalingFactor : model.end as Double
-			def pageSize = model.pageSize ? model.pageSize as Double : end - start
-
-			// model.pageSize is initially null, but if it's edited and then cleared, it becomes
-			// the empty string (''), thus the compound test here.
-			if (model.minPageSize != null && model.exportAll && (model.pageSize == null || model.pageSize.equals(''))) {
-				// enforce minimum page size by overriding pageSize
-				final minPageSize = model.minPageSize as Double
-				if (pageSize < minPageSize) {
-					println "Overriding page size $pageSize with minimum $minPageSize"
-					pageSize = minPageSize
-				}
-			}
+		// set rendering parameters
+		def format
+		switch (view.format.selectedItem) {	
+			case 'PDF': format = 'PDF'; break
+			case 'SVG': format = 'SVG'; break
+			default: format = 'Raster'
+		}
+		if (!format.equals('Raster')) {
+			// when rendering PDF or SVG, embed full-resolution image scaled to track bounds
+			def imageTrack = scene.tracks.find { it instanceof ImageTrack }
+			if (imageTrack) { imageTrack.setParameter("embed-image", "true") }
+		}
 
-			// println "scene.contentSize.maxY = ${scene.contentSize.maxY} start: $start, end: $end, end-start: ${end - start} pageSize: $pageSize"
+		// Override the scene columns' draw-outline settings for now...
+		scene.tracks.findAll { it.hasProperty("PARAMETERS") && it.PARAMETERS.containsKey("draw-outline") }.each {
+			it.setParameter("draw-outline", Boolean.toString(model.renderIntervalOutlines))
+		}
 
-			Paper paper = null
-			if (model.standardFormat) {
-				paper = view.paper.selectedItem
-			} else {
-				def paperWidth = Integer.parseInt(view.paperWidth.text)
-				def paperHeight = Integer.parseInt(view.paperHeight.text)
-				paper = new Paper("Custom", paperWidth, paperHeight, 36) // margin=36 i.e. 1/2" at 72dpi
-			}
+		Paper paper = null
+		if (model.standardFormat) {
+			paper = view.paper.selectedItem
+		} else {
+			def paperWidth = Integer.parseInt(view.paperWidth.text)
+			def paperHeight = Integer.parseInt(view.paperHeight.text)
+			paper = new Paper("Custom", paperWidth, paperHeight, 36) // margin=36 i.e. 1/2" at 72dpi
+		}
 
+		// copy, lay out and render each container in its own job, so only the containers being rendered are in memory
+		def jobs = []
+		def exported = new AtomicInteger(0)
+		containers.each { k, names ->
 			// build file name
 			def name = (model.prefix ?: "${model.prefix}") + "$k.${view.format.selectedItem.toLowerCase()}"
-			
-			// render
-			def format
-			switch (view.format.selectedItem) {	
-				case 'PDF': format = 'PDF'; break
-				case 'SVG': format = 'SVG'; break
-				default: format = 'Raster'
-			}
-			
-			// set rendering parameters
-			if (!format.equals('Raster')) {
-				// when rendering PDF or SVG, embed full-resolution image scaled to track bounds
-				def imageTrack = scene.tracks.find { it instanceof ImageTrack }
-				if (imageTrack) { imageTrack.setParameter("embed-image", "true") }
-			}
 
-			// Override the scene columns' draw-outline settings for now...
-			scene.tracks.findAll { it.hasProperty("PARAMETERS") && it.PARAMETERS.containsKey("draw-outline") }.each {
-				it.setParameter("draw-outline", Boolean.toString(model.renderIntervalOutlines))
-			}
+			jobs << ({
+				def v = sections.copy(names)
+				def sectionTop = 0.0
+				def section = v.models.find { it.modelType == 'Section' }
+				if (section) {
+					sectionTop = section.top
+					GeoUtils.adjustUp(v, sectionTop)
+				}
+				final String sectionName = section?.name ?: ""
+
+				// validate our scene
+				def copy = RenderUtils.copyScene(scene, v)
+				try {
+					copy.validate()
+
+					// figure out the extents
+					def start = model.exportAll ? copy.contentSize.minY / copy.scalingFactor : model.start as Double
+					def end = model.exportAll ? copy.contentSize.maxY / copy.scalingFactor : model.end as Double
+					def pageSize = model.pageSize ? model.pageSize as Double : end - start
 
-			RenderUtils."render${format}"(scene, paper, start, end, pageSize, model.renderHeader, model.renderFooter,
-				sectionName, new File(model.filePath, name))
+					// model.pageSize is initially null, but if it's edited and then cleared, it becomes
+					// the empty string (''), thus the compound test here.
+					if (model.minPageSize != null && model.exportAll && (model.pageSize == null || model.pageSize.equals(''))) {
+						// enforce minimum page size by overriding pageSize
+						final minPageSize = model.minPageSize as Double
+						if (pageSize < minPageSize) {
+							println "Overriding page size $pageSize with minimum $minPageSize"
+							pageSize = minPageSize
+						}
+					}
+
+					// println "copy.contentSize.maxY = ${copy.contentSize.maxY} start: $start, end: $end, end-start: ${end - start} pageSize: $pageSize"
+
+					RenderUtils."render${format}"(copy, paper, start, end, pageSize, model.renderHeader, model.renderFooter,
+						sectionName, new File(model.filePath, name))
+				} finally {
+					RenderUtils.releaseScene(copy)
+				}
+				def done = exported.incrementAndGet()
+				edt {
+					view.progress.value = (done / containers.size() * 100).intValue()
+					view.progress.string = "Exported $k"
+				}
+				return null
+			} as Callable)
 		}
+		RenderUtils.invokeAll(jobs)
 		
-		view.progress.value = 100
-		view.progress.string = "Export complete!"
+		edt {
+			view.progress.value = 100
+			view.progress.string = "Export complete!"
+		}
 	}
 	
     def show() { 
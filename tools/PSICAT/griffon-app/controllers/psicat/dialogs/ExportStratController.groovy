@@ -123,6 +123,10 @@ class ExportStratController {
 				def end = scene.contentSize.maxY / scene.scalingFactor
 				// def pageSize = model.pageSize ? model.pageSize as Double : Math.max(end - start, view.units.selectedItem.equals("cm") ? 100 : 1)
 				def pageSize = Math.max(end - start, view.units.selectedItem.equals("cm") ? 100 : 1)
+				if (model.tilePages && model.pageSize) {
+					// split a long column across pages of the requested length
+					pageSize = model.pageSize as Double
+				}
 
 				// println "scene.contentSize.maxY = ${scene.contentSize.maxY} start: $start, end: $end, end-start: ${end - start} pageSize: $pageSize"
 
@@ -57,23 +57,25 @@ class FindReplaceController {
 	
 	void findAndReplace(findEntry, replaceEntry) {
 		def commands = []
+		def modelType = (findEntry.scheme.type == "lithology" ? "Interval" : "Occurrence")
+		def keyName = (findEntry.scheme.type == "lithology" ? "lithology" : "scheme")
+		def uid = findEntry.scheme.id + ':' + findEntry.code
+		def matches = { mod -> mod.modelType.equals(modelType) && mod.modelData[keyName].equals(uid) }
 		model.project.containers.each { containerName ->
+			// search a peeked, read-only view first, so only sections with matches are opened and held until the dialog closes
+			if (!(containerName in model.containers) && !model.project.peekContainer(containerName).models.any(matches)) {
+				return
+			}
 			def container = openContainer(containerName)
 			def modelIterator = container.iterator()
 			while (modelIterator.hasNext()) {
 				GeologyModel mod = modelIterator.next()
-				def modelType = (findEntry.scheme.type == "lithology" ? "Interval" : "Occurrence")
-				def keyName = (findEntry.scheme.type == "lithology" ? "lithology" : "scheme")
-				if (mod.modelType.equals(modelType)) {
-					def uid = findEntry.scheme.id + ':' + findEntry.code
-					if (mod.modelData[keyName].equals(uid)) {
-						
-						// using GCommand rather than directly modifying model grants undo/redo powers! 
-						def replaceId = replaceEntry.scheme.id + ':' + replaceEntry.code
-						commands << new GCommand(source: mod, prop: keyName, value: replaceId, old: uid)
-						
-						model.containersToSave << container
-					}
+				if (matches(mod)) {
+					// using GCommand rather than directly modifying model grants undo/redo powers! 
+					def replaceId = replaceEntry.scheme.id + ':' + replaceEntry.code
+					commands << new GCommand(source: mod, prop: keyName, value: replaceId, old: uid)
+					
+					model.containersToSave << container
 				}
 			}
 		}
@@ -117,6 +119,8 @@ class FindReplaceController {
 		} else {
 			while (model.commandStack.canUndo()) { model.commandStack.undo() }
 		}
+		// close the sections this dialog opened
 		model.containers.each { k, v -> model.project.closeContainer(v) }
+		model.containers.clear()
 	}
 }
\ No newline at end of file
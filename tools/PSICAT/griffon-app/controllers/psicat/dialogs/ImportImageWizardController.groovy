@@ -24,10 +24,12 @@ import ca.odell.glazedlists.gui.WritableTableFormat
 import ca.odell.glazedlists.swing.EventTableModel
 
 import org.andrill.coretools.AlphanumComparator;
+import org.andrill.coretools.Platform
 import org.andrill.coretools.geology.models.Image
 import org.andrill.coretools.geology.models.Section;
 import org.andrill.coretools.geology.models.Length
-import org.andrill.coretools.graphics.util.ImageInfo
+import org.andrill.coretools.graphics.driver.ImagePyramidStore
+import org.andrill.coretools.graphics.util.ImageMetadataCache
 
 import psicat.util.CustomFileFilter
 import psicat.util.Dialogs
@@ -124,40 +126,38 @@ class ImportImageWizardController {
 			
 			def images = new BasicEventList()
 			def regex = ~/([0-9]*\.[0-9]+)/
+			def metadata = Platform.getService(ImageMetadataCache.class)
 			model.imageFiles.each { file ->
-				file.withInputStream { stream -> 
-					ImageInfo ii = new ImageInfo()
-					ii.setInput(stream)
-					if (ii.check()) {
-						// create an image object
-						def image = [:]
-						image.path = file.toURI().toURL()
-						image.file = file
-						image.group = model.group
-						image.name = file.name.contains('.') ? file.name[0..<file.name.lastIndexOf('.')] : file.name
-						
-						// figure out top and base
-						def match = regex.matcher(file.name)
-						if (depth < 0) {
-							image.top = (match.find() ? match.group(0) as Double : 0.0)
-						} else {
-							image.top = depth
-						}
-						
-						if (dpi < 0) {
-							if (match.find()) {
-								image.base = match.group(0) as Double
-							} else {
-								def length = new Length(ii.physicalHeightInch, "in").to("m")
-								image.base = image.top + length.value
-							}
+				def ii = metadata.get(file.toURI().toURL())
+				if (ii) {
+					// create an image object
+					def image = [:]
+					image.path = file.toURI().toURL()
+					image.file = file
+					image.group = model.group
+					image.name = file.name.contains('.') ? file.name[0..<file.name.lastIndexOf('.')] : file.name
+					
+					// figure out top and base
+					def match = regex.matcher(file.name)
+					if (depth < 0) {
+						image.top = (match.find() ? match.group(0) as Double : 0.0)
+					} else {
+						image.top = depth
+					}
+					
+					if (dpi < 0) {
+						if (match.find()) {
+							image.base = match.group(0) as Double
 						} else {
-							def length = new Length(ii.height / dpi, "in").to("m")
+							def length = new Length(ii.physicalHeightInch, "in").to("m")
 							image.base = image.top + length.value
 						}
-						if (depth >= 0) { depth = image.base }
-						images << image
+					} else {
+						def length = new Length(ii.height / dpi, "in").to("m")
+						image.base = image.top + length.value
 					}
+					if (depth >= 0) { depth = image.base }
+					images << image
 				}
 			}
 			return images
@@ -178,10 +178,14 @@ class ImportImageWizardController {
     	
 		Image model = new Image()
     	model.path = copyImageFile(image).toURI().toURL()
+    	Platform.getService(ImageMetadataCache.class).copied(image.path, model.path)
     	model.top =  isTopOrigin ? "$min m" : "$max m" 
     	model.base = isTopOrigin ? "$max m" : "$min m" 
     	model.group = image.group
     	container.add(model)
+
+    	// start building the downsampled copies now rather than on first view
+    	Platform.getService(ImagePyramidStore.class).build(model.path)
     }
 }
 
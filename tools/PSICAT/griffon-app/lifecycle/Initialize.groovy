@@ -22,6 +22,8 @@ import javax.swing.UIManager
 import groovy.swing.SwingBuilder
 import griffon.util.GriffonPlatformHelper
 
+import org.andrill.coretools.DefaultJobService
+import org.andrill.coretools.JobService
 import org.andrill.coretools.Platform
 import org.andrill.coretools.ResourceLoader
 
@@ -35,6 +37,13 @@ SwingBuilder.lookAndFeel('system')
 // initialize the coretools platform
 Platform.start()
 
+// load the most recently requested images first so whatever is on screen appears before anything scrolled past
+def jobs = Platform.getService(JobService.class)
+if (jobs instanceof DefaultJobService) {
+	jobs.setLastInFirstOut(JobService.Priority.HIGH, true)
+	jobs.setLastInFirstOut(JobService.Priority.MEDIUM, true)
+}
+
 def getDirPref(prefKey) {
 	def dir = new File(Preferences.userNodeForPackage(PSICATController).get(prefKey, System.getProperty("user.home")))
 	return (dir.exists() && dir.isDirectory()) ? dir : new File(System.getProperty("user.home"))
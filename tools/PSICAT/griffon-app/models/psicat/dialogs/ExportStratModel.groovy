@@ -29,6 +29,7 @@ class ExportStratModel {
 	@Bindable String start
 	@Bindable String end
 	@Bindable String pageSize
+	@Bindable boolean tilePages = false
 	@Bindable boolean renderHeader = true
 	@Bindable boolean renderFooter = false
 	@Bindable boolean renderColumnBorders = true
@@ -59,7 +59,7 @@ application(title:"PSICAT ${app.applicationProperties['app.version']} $subversio
 			location:[xpos,ypos],
 			layout: new MigLayout('fill'), 
 			defaultCloseOperation: 0,
-			windowClosing: { evt -> if (controller.canClose(evt)) app.shutdown() },
+			windowClosing: { evt -> controller.actions.exit(evt) },
 			iconImage: imageIcon('/psicat-icon-64.png').image, iconImages: [imageIcon('/psicat-icon-64.png').image,
 			imageIcon('/psicat-icon-32.png').image, imageIcon('/psicat-icon-16.png').image]) {
 
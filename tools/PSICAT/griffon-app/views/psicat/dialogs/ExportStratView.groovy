@@ -74,6 +74,9 @@ panel(id:'root', layout: new MigLayout('fill'), border: etchedBorder()) {
 	checkBox(text: 'Draw Footer', selected: bind(source: model, sourceProperty:'renderFooter', mutual:true), constraints: 'wrap')
 	checkBox(text: 'Draw Column Borders', selected: bind(source: model, sourceProperty:'renderColumnBorders', mutual:true))
 	checkBox(text: 'Draw Interval Outlines', selected: bind(source: model, sourceProperty:'renderIntervalOutlines', mutual:true), constraints: 'wrap')
+	checkBox(text: 'Split Across Pages:', selected: bind(source: model, sourceProperty:'tilePages', mutual:true), constraints: 'split')
+	textField(columns:4, enabled: bind { model.tilePages }, text: bind(source: model, sourceProperty:'pageSize', mutual:true), inputVerifier: CustomVerifier.NUMBER, constraints: 'split')
+	label(text: bind(source:model, sourceProperty:'units'), constraints:'wrap')
 	separator(constraints: 'span, growx, wrap')
 	
 	label('Output File:')
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) Josh Reed, 2009.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.andrill.coretools.scripting;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+
+import org.andrill.coretools.misc.io.BinaryReaderWriter;
+import org.andrill.coretools.misc.io.XMLModelReader;
+import org.andrill.coretools.misc.io.XMLModelWriter;
+import org.andrill.coretools.model.DefaultContainer;
+import org.andrill.coretools.model.Model;
+import org.andrill.coretools.model.ModelContainer;
+import org.andrill.coretools.model.ModelManager;
+import org.andrill.coretools.model.io.ModelReader;
+import org.andrill.coretools.model.io.ModelWriter;
+
+/**
+ * A script for converting model container files between the XML and binary formats. Models are copied exactly as they
+ * are stored, without going through the model classes, so the conversion is lossless in both directions.
+ *
+ * @author Josh Reed (jareed@andrill.org)
+ */
+public class ConvertContainers {
+
+	// a model that holds its data exactly as it was read
+	static class RawModel implements Model {
+		private final String type;
+		private final Map<String, String> data;
+		private ModelContainer container;
+
+		RawModel(final String type, final Map<String, String> data) {
+			this.type = type;
+			this.data = new LinkedHashMap<String, String>(data);
+		}
+
+		public <E> E getAdapter(final Class<E> adapter) {
+			return null;
+		}
+
+		public ModelContainer getContainer() {
+			return container;
+		}
+
+		public Map<String, String> getModelData() {
+			return data;
+		}
+
+		public String getModelType() {
+			return type;
+		}
+
+		public void setContainer(final ModelContainer container) {
+			this.container = container;
+		}
+	}
+
+	static class RawModelManager implements ModelManager {
+		public Model build(final String type, final Map<String, String> data) {
+			return new RawModel(type, data);
+		}
+
+		public void register(final Factory factory) {
+			// not supported
+		}
+
+		public void unregister(final Factory factory) {
+			// not supported
+		}
+	}
+
+	public static void main(final String[] args) throws Exception {
+		// setup our options
+		OptionParser parser = new OptionParser() {
+			{
+				accepts("in", "the container files to convert [R]").withRequiredArg().ofType(File.class);
+				accepts("format", "the format to convert to: xml or bin [R]").withRequiredArg();
+				accepts("out", "the output directory, defaults to the directory of each file when used with -delete [O]")
+				        .withRequiredArg().ofType(File.class);
+				accepts("verify", "read back each converted file and compare it to the original [O]");
+				accepts("delete", "delete each original file once it has been converted [O]");
+				acceptsAll(Arrays.asList("h", "?"), "show help");
+			}
+		};
+		String[] required = { "in", "format" };
+
+		// parse our options
+		OptionSet options = ScriptUtils.checkArgs(parser, required, args);
+		String format = ((String) options.valueOf("format")).toLowerCase();
+		File outDir = options.hasArgument("out") ? (File) options.valueOf("out") : null;
+		if ((outDir != null) && !outDir.exists()) {
+			outDir.mkdirs();
+		}
+		if (getReader(format) == null) {
+			System.err.println("Unrecognized container data file format: " + format);
+			System.exit(1);
+		}
+		if ((outDir == null) && !options.has("delete")) {
+			// a project would see the same container in both formats
+			System.err.println("Converting files in place requires -out or -delete");
+			System.exit(1);
+		}
+
+		// convert each file
+		int failed = 0;
+		for (Object o : options.valuesOf("in")) {
+			File in = (File) o;
+			String name = in.getName();
+			int i = name.lastIndexOf('.');
+			String extension = (i == -1) ? "" : name.substring(i + 1).toLowerCase();
+			if (i != -1) {
+				name = name.substring(0, i);
+			}
+			File out = new File((outDir == null) ? in.getAbsoluteFile().getParentFile() : outDir, name + "." + format);
+			if (getReader(extension) == null) {
+				System.err.println("Skipping " + in + ": unrecognized container data file format: " + extension);
+				failed++;
+				continue;
+			}
+			if (out.getAbsoluteFile().equals(in.getAbsoluteFile())) {
+				System.err.println("Skipping " + in + ": already in " + format + " format");
+				continue;
+			}
+			if (out.exists()) {
+				System.err.println("Skipping " + in + ": " + out + " already exists");
+				failed++;
+				continue;
+			}
+
+			ModelContainer container = read(in, extension);
+			write(container, out, format);
+			if (options.has("verify") && !same(container, read(out, format))) {
+				System.err.println("Converted " + in + " does not match the original; keeping the original");
+				out.delete();
+				failed++;
+				continue;
+			}
+			if (options.has("delete")) {
+				in.delete();
+			}
+			System.out.println(in + " -> " + out + " (" + container.getModels().size() + " models)");
+		}
+		if (failed > 0) {
+			System.exit(1);
+		}
+	}
+
+	private static ModelReader getReader(final String format) {
+		if ("xml".equals(format)) {
+			return new XMLModelReader(new RawModelManager());
+		} else if ("bin".equals(format)) {
+			return new BinaryReaderWriter(new RawModelManager());
+		}
+		return null;
+	}
+
+	private static ModelWriter getWriter(final String format) {
+		if ("xml".equals(format)) {
+			return new XMLModelWriter();
+		} else if ("bin".equals(format)) {
+			return new BinaryReaderWriter(new RawModelManager());
+		}
+		return null;
+	}
+
+	private static ModelContainer read(final File file, final String format) throws IOException {
+		ModelContainer container = new DefaultContainer();
+		FileInputStream fis = new FileInputStream(file);
+		try {
+			getReader(format).read(container, fis);
+		} finally {
+			fis.close();
+		}
+		return container;
+	}
+
+	private static boolean same(final ModelContainer c1, final ModelContainer c2) {
+		List<Model> m1 = c1.getModels();
+		List<Model> m2 = c2.getModels();
+		if (m1.size() != m2.size()) {
+			return false;
+		}
+		for (int i = 0; i < m1.size(); i++) {
+			if (!m1.get(i).getModelType().equals(m2.get(i).getModelType())
+			        || !m1.get(i).getModelData().equals(m2.get(i).getModelData())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void write(final ModelContainer container, final File file, final String format)
+	        throws IOException {
+		FileOutputStream fos = new FileOutputStream(file);
+		try {
+			getWriter(format).write(container, fos);
+		} finally {
+			fos.close();
+		}
+	}
+}
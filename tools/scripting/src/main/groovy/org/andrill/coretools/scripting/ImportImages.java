@@ -16,7 +16,6 @@
 package org.andrill.coretools.scripting;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.math.BigDecimal;
 import java.net.URL;
@@ -33,7 +32,8 @@ import joptsimple.OptionSet;
 import org.andrill.coretools.Platform;
 import org.andrill.coretools.geology.models.Image;
 import org.andrill.coretools.geology.models.Length;
-import org.andrill.coretools.graphics.util.ImageInfo;
+import org.andrill.coretools.graphics.util.ImageMetadata;
+import org.andrill.coretools.graphics.util.ImageMetadataCache;
 import org.andrill.coretools.model.ModelContainer;
 
 /**
@@ -103,50 +103,43 @@ public class ImportImages {
 		// import the images
 		List<Image> list = new ArrayList<Image>();
 		Pattern regex = Pattern.compile("([0-9]*\\.[0-9]+)");
+		ImageMetadataCache metadata = Platform.getService(ImageMetadataCache.class);
 		for (File f : images) {
-			FileInputStream fis = null;
-			try {
-				fis = new FileInputStream(f);
-				ImageInfo ii = new ImageInfo();
-				ii.setInput(fis);
-				if (ii.check()) {
-					Image image = new Image();
-					image.setPath(new URL("file:" + f.getAbsolutePath()));
-					image.setGroup(group);
+			URL url = new URL("file:" + f.getAbsolutePath());
+			ImageMetadata ii = metadata.get(url);
+			if (ii != null) {
+				Image image = new Image();
+				image.setPath(url);
+				image.setGroup(group);
 
-					// parse top
-					Matcher match = regex.matcher(f.getName());
-					if (depth < 0) {
-						if (match.find()) {
-							image.setTop(new Length(match.group(0) + " m"));
-						} else {
-							image.setTop(new Length(new BigDecimal(0), " m"));
-						}
+				// parse top
+				Matcher match = regex.matcher(f.getName());
+				if (depth < 0) {
+					if (match.find()) {
+						image.setTop(new Length(match.group(0) + " m"));
 					} else {
-						image.setTop(new Length(dec.format(depth) + " m"));
+						image.setTop(new Length(new BigDecimal(0), " m"));
 					}
+				} else {
+					image.setTop(new Length(dec.format(depth) + " m"));
+				}
 
-					// parse base
-					if (dpi < 0) {
-						if (match.find()) {
-							image.setBase(new Length(match.group(0) + " m"));
-						} else {
-							Length l = new Length(dec.format(ii.getPhysicalHeightInch()) + " in").to("m");
-							image.setBase(new Length(dec.format(l.getValue().add(image.getTop().getValue())) + " m"));
-						}
+				// parse base
+				if (dpi < 0) {
+					if (match.find()) {
+						image.setBase(new Length(match.group(0) + " m"));
 					} else {
-						Length l = new Length(dec.format((double) ii.getHeight() / (double) dpi) + " in").to("m");
+						Length l = new Length(dec.format(ii.getPhysicalHeightInch()) + " in").to("m");
 						image.setBase(new Length(dec.format(l.getValue().add(image.getTop().getValue())) + " m"));
 					}
-					if (depth >= 0) {
-						depth = image.getBase().getValue().doubleValue();
-					}
-					list.add(image);
+				} else {
+					Length l = new Length(dec.format((double) ii.getHeight() / (double) dpi) + " in").to("m");
+					image.setBase(new Length(dec.format(l.getValue().add(image.getTop().getValue())) + " m"));
 				}
-			} finally {
-				if (fis != null) {
-					fis.close();
+				if (depth >= 0) {
+					depth = image.getBase().getValue().doubleValue();
 				}
+				list.add(image);
 			}
 		}
 